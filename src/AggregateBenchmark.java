@@ -0,0 +1,73 @@
+import java.util.Random;
+
+/**
+ * Compares summing the values of whole rows of a 1024 x 1024 matrix keyed by Indexes, 100 rows
+ * at a time, by iterating sub-maps of RoamingMap on both backends against aggregate on a
+ * RoamingMap that keeps sums for the aggregator. Also reports what keeping the sums costs puts.
+ * Run with: ant bench -Dbenchmark=AggregateBenchmark
+ */
+public class AggregateBenchmark {
+
+    private static final int SIDE = 1 << 10;
+    private static final int ROWS = 100;
+    private static final int QUERIES = 1_000;
+    private static final int WRITES = 1_000_000;
+
+    private static final Aggregator<Integer, Long> SUM = Aggregator.summingLong(Integer::longValue);
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] firstRows = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            firstRows[i] = random.nextInt(SIDE - ROWS);
+        }
+        Indexes[] probes = new Indexes[WRITES];
+        for (int i = 0; i < WRITES; i++) {
+            probes[i] = new Indexes(random.nextInt(SIDE), random.nextInt(SIDE));
+        }
+
+        RoamingMap<Indexes, Integer> aggregated = fill(new RoamingMap<>(SUM));
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            RoamingMap<Indexes, Integer> map = fill(new RoamingMap<>(backend));
+            BenchmarkSupport.run("sum of " + ROWS + " rows / subMap on " + backend, QUERIES, () -> {
+                long sum = 0;
+                for (int first : firstRows) {
+                    for (int value : map.subMap(new Indexes(first, 0), new Indexes(first + ROWS, 0)).values()) {
+                        sum += value;
+                    }
+                }
+                return sum;
+            });
+        }
+        BenchmarkSupport.run("sum of " + ROWS + " rows / aggregate", QUERIES, () -> {
+            long sum = 0;
+            for (int first : firstRows) {
+                sum += aggregated.aggregate(SUM, new Indexes(first, 0), new Indexes(first + ROWS, 0));
+            }
+            return sum;
+        });
+
+        RoamingMap<Indexes, Integer> plain = fill(new RoamingMap<>(RoamingMap.Backend.B_PLUS_TREE));
+        BenchmarkSupport.run("put / " + RoamingMap.Backend.B_PLUS_TREE, WRITES, () -> {
+            for (int i = 0; i < WRITES; i++) {
+                plain.put(probes[i], i);
+            }
+            return plain.size();
+        });
+        BenchmarkSupport.run("put / " + RoamingMap.Backend.B_PLUS_TREE + " with sums", WRITES, () -> {
+            for (int i = 0; i < WRITES; i++) {
+                aggregated.put(probes[i], i);
+            }
+            return aggregated.size();
+        });
+    }
+
+    private static RoamingMap<Indexes, Integer> fill(RoamingMap<Indexes, Integer> map) {
+        for (int row = 0; row < SIDE; row++) {
+            for (int column = 0; column < SIDE; column++) {
+                map.put(new Indexes(row, column), row + column);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Combines the values of a map into a summary, such as their sum, minimum or count: a monoid over
+ * summaries of values. A RoamingMap created with an aggregator keeps the summary of the values
+ * under every inner node of its tree, and aggregates the values of a key range in O(log n).
+ * @param <V> the type of values
+ * @param <A> the type of summaries
+ */
+public interface Aggregator<V, A> {
+
+    /**
+     * Returns the summary of no values, which leaves any summary unchanged when combined with it
+     * @return the summary of no values
+     */
+    A identity();
+
+    /**
+     * Returns the summary of a single value
+     * @param value the value, may be null if the map holds null values
+     * @return the summary of the value
+     */
+    A lift(V value);
+
+    /**
+     * Combines the summaries of two adjacent key ranges, the left one holding the lower keys.
+     * Must be associative; it need not be commutative.
+     * @param left the summary of the lower keys
+     * @param right the summary of the higher keys
+     * @return the summary of both ranges
+     */
+    A combine(A left, A right);
+
+    /**
+     * Returns an aggregator made of the given functions
+     * @param identity the summary of no values
+     * @param lift returns the summary of a single value
+     * @param combine combines the summaries of two adjacent key ranges, associatively
+     * @param <V> the type of values
+     * @param <A> the type of summaries
+     * @return the aggregator
+     * @throws NullPointerException if lift or combine is null
+     */
+    static <V, A> Aggregator<V, A> of(A identity, Function<? super V, ? extends A> lift, BinaryOperator<A> combine) {
+        Objects.requireNonNull(lift);
+        Objects.requireNonNull(combine);
+        return new Aggregator<>() {
+            @Override
+            public A identity() {
+                return identity;
+            }
+
+            @Override
+            public A lift(V value) {
+                return lift.apply(value);
+            }
+
+            @Override
+            public A combine(A left, A right) {
+                return combine.apply(left, right);
+            }
+        };
+    }
+
+    /**
+     * Returns an aggregator that counts values
+     * @param <V> the type of values
+     * @return the aggregator
+     */
+    static <V> Aggregator<V, Long> counting() {
+        return of(0L, value -> 1L, Long::sum);
+    }
+
+    /**
+     * Returns an aggregator that sums a long function of the values
+     * @param mapper the function of the values
+     * @param <V> the type of values
+     * @return the aggregator
+     * @throws NullPointerException if the function is null
+     */
+    static <V> Aggregator<V, Long> summingLong(ToLongFunction<? super V> mapper) {
+        Objects.requireNonNull(mapper);
+        return of(0L, mapper::applyAsLong, Long::sum);
+    }
+
+    /**
+     * Returns an aggregator that finds the least value, or null if there are none. Null values
+     * are skipped.
+     * @param comparator the order of the values
+     * @param <V> the type of values
+     * @return the aggregator
+     * @throws NullPointerException if the comparator is null
+     */
+    static <V> Aggregator<V, V> minimum(Comparator<? super V> comparator) {
+        Objects.requireNonNull(comparator);
+        return of(null, value -> value, (left, right) -> {
+            if (left == null) {
+                return right;
+            }
+            return (right == null || comparator.compare(left, right) <= 0) ? left : right;
+        });
+    }
+}
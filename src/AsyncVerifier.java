@@ -0,0 +1,363 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Verifies Barricade operations off the calling thread. While an AsyncVerifier is installed with
+ * {@link Barricade#setAsyncVerifier(AsyncVerifier)}, safeGet and safePut on a guarded map return
+ * straight from the map and only record the operation, its result and the fingerprint of the map
+ * before and after it. Verifier threads replay the records against a shadow copy of each guarded
+ * map and report every discrepancy to a listener, which logs through the Barricade logger by default.
+ * <p>
+ * Each guarded map is assigned to a single verifier thread, so its records are replayed in the
+ * order they were made. Records wait in a bounded lock-free queue per thread; what happens when
+ * that queue is full is decided by the {@link Backpressure}.
+ * Like Barricade itself, this assumes that a guarded map is written by one thread at a time and
+ * only through Barricade.
+ */
+public final class AsyncVerifier implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(Barricade.class.getName());
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // The first wait of a caller blocked on a full queue, doubled up to IDLE_PARK_NANOS
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    /**
+     * What a caller does when the verification queue is full
+     */
+    public enum Backpressure {
+        /** wait until the verifier frees space in the queue */
+        BLOCK,
+        /** skip verification of the operation; a skipped put stops verification of the map until it is guarded again */
+        DROP,
+        /** throw an IllegalStateException without performing the operation */
+        FAIL
+    }
+
+    /**
+     * A misbehaviour of a guarded map found by replaying one of its operations
+     */
+    public record Discrepancy(BarricadeMetrics.Operation operation, Object key, String message) {}
+
+    private record Recorded<K extends Comparable<K>, V>(BarricadeMetrics.Operation operation, Shadow<K, V> shadow, K key, V value,
+                                  V observed, long fingerprintBefore, long fingerprintAfter) {}
+
+    /**
+     * The shadow copy of a guarded map, only touched by the verifier thread after it is created
+     */
+    private static final class Shadow<K extends Comparable<K>, V> {
+        private final RoamingMap<K, V> copy;
+        private final Worker worker;
+        private long fingerprint;
+        private volatile boolean valid = true;
+
+        private Shadow(VersionedMap<K, V> map, Worker worker) {
+            this.copy = RoamingMap.copyOf(map);
+            this.fingerprint = map.fingerprint();
+            this.worker = worker;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final ConcurrentLinkedQueue<Recorded<?, ?>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger reserved = new AtomicInteger();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final Thread thread;
+
+        private Worker(int index) {
+            thread = new Thread(this, "barricade-verifier-" + index);
+            thread.setDaemon(true);
+        }
+
+        private boolean tryReserve() {
+            if (reserved.incrementAndGet() <= queueCapacity) {
+                return true;
+            }
+            reserved.decrementAndGet();
+            return false;
+        }
+
+        private void submit(Recorded<?, ?> record) {
+            submitted.incrementAndGet();
+            queue.offer(record);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Recorded<?, ?> record = queue.poll();
+                if (record == null) {
+                    if (closed) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                reserved.decrementAndGet();
+                try {
+                    replay(record);
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "verifier could not replay " + record.operation() + " operation", e);
+                } finally {
+                    processed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private final Worker[] workers;
+    private final int queueCapacity;
+    private final Backpressure backpressure;
+    private final Consumer<Discrepancy> listener;
+    private final Map<IdentityReference, Shadow<?, ?>> shadows = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong discrepancies = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates and starts a verifier that reports discrepancies through the Barricade logger
+     * @param threads the number of verifier threads
+     * @param queueCapacity the capacity of the queue of each verifier thread
+     * @param backpressure what callers do when a queue is full
+     * @throws IllegalArgumentException if threads or queueCapacity is not positive
+     * @throws NullPointerException if backpressure is null
+     */
+    public AsyncVerifier(int threads, int queueCapacity, Backpressure backpressure) {
+        this(threads, queueCapacity, backpressure, discrepancy -> logger.log(Level.WARNING, discrepancy.message()));
+    }
+
+    /**
+     * Creates and starts a verifier
+     * @param threads the number of verifier threads
+     * @param queueCapacity the capacity of the queue of each verifier thread
+     * @param backpressure what callers do when a queue is full
+     * @param listener receives every discrepancy, on a verifier thread
+     * @throws IllegalArgumentException if threads or queueCapacity is not positive
+     * @throws NullPointerException if backpressure or listener is null
+     */
+    public AsyncVerifier(int threads, int queueCapacity, Backpressure backpressure, Consumer<Discrepancy> listener) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid verifier configuration: " + threads + " threads, capacity " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        this.backpressure = Objects.requireNonNull(backpressure);
+        this.listener = Objects.requireNonNull(listener);
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Starts verifying the operations on the map asynchronously. The shadow copy is taken now,
+     * so guarding a map again after a dropped put resynchronizes it.
+     * @param map the map to guard
+     * @throws NullPointerException if the map is null
+     */
+    public <K extends Comparable<K>, V> void guard(VersionedMap<K, V> map) {
+        Objects.requireNonNull(map);
+        Worker worker = workers[Math.floorMod(System.identityHashCode(map), workers.length)];
+        expungeCollected();
+        shadows.put(new IdentityReference(map, collected), new Shadow<>(map, worker));
+    }
+
+    /**
+     * Stops verifying the operations on the map asynchronously
+     * @param map the map to stop guarding
+     */
+    public void unguard(NavigableMap<?, ?> map) {
+        Shadow<?, ?> shadow = shadows.remove(new IdentityReference(map, null));
+        if (shadow != null) {
+            shadow.valid = false;
+        }
+        expungeCollected();
+    }
+
+    private void expungeCollected() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            Shadow<?, ?> shadow = shadows.remove(reference);
+            if (shadow != null) {
+                shadow.valid = false;
+            }
+        }
+    }
+
+    boolean guards(NavigableMap<?, ?> map) {
+        return !closed && shadows.containsKey(new IdentityReference(map, null));
+    }
+
+    /**
+     * Gets the value of the key from a guarded map and records the read for verification
+     */
+    @SuppressWarnings("unchecked")
+    <K extends Comparable<K>, V> V get(NavigableMap<K, V> map, K key) {
+        Shadow<K, V> shadow = (Shadow<K, V>) shadows.get(new IdentityReference(map, null));
+        VersionedMap<K, V> versioned = (VersionedMap<K, V>) map;
+        if (shadow == null || !reserve(shadow, false)) {
+            return map.get(key);
+        }
+        long before = versioned.fingerprint();
+        V value = map.get(key);
+        long after = versioned.fingerprint();
+        shadow.worker.submit(new Recorded<>(BarricadeMetrics.Operation.GET, shadow, key, null, value, before, after));
+        return value;
+    }
+
+    /**
+     * Puts the key and value into a guarded map and records the write for verification
+     */
+    @SuppressWarnings("unchecked")
+    <K extends Comparable<K>, V> V put(NavigableMap<K, V> map, K key, V value) {
+        Shadow<K, V> shadow = (Shadow<K, V>) shadows.get(new IdentityReference(map, null));
+        VersionedMap<K, V> versioned = (VersionedMap<K, V>) map;
+        if (shadow == null || !reserve(shadow, true)) {
+            return map.put(key, value);
+        }
+        long before = versioned.fingerprint();
+        V previous = map.put(key, value);
+        long after = versioned.fingerprint();
+        shadow.worker.submit(new Recorded<>(BarricadeMetrics.Operation.PUT, shadow, key, value, previous, before, after));
+        return previous;
+    }
+
+    private boolean reserve(Shadow<?, ?> shadow, boolean write) {
+        if (!shadow.valid) {
+            return false;
+        }
+        Worker worker = shadow.worker;
+        long park = BLOCKED_PARK_NANOS;
+        while (!worker.tryReserve()) {
+            switch (backpressure) {
+                case BLOCK -> {
+                    if (closed) {
+                        return false;
+                    }
+                    LockSupport.unpark(worker.thread);
+                    LockSupport.parkNanos(this, park);
+                    park = Math.min(park * 2, IDLE_PARK_NANOS);
+                }
+                case DROP -> {
+                    dropped.incrementAndGet();
+                    if (write) {
+                        // The shadow cannot follow the map without this put
+                        shadow.valid = false;
+                    }
+                    return false;
+                }
+                case FAIL -> throw new IllegalStateException("Verification queue is full");
+            }
+        }
+        return true;
+    }
+
+    private <K extends Comparable<K>, V> void replay(Recorded<K, V> record) {
+        Shadow<K, V> shadow = record.shadow();
+        if (!shadow.valid) {
+            return;
+        }
+        long start = System.nanoTime();
+        BarricadeMetrics.OperationMetrics counters = Barricade.metrics().operation(record.operation());
+        String method = (record.operation() == BarricadeMetrics.Operation.GET) ? "get" : "put";
+        if (record.fingerprintBefore() != shadow.fingerprint) {
+            // Something changed the map outside of Barricade; the shadow can no longer follow it
+            shadow.valid = false;
+            counters.failed();
+            report(record, "NavigableMap was modified outside of Barricade before " + method + "; verification suspended");
+            return;
+        }
+        if (record.operation() == BarricadeMetrics.Operation.GET) {
+            if (!Objects.equals(shadow.copy.get(record.key()), record.observed())) {
+                counters.warned();
+                report(record, "get method of NavigableMap returned incorrect value");
+            }
+        } else {
+            boolean present = shadow.copy.containsKey(record.key());
+            V previous = shadow.copy.put(record.key(), record.value());
+            if (present) {
+                shadow.fingerprint -= VersionedMap.fingerprint(record.key(), previous);
+            }
+            shadow.fingerprint += VersionedMap.fingerprint(record.key(), record.value());
+            if (!Objects.equals(previous, record.observed())) {
+                counters.warned();
+                report(record, "put method of NavigableMap returned incorrect previous value");
+            }
+        }
+        if (record.fingerprintAfter() != shadow.fingerprint) {
+            shadow.valid = false;
+            counters.failed();
+            report(record, method + " method of NavigableMap operated incorrectly");
+        }
+        counters.verified(System.nanoTime() - start);
+    }
+
+    private void report(Recorded<?, ?> record, String message) {
+        discrepancies.incrementAndGet();
+        listener.accept(new Discrepancy(record.operation(), record.key(), message));
+    }
+
+    /**
+     * Waits until every operation recorded so far has been replayed
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if every operation was replayed, false if the timeout elapsed first
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Worker worker : workers) {
+            long target = worker.submitted.get();
+            while (worker.processed.get() < target) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.unpark(worker.thread);
+                LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+            }
+        }
+        return true;
+    }
+
+    public long droppedRecords() {
+        return dropped.get();
+    }
+
+    public long discrepancies() {
+        return discrepancies.get();
+    }
+
+    /**
+     * Stops recording new operations, replays the ones already recorded and stops the verifier
+     * threads. If the calling thread is interrupted, it stops waiting for them, with its interrupt
+     * status set, and they finish in the background.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares the B+-tree backend of RoamingMap against TreeMap on a 1024 x 1024 matrix keyed by
+ * Indexes in row-major order, as MatrixMap stores it: the bytes allocated per entry while building
+ * the map, which for these maps is what they retain, the time of puts and gets at random cells,
+ * and the time per entry of reading whole rows through sub-maps and of iterating the whole map.
+ * Each backend runs in a JVM of its own, and scans are measured first: the JIT compiles iteration for
+ * the call sites it profiled, and a scan measured after other workloads can run twice as slow.
+ * Run with: ant bench -Dbenchmark=BPlusTreeBenchmark
+ */
+public class BPlusTreeBenchmark {
+
+    private static final int SIDE = 1 << 10;
+    private static final int LOOKUPS = 1_000_000;
+
+    private static final String VALUE = "value";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            String java = ProcessHandle.current().info().command().orElse("java");
+            for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+                Process process = new ProcessBuilder(java, "-Xmx2g", "-cp", System.getProperty("java.class.path"),
+                        BPlusTreeBenchmark.class.getName(), backend.name()).inheritIO().start();
+                if (process.waitFor() != 0) {
+                    throw new IllegalStateException("Benchmark of " + backend + " failed");
+                }
+            }
+            return;
+        }
+        RoamingMap.Backend backend = RoamingMap.Backend.valueOf(args[0]);
+
+        Indexes[] cells = new Indexes[SIDE * SIDE];
+        for (int row = 0; row < SIDE; row++) {
+            for (int column = 0; column < SIDE; column++) {
+                cells[row * SIDE + column] = new Indexes(row, column);
+            }
+        }
+        Random random = new Random(42);
+        Indexes[] probes = new Indexes[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = new Indexes(random.nextInt(SIDE), random.nextInt(SIDE));
+        }
+
+        RoamingMap<Indexes, String> map = new RoamingMap<>(backend);
+        fill(map, cells);
+        BenchmarkSupport.run("row scan / RoamingMap on " + backend, cells.length, () -> {
+            long sum = 0;
+            for (int row = 0; row < SIDE; row++) {
+                NavigableMap<Indexes, String> cellsOfRow = map.subMap(new Indexes(row, 0), true, new Indexes(row + 1, 0), false);
+                for (Map.Entry<Indexes, String> entry : cellsOfRow.entrySet()) {
+                    sum += entry.getKey().column();
+                }
+            }
+            return sum;
+        });
+
+        // The backend alone, without the fingerprints and unmodifiable views of RoamingMap
+        BenchmarkSupport.allocation("build / " + backend, cells.length, () -> fill(backend(backend), cells).size());
+        NavigableMap<Indexes, String> alone = fill(backend(backend), cells);
+        BenchmarkSupport.run("full scan / " + backend, cells.length, () -> {
+            long sum = 0;
+            for (Map.Entry<Indexes, String> entry : alone.entrySet()) {
+                sum += entry.getKey().row();
+            }
+            return sum;
+        });
+
+        BenchmarkSupport.run("put / RoamingMap on " + backend, LOOKUPS, () -> {
+            for (Indexes probe : probes) {
+                map.put(probe, VALUE);
+            }
+            return map.size();
+        });
+        BenchmarkSupport.run("get / RoamingMap on " + backend, LOOKUPS, () -> {
+            long found = 0;
+            for (Indexes probe : probes) {
+                found += (map.get(probe) == null) ? 0 : 1;
+            }
+            return found;
+        });
+    }
+
+    private static NavigableMap<Indexes, String> backend(RoamingMap.Backend backend) {
+        return (backend == RoamingMap.Backend.B_PLUS_TREE) ? new BPlusTreeMap<>() : new TreeMap<>();
+    }
+
+    private static NavigableMap<Indexes, String> fill(NavigableMap<Indexes, String> map, Indexes[] cells) {
+        for (Indexes cell : cells) {
+            map.put(cell, VALUE);
+        }
+        return map;
+    }
+}
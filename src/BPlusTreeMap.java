@@ -0,0 +1,742 @@
+import java.util.*;
+
+/**
+ * A NavigableMap with non-null keys stored in a B+-tree: inner nodes hold up to ORDER children,
+ * and the entries sit in leaves of up to ORDER keys and values in parallel arrays, linked to their
+ * neighbours. A lookup touches one node per level, four for a million entries, and a range
+ * scan reads consecutive slots of a leaf before moving to the next one, instead of following a
+ * pointer per entry like TreeMap. Appending past the last key fills leaves completely, so maps built
+ * in key order, like the cells of a MatrixMap, take about a quarter of the memory of a TreeMap.
+ * <p>
+ * Inner nodes also count the entries under each of their children, so the rank of a key, the key
+ * of a rank and the size of a sub-map view take O(log n). Given an Aggregator, they also keep the
+ * summary of the values under each child, and aggregate the values of a key range in O(log n),
+ * at the cost of recomputing one summary per level on every put and remove.
+ * <p>
+ * Removing entries does not rebalance the tree: a leaf is only unlinked once it is empty, so the
+ * tree stays as deep as it was at its largest. The views of the map are live and read-only.
+ * Not thread-safe.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+final class BPlusTreeMap<K extends Comparable<K>, V> extends SortedView<K, V> {
+
+    private static final long NONE = SortedStore.NONE;
+
+    private final Tree<K, V> tree;
+
+    BPlusTreeMap() {
+        this(new Tree<>(null));
+    }
+
+    /**
+     * Creates an empty map that keeps summaries of its values for the aggregator
+     * @param aggregator the aggregator
+     */
+    BPlusTreeMap(Aggregator<? super V, ?> aggregator) {
+        this(new Tree<>(Objects.requireNonNull(aggregator)));
+    }
+
+    private BPlusTreeMap(Tree<K, V> tree) {
+        super(tree);
+        this.tree = tree;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        long position = tree.find((K) Objects.requireNonNull(key));
+        return (position == NONE) ? null : tree.valueAt(position);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        return tree.find((K) Objects.requireNonNull(key)) != NONE;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return tree.put(Objects.requireNonNull(key), value);
+    }
+
+    /**
+     * Returns the key with the given number of keys before it, in O(log n)
+     * @param index the number of keys before the key
+     * @return the key
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the size
+     */
+    K select(int index) {
+        return tree.keyAt(tree.select(Objects.checkIndex(index, tree.size())));
+    }
+
+    /**
+     * Returns the number of keys less than the key, in O(log n)
+     * @param key the key
+     * @return the number of keys less than the key
+     */
+    int rank(K key) {
+        return tree.rank(Objects.requireNonNull(key));
+    }
+
+    /**
+     * Returns the aggregator whose summaries this map keeps
+     * @return the aggregator, or null if the map keeps no summaries
+     */
+    Aggregator<?, ?> aggregator() {
+        return tree.aggregator;
+    }
+
+    /**
+     * Aggregates the values of the keys between the bounds with the aggregator of this map, in
+     * O(log n). A null bound leaves that side of the range open.
+     * @return the summary of the values
+     * @throws IllegalStateException if the map keeps no summaries
+     * @throws IllegalArgumentException if fromKey is greater than toKey
+     */
+    Object aggregate(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (tree.aggregator == null) {
+            throw new IllegalStateException("The map keeps no summaries");
+        }
+        if (fromKey != null && toKey != null && fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return tree.aggregate(tree.root, fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    /**
+     * Puts all entries of the map. Like TreeMap, an empty map bulk loads the entries of a SortedMap
+     * in their natural order in linear time, trusting that order instead of checking it.
+     * @param m the entries to put
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (tree.size() == 0 && m instanceof SortedMap<?, ?> sorted && sorted.comparator() == null) {
+            tree.load(m.entrySet().iterator());
+        } else {
+            super.putAll(m);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        return tree.remove((K) Objects.requireNonNull(key));
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return removed(firstEntry());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return removed(lastEntry());
+    }
+
+    private Entry<K, V> removed(Entry<K, V> entry) {
+        if (entry != null) {
+            tree.remove(entry.getKey());
+        }
+        return entry;
+    }
+
+    /**
+     * The nodes of the tree. Positions are the identifier of a leaf in the upper 32 bits and the
+     * slot within the leaf in the lower 32 bits.
+     */
+    private static final class Tree<K extends Comparable<K>, V> implements SortedStore<K, V> {
+
+        private static final int ORDER = 64;
+
+        private static final class Leaf {
+            final Object[] keys = new Object[ORDER];
+            final Object[] values = new Object[ORDER];
+            int count;
+            Leaf next;
+            Leaf previous;
+            int id;
+        }
+
+        private static final class Inner {
+            // keys[i] is the lowest key that may be found in children[i + 1]
+            final Object[] keys = new Object[ORDER - 1];
+            final Object[] children = new Object[ORDER];
+            // counts[i] is the number of entries under children[i], for rank and select
+            final int[] counts = new int[ORDER];
+            // summaries[i] is the summary of the values under children[i], if the tree has an aggregator
+            Object[] summaries;
+            int count;
+        }
+
+        private final Aggregator<Object, Object> aggregator;
+
+        private Object root;
+        private Leaf head;
+        private Leaf tail;
+        // Leaves by identifier, so that positions can be resolved to leaves in O(1)
+        private Leaf[] leaves;
+        private int[] freeIds;
+        private int freeCount;
+        private int leafCount;
+        private int size;
+        private long version;
+
+        // Results of the last insert, which returns the new sibling of a split node
+        private Object splitKey;
+        private Object previousValue;
+        private boolean replaced;
+
+        @SuppressWarnings("unchecked")
+        Tree(Aggregator<?, ?> aggregator) {
+            this.aggregator = (Aggregator<Object, Object>) aggregator;
+            reset();
+        }
+
+        private Inner newInner() {
+            Inner inner = new Inner();
+            if (aggregator != null) {
+                inner.summaries = new Object[ORDER];
+            }
+            return inner;
+        }
+
+        private void reset() {
+            leaves = new Leaf[8];
+            freeIds = new int[8];
+            freeCount = 0;
+            leafCount = 0;
+            Leaf leaf = newLeaf();
+            root = leaf;
+            head = leaf;
+            tail = leaf;
+            size = 0;
+        }
+
+        private Leaf newLeaf() {
+            Leaf leaf = new Leaf();
+            if (freeCount > 0) {
+                leaf.id = freeIds[--freeCount];
+            } else {
+                if (leafCount == leaves.length) {
+                    leaves = Arrays.copyOf(leaves, leafCount * 2);
+                }
+                leaf.id = leafCount++;
+            }
+            leaves[leaf.id] = leaf;
+            return leaf;
+        }
+
+        private void freeLeaf(Leaf leaf) {
+            leaves[leaf.id] = null;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = leaf.id;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K extends Comparable<K>> int search(Object[] keys, int count, K key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = ((K) keys[middle]).compareTo(key);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        // Returns the index of the child that may hold the key
+        private static <K extends Comparable<K>> int child(Inner inner, K key) {
+            int index = search(inner.keys, inner.count - 1, key);
+            return (index >= 0) ? index + 1 : -index - 1;
+        }
+
+        private Leaf leaf(K key) {
+            Object node = root;
+            while (node instanceof Inner inner) {
+                node = inner.children[child(inner, key)];
+            }
+            return (Leaf) node;
+        }
+
+        private static int count(Object node) {
+            if (node instanceof Leaf leaf) {
+                return leaf.count;
+            }
+            Inner inner = (Inner) node;
+            int count = 0;
+            for (int i = 0; i < inner.count; i++) {
+                count += inner.counts[i];
+            }
+            return count;
+        }
+
+        // Returns the summary of the values under the node
+        private Object summary(Object node) {
+            Object summary = aggregator.identity();
+            if (node instanceof Leaf leaf) {
+                for (int i = 0; i < leaf.count; i++) {
+                    summary = aggregator.combine(summary, aggregator.lift(leaf.values[i]));
+                }
+            } else {
+                Inner inner = (Inner) node;
+                for (int i = 0; i < inner.count; i++) {
+                    summary = aggregator.combine(summary, inner.summaries[i]);
+                }
+            }
+            return summary;
+        }
+
+        // Recomputes the summaries of the children from the first index up to the last, exclusive
+        private void summarize(Inner inner, int from, int to) {
+            if (aggregator != null) {
+                for (int i = from; i < to; i++) {
+                    inner.summaries[i] = summary(inner.children[i]);
+                }
+            }
+        }
+
+        // Returns the summary of the values under the node between the bounds, where a null bound
+        // leaves that side open. Only the children holding a bound are descended into; the
+        // summaries of the children in between are taken as they are.
+        Object aggregate(Object node, K from, boolean fromInclusive, K to, boolean toInclusive) {
+            if (from == null && to == null) {
+                return summary(node);
+            }
+            if (node instanceof Leaf leaf) {
+                int low = 0;
+                if (from != null) {
+                    int slot = search(leaf.keys, leaf.count, from);
+                    low = (slot >= 0) ? (fromInclusive ? slot : slot + 1) : -slot - 1;
+                }
+                int high = leaf.count;
+                if (to != null) {
+                    int slot = search(leaf.keys, leaf.count, to);
+                    high = (slot >= 0) ? (toInclusive ? slot + 1 : slot) : -slot - 1;
+                }
+                Object summary = aggregator.identity();
+                for (int i = low; i < high; i++) {
+                    summary = aggregator.combine(summary, aggregator.lift(leaf.values[i]));
+                }
+                return summary;
+            }
+            Inner inner = (Inner) node;
+            int first = (from == null) ? 0 : child(inner, from);
+            int last = (to == null) ? inner.count - 1 : child(inner, to);
+            if (first == last) {
+                return aggregate(inner.children[first], from, fromInclusive, to, toInclusive);
+            }
+            Object summary = aggregate(inner.children[first], from, fromInclusive, null, false);
+            for (int i = first + 1; i < last; i++) {
+                summary = aggregator.combine(summary, inner.summaries[i]);
+            }
+            return aggregator.combine(summary, aggregate(inner.children[last], null, false, to, toInclusive));
+        }
+
+        // Returns the number of keys less than the key
+        int rank(K key) {
+            int rank = 0;
+            Object node = root;
+            while (node instanceof Inner inner) {
+                int index = child(inner, key);
+                for (int i = 0; i < index; i++) {
+                    rank += inner.counts[i];
+                }
+                node = inner.children[index];
+            }
+            Leaf leaf = (Leaf) node;
+            int slot = search(leaf.keys, leaf.count, key);
+            return rank + ((slot >= 0) ? slot : -slot - 1);
+        }
+
+        @Override
+        public long select(long rank) {
+            Object node = root;
+            int remaining = (int) rank;
+            while (node instanceof Inner inner) {
+                int index = 0;
+                while (remaining >= inner.counts[index]) {
+                    remaining -= inner.counts[index];
+                    index++;
+                }
+                node = inner.children[index];
+            }
+            return position((Leaf) node, remaining);
+        }
+
+        @Override
+        public long rank(long position) {
+            return rank(keyAt(position));
+        }
+
+        private static long position(Leaf leaf, int slot) {
+            return ((long) leaf.id << 32) | slot;
+        }
+
+        private Leaf leafAt(long position) {
+            return leaves[(int) (position >>> 32)];
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(K key, V value) {
+            replaced = false;
+            Object sibling = insert(root, key, value, true);
+            if (sibling != null) {
+                Inner inner = newInner();
+                inner.children[0] = root;
+                inner.children[1] = sibling;
+                inner.counts[0] = count(root);
+                inner.counts[1] = count(sibling);
+                inner.keys[0] = splitKey;
+                inner.count = 2;
+                summarize(inner, 0, 2);
+                root = inner;
+            }
+            version++;
+            V previous = replaced ? (V) previousValue : null;
+            previousValue = null;
+            splitKey = null;
+            return previous;
+        }
+
+        private Object insert(Object node, K key, V value, boolean rightmost) {
+            if (node instanceof Leaf leaf) {
+                return insert(leaf, key, value);
+            }
+            Inner inner = (Inner) node;
+            int index = child(inner, key);
+            Object sibling = insert(inner.children[index], key, value, rightmost && index == inner.count - 1);
+            if (!replaced) {
+                inner.counts[index]++;
+            }
+            if (sibling == null) {
+                summarize(inner, index, index + 1);
+                return null;
+            }
+            int siblingCount = count(sibling);
+            inner.counts[index] -= siblingCount;
+            if (inner.count < ORDER) {
+                System.arraycopy(inner.keys, index, inner.keys, index + 1, inner.count - 1 - index);
+                System.arraycopy(inner.children, index + 1, inner.children, index + 2, inner.count - 1 - index);
+                System.arraycopy(inner.counts, index + 1, inner.counts, index + 2, inner.count - 1 - index);
+                if (aggregator != null) {
+                    System.arraycopy(inner.summaries, index + 1, inner.summaries, index + 2, inner.count - 1 - index);
+                }
+                inner.keys[index] = splitKey;
+                inner.children[index + 1] = sibling;
+                inner.counts[index + 1] = siblingCount;
+                inner.count++;
+                summarize(inner, index, index + 2);
+                return null;
+            }
+            // Lay out all ORDER + 1 children, then give the upper part to a new node
+            Object[] keys = new Object[ORDER];
+            Object[] children = new Object[ORDER + 1];
+            System.arraycopy(inner.keys, 0, keys, 0, index);
+            keys[index] = splitKey;
+            System.arraycopy(inner.keys, index, keys, index + 1, ORDER - 1 - index);
+            System.arraycopy(inner.children, 0, children, 0, index + 1);
+            children[index + 1] = sibling;
+            System.arraycopy(inner.children, index + 1, children, index + 2, ORDER - 1 - index);
+            int[] counts = new int[ORDER + 1];
+            System.arraycopy(inner.counts, 0, counts, 0, index + 1);
+            counts[index + 1] = siblingCount;
+            System.arraycopy(inner.counts, index + 1, counts, index + 2, ORDER - 1 - index);
+            // Appending in key order keeps the left node full instead of half empty
+            int split = (rightmost && index == ORDER - 1) ? ORDER : ORDER / 2;
+            Inner right = newInner();
+            System.arraycopy(children, 0, inner.children, 0, split);
+            System.arraycopy(keys, 0, inner.keys, 0, split - 1);
+            Arrays.fill(inner.children, split, ORDER, null);
+            Arrays.fill(inner.keys, split - 1, ORDER - 1, null);
+            System.arraycopy(counts, 0, inner.counts, 0, split);
+            Arrays.fill(inner.counts, split, ORDER, 0);
+            inner.count = split;
+            System.arraycopy(children, split, right.children, 0, ORDER + 1 - split);
+            System.arraycopy(counts, split, right.counts, 0, ORDER + 1 - split);
+            System.arraycopy(keys, split, right.keys, 0, ORDER - split);
+            right.count = ORDER + 1 - split;
+            // Splits are rare enough to recompute the summaries of both halves
+            if (aggregator != null) {
+                Arrays.fill(inner.summaries, null);
+                summarize(inner, 0, inner.count);
+                summarize(right, 0, right.count);
+            }
+            splitKey = keys[split - 1];
+            return right;
+        }
+
+        private Object insert(Leaf leaf, K key, V value) {
+            int slot = search(leaf.keys, leaf.count, key);
+            if (slot >= 0) {
+                previousValue = leaf.values[slot];
+                replaced = true;
+                leaf.values[slot] = value;
+                return null;
+            }
+            slot = -slot - 1;
+            size++;
+            if (leaf.count < ORDER) {
+                insertAt(leaf, slot, key, value);
+                return null;
+            }
+            // Appending in key order keeps the left leaf full instead of half empty
+            int split = (leaf == tail && slot == ORDER) ? ORDER : ORDER / 2;
+            Leaf right = newLeaf();
+            System.arraycopy(leaf.keys, split, right.keys, 0, ORDER - split);
+            System.arraycopy(leaf.values, split, right.values, 0, ORDER - split);
+            Arrays.fill(leaf.keys, split, ORDER, null);
+            Arrays.fill(leaf.values, split, ORDER, null);
+            right.count = ORDER - split;
+            leaf.count = split;
+            right.next = leaf.next;
+            right.previous = leaf;
+            if (leaf.next != null) {
+                leaf.next.previous = right;
+            } else {
+                tail = right;
+            }
+            leaf.next = right;
+            if (slot < split) {
+                insertAt(leaf, slot, key, value);
+            } else {
+                insertAt(right, slot - split, key, value);
+            }
+            splitKey = right.keys[0];
+            return right;
+        }
+
+        private static void insertAt(Leaf leaf, int slot, Object key, Object value) {
+            System.arraycopy(leaf.keys, slot, leaf.keys, slot + 1, leaf.count - slot);
+            System.arraycopy(leaf.values, slot, leaf.values, slot + 1, leaf.count - slot);
+            leaf.keys[slot] = key;
+            leaf.values[slot] = value;
+            leaf.count++;
+        }
+
+        // Fills leaves completely from the entries, in ascending key order, then builds each level of
+        // inner nodes over the one below it
+        void load(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+            List<Object> nodes = new ArrayList<>();
+            List<Object> lowestKeys = new ArrayList<>();
+            Leaf leaf = head;
+            while (entries.hasNext()) {
+                Map.Entry<? extends K, ? extends V> entry = entries.next();
+                if (leaf.count == ORDER) {
+                    Leaf next = newLeaf();
+                    next.previous = leaf;
+                    leaf.next = next;
+                    leaf = next;
+                }
+                if (leaf.count == 0) {
+                    nodes.add(leaf);
+                    lowestKeys.add(entry.getKey());
+                }
+                leaf.keys[leaf.count] = entry.getKey();
+                leaf.values[leaf.count] = entry.getValue();
+                leaf.count++;
+                size++;
+            }
+            tail = leaf;
+            while (nodes.size() > 1) {
+                List<Object> parents = new ArrayList<>();
+                List<Object> parentKeys = new ArrayList<>();
+                for (int start = 0; start < nodes.size(); start += ORDER) {
+                    Inner inner = newInner();
+                    inner.count = Math.min(ORDER, nodes.size() - start);
+                    for (int i = 0; i < inner.count; i++) {
+                        inner.children[i] = nodes.get(start + i);
+                        inner.counts[i] = count(inner.children[i]);
+                        if (i > 0) {
+                            inner.keys[i - 1] = lowestKeys.get(start + i);
+                        }
+                    }
+                    summarize(inner, 0, inner.count);
+                    parents.add(inner);
+                    parentKeys.add(lowestKeys.get(start));
+                }
+                nodes = parents;
+                lowestKeys = parentKeys;
+            }
+            if (!nodes.isEmpty()) {
+                root = nodes.get(0);
+            }
+            version++;
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(K key) {
+            Leaf leaf = leaf(key);
+            int slot = search(leaf.keys, leaf.count, key);
+            if (slot < 0) {
+                return null;
+            }
+            V previous = (V) leaf.values[slot];
+            if (delete(root, key)) {
+                reset();
+            } else {
+                while (root instanceof Inner inner && inner.count == 1) {
+                    root = inner.children[0];
+                }
+                size--;
+            }
+            version++;
+            return previous;
+        }
+
+        // Removes the key, which must be present, and returns true if the node became empty
+        private boolean delete(Object node, K key) {
+            if (node instanceof Leaf leaf) {
+                int slot = search(leaf.keys, leaf.count, key);
+                System.arraycopy(leaf.keys, slot + 1, leaf.keys, slot, leaf.count - slot - 1);
+                System.arraycopy(leaf.values, slot + 1, leaf.values, slot, leaf.count - slot - 1);
+                leaf.count--;
+                leaf.keys[leaf.count] = null;
+                leaf.values[leaf.count] = null;
+                if (leaf.count > 0) {
+                    return false;
+                }
+                unlink(leaf);
+                return true;
+            }
+            Inner inner = (Inner) node;
+            int index = child(inner, key);
+            inner.counts[index]--;
+            if (!delete(inner.children[index], key)) {
+                summarize(inner, index, index + 1);
+                return false;
+            }
+            // Drop the empty child together with the separator on one of its sides
+            int separator = Math.max(index - 1, 0);
+            if (inner.count > 1) {
+                System.arraycopy(inner.keys, separator + 1, inner.keys, separator, inner.count - 2 - separator);
+                inner.keys[inner.count - 2] = null;
+            }
+            System.arraycopy(inner.children, index + 1, inner.children, index, inner.count - 1 - index);
+            System.arraycopy(inner.counts, index + 1, inner.counts, index, inner.count - 1 - index);
+            if (aggregator != null) {
+                System.arraycopy(inner.summaries, index + 1, inner.summaries, index, inner.count - 1 - index);
+                inner.summaries[inner.count - 1] = null;
+            }
+            inner.count--;
+            inner.children[inner.count] = null;
+            inner.counts[inner.count] = 0;
+            return inner.count == 0;
+        }
+
+        private void unlink(Leaf leaf) {
+            if (leaf.previous != null) {
+                leaf.previous.next = leaf.next;
+            } else {
+                head = leaf.next;
+            }
+            if (leaf.next != null) {
+                leaf.next.previous = leaf.previous;
+            } else {
+                tail = leaf.previous;
+            }
+            freeLeaf(leaf);
+        }
+
+        void clear() {
+            if (size > 0) {
+                version++;
+            }
+            reset();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public long find(K key) {
+            Leaf leaf = leaf(key);
+            int slot = search(leaf.keys, leaf.count, key);
+            return (slot < 0) ? NONE : position(leaf, slot);
+        }
+
+        @Override
+        public long first() {
+            return (size == 0) ? NONE : position(head, 0);
+        }
+
+        @Override
+        public long last() {
+            return (size == 0) ? NONE : position(tail, tail.count - 1);
+        }
+
+        @Override
+        public long next(long position) {
+            Leaf leaf = leafAt(position);
+            int slot = (int) position + 1;
+            if (slot < leaf.count) {
+                return position + 1;
+            }
+            return (leaf.next == null) ? NONE : position(leaf.next, 0);
+        }
+
+        @Override
+        public long previous(long position) {
+            Leaf leaf = leafAt(position);
+            int slot = (int) position;
+            if (slot > 0) {
+                return position - 1;
+            }
+            return (leaf.previous == null) ? NONE : position(leaf.previous, leaf.previous.count - 1);
+        }
+
+        @Override
+        public long ceiling(K key, boolean inclusive) {
+            Leaf leaf = leaf(key);
+            int slot = search(leaf.keys, leaf.count, key);
+            slot = (slot >= 0) ? (inclusive ? slot : slot + 1) : -slot - 1;
+            if (slot < leaf.count) {
+                return position(leaf, slot);
+            }
+            return (leaf.next == null) ? NONE : position(leaf.next, 0);
+        }
+
+        @Override
+        public long floor(K key, boolean inclusive) {
+            Leaf leaf = leaf(key);
+            int slot = search(leaf.keys, leaf.count, key);
+            slot = (slot >= 0) ? (inclusive ? slot : slot - 1) : -slot - 2;
+            if (slot >= 0) {
+                return position(leaf, slot);
+            }
+            return (leaf.previous == null) ? NONE : position(leaf.previous, leaf.previous.count - 1);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K keyAt(long position) {
+            return (K) leafAt(position).keys[(int) position];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V valueAt(long position) {
+            return (V) leafAt(position).values[(int) position];
+        }
+    }
+}
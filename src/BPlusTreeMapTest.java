@@ -0,0 +1,157 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+// Test class for BPlusTreeMap, mostly through the B_PLUS_TREE backend of RoamingMap
+public class BPlusTreeMapTest {
+
+    private final Logger logger = Logger.getLogger(Barricade.class.getName());
+    private final LoggerTestingHandler handler = new LoggerTestingHandler();
+
+    @Before
+    public void setup() {
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void teardown() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    public void testMatchesTreeMap() {
+        RoamingMap<Integer, Integer> map = new RoamingMap<>(RoamingMap.Backend.B_PLUS_TREE);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        Random random = new Random(29);
+        // Grow past several levels of the tree, then shrink it so that whole leaves are emptied
+        DifferentialTesting.randomWrites(random, 30_000, 4, 40_000, key -> key - 20_000, i -> i, expected, map);
+        DifferentialTesting.randomWrites(random, 30_000, 2, 40_000, key -> key - 20_000, i -> i, expected, map);
+        DifferentialTesting.assertNavigatesLike(expected, map, DifferentialTesting.probes(-20_010, 20_010, 13, Integer::valueOf));
+        assertEquals(RangeSummary.of(expected.tailMap(0, false).entrySet()), map.rangeSummary(0, false, null, false));
+        assertThrows(UnsupportedOperationException.class, () -> map.headMap(0).clear());
+        assertThrows(UnsupportedOperationException.class, () -> map.keySet().clear());
+        assertThrows(UnsupportedOperationException.class, () -> map.values().clear());
+        assertThrows(UnsupportedOperationException.class, () -> map.entrySet().removeIf(entry -> true));
+        while (!expected.isEmpty()) {
+            assertEquals(expected.pollLastEntry(), map.pollLastEntry());
+            assertEquals(expected.pollFirstEntry(), map.pollFirstEntry());
+        }
+        assertTrue(map.isEmpty());
+        assertNull(map.firstEntry());
+        map.put(1, 1);
+        assertEquals("{1=1}", map.toString());
+    }
+
+    @Test
+    public void testIsVerifiedLikeTreeMap() {
+        RoamingMap<Integer, String> map = new RoamingMap<>(RoamingMap.Backend.B_PLUS_TREE);
+        RoamingMap<Integer, String> expected = new RoamingMap<>();
+        Map<Integer, String> entries = new LinkedHashMap<>();
+        for (int key = 0; key < 10_000; key++) {
+            entries.put(key, "v" + key);
+        }
+        Barricade.safePutAll(map, entries);
+        expected.putAll(entries);
+        assertEquals(expected.fingerprint(), map.fingerprint());
+        assertEquals("v7", Barricade.safeValue(map, 7));
+        assertEquals(10_000, Barricade.correctSize(map));
+        assertEquals(Map.entry(9_999, "v9999"), Barricade.safeFloorEntry(map, 20_000));
+        assertEquals(expected.subMap(300, true, 900, false).entrySet(), Barricade.safeSubMap(map, 300, true, 900, false).entrySet());
+        assertEquals(expected.toString(), Barricade.correctStringRepresentation(map));
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testViewsCountTheirEntries() {
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int key = 0; key < 30_000; key += 3) {
+            expected.put(key, key);
+        }
+        RoamingMap<Integer, Integer> map = RoamingMap.fromSorted(expected.entrySet().iterator(), RoamingMap.Backend.B_PLUS_TREE);
+        for (int key = 0; key < 30_000; key += 500) {
+            map.remove(key + 3);
+            expected.remove(key + 3);
+            map.put(key + 1, key);
+            expected.put(key + 1, key);
+        }
+        assertEquals(expected.size(), map.size());
+        for (int from = -10; from <= 30_010; from += 997) {
+            assertEquals(expected.headMap(from, true).size(), map.headMap(from, true).size());
+            assertEquals(expected.tailMap(from, false).size(), map.tailMap(from, false).size());
+            for (int to = from; to <= 30_010; to += 4_001) {
+                assertEquals(expected.subMap(from, true, to, false).size(), map.subMap(from, true, to, false).size());
+                assertEquals(expected.descendingMap().subMap(to, true, from, true).size(),
+                        map.descendingMap().subMap(to, true, from, true).size());
+            }
+        }
+        assertEquals(0, map.subMap(4, true, 5, true).size());
+        assertEquals(expected.get(expected.firstKey()), map.get(map.select(0)));
+    }
+
+    @Test
+    public void testBulkLoadKeepsSummaries() {
+        Aggregator<Integer, Long> count = Aggregator.counting();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int key = 0; key < 100_000; key++) {
+            expected.put(key, key);
+        }
+        BPlusTreeMap<Integer, Integer> map = new BPlusTreeMap<>(count);
+        map.putAll(expected);
+        assertEquals(100_000L, map.aggregate(null, false, null, false));
+        assertEquals(1_000L, map.aggregate(5_000, true, 6_000, false));
+        map.put(5_500, 0);
+        map.remove(5_501);
+        map.put(-1, 0);
+        assertEquals(999L, map.aggregate(5_000, true, 6_000, false));
+        assertEquals(100_000L, map.aggregate(null, false, null, false));
+        assertThrows(IllegalStateException.class, () -> new BPlusTreeMap<Integer, Integer>().aggregate(null, false, null, false));
+    }
+
+    @Test
+    public void testSpliteratorsSplitByRank() {
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int key = 0; key < 100_000; key += 3) {
+            expected.put(key, -key);
+        }
+        RoamingMap<Integer, Integer> map = RoamingMap.fromSorted(expected.entrySet().iterator(), RoamingMap.Backend.B_PLUS_TREE);
+        NavigableMap<Integer, Integer> range = map.subMap(1_000, false, 90_000, true);
+        Spliterator<Map.Entry<Integer, Integer>> entries = range.entrySet().spliterator();
+        int size = expected.subMap(1_000, false, 90_000, true).size();
+        assertEquals(size, entries.getExactSizeIfKnown());
+        assertTrue(entries.hasCharacteristics(Spliterator.SUBSIZED | Spliterator.ORDERED));
+        Spliterator<Map.Entry<Integer, Integer>> prefix = entries.trySplit();
+        assertEquals(size / 2, prefix.getExactSizeIfKnown());
+        assertEquals(size - size / 2, entries.getExactSizeIfKnown());
+        assertTrue(prefix.tryAdvance(entry -> assertEquals(Integer.valueOf(1_002), entry.getKey())));
+
+        assertEquals(new ArrayList<>(expected.subMap(1_000, false, 90_000, true).entrySet()),
+                range.entrySet().parallelStream().collect(Collectors.toList()));
+        assertEquals(new ArrayList<>(expected.descendingMap().headMap(50_000).keySet()),
+                map.descendingMap().headMap(50_000).keySet().parallelStream().collect(Collectors.toList()));
+        assertEquals(Collections.reverseOrder(), map.descendingKeySet().spliterator().getComparator());
+        assertEquals(new ArrayList<>(expected.tailMap(77_777).values()),
+                map.tailMap(77_777, true).values().parallelStream().collect(Collectors.toList()));
+        assertEquals(0, map.subMap(1, 2).entrySet().spliterator().estimateSize());
+
+        PersistentRoamingMap<Integer, Integer> persistent = new PersistentRoamingMap<>();
+        persistent.putAll(expected);
+        assertEquals(new ArrayList<>(expected.headMap(60_000).entrySet()),
+                persistent.headMap(60_000, false).entrySet().parallelStream().collect(Collectors.toList()));
+
+        Spliterator<Integer> keys = map.keySet().spliterator();
+        map.put(1, 1);
+        assertThrows(ConcurrentModificationException.class, () -> keys.tryAdvance(key -> { }));
+    }
+}
@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -6,48 +7,209 @@ import java.util.logging.Logger;
  * The Barricade class provides safety mechanisms for operations on NavigableMap.
  * It ensures that operations like get, put, size, etc. behave correctly and
  * maintain the map's state integrity.
+ * Maps implementing VersionedMap are verified incrementally through their version stamp;
+ * other maps are verified against a full copy taken before each operation.
+ * The VerificationPolicy decides which calls are verified; the others go straight to the map.
+ * Gets and puts on maps guarded by an installed AsyncVerifier are verified off the calling thread.
+ * Operations on maps shared with {@link #shareBetweenThreads} hold a striped read/write lock of the map.
  */
 public class Barricade {
 
-    record StateRecoveryOptional<V>(V value, Exception exception) {}
+    record StateRecoveryOptional<V>(V value, Exception exception) {
+
+        private static final StateRecoveryOptional<?> ABSENT = new StateRecoveryOptional<>(null, null);
+
+        /**
+         * Returns the result of an operation, sharing one instance for every successful null result
+         * @param value the value returned by the operation
+         * @return the result of the operation
+         */
+        @SuppressWarnings("unchecked")
+        static <V> StateRecoveryOptional<V> of(V value) {
+            return (value == null) ? (StateRecoveryOptional<V>) ABSENT : new StateRecoveryOptional<>(value, null);
+        }
+    }
 
     private static final Logger logger = Logger.getLogger(Barricade.class.getName());
 
+    private static final BarricadeMetrics metrics = new BarricadeMetrics();
+
+    // Number of characters buffered before a streamed string representation is written out
+    private static final int RENDER_CHUNK = 8_192;
+
+    private static volatile VerificationPolicy policy = VerificationPolicy.always();
+
+    private static volatile AsyncVerifier asyncVerifier;
+
+    // Whether the last safeValue call of each thread had to use the correct value instead of the map's
+    private static final ThreadLocal<Boolean> recovered = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * Sets the policy that decides which calls are verified
+     * @param verificationPolicy the new policy
+     * @throws NullPointerException if the policy is null
+     */
+    static void setVerificationPolicy(VerificationPolicy verificationPolicy) {
+        policy = Objects.requireNonNull(verificationPolicy, "Verification policy cannot be null");
+    }
+
+    static VerificationPolicy verificationPolicy() {
+        return policy;
+    }
+
+    static BarricadeMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Keeps a shadow replica of the map that is updated with every successful safe write and
+     * answers the expected state of the map from then on, instead of the map itself
+     * @param map the map to replicate
+     * @throws NullPointerException if the map is null
+     */
+    static <K extends Comparable<K>, V> void replicate(VersionedMap<K, V> map) {
+        ShadowReplica.register(map);
+    }
+
+    /**
+     * Drops the shadow replica of the map, if it has one
+     * @param map the replicated map
+     */
+    static void stopReplicating(NavigableMap<?, ?> map) {
+        ShadowReplica.unregister(map);
+    }
+
+    /**
+     * Installs a verifier that checks safeGet and safePut on the maps it guards off the calling thread
+     * @param verifier the verifier, or null to verify every map synchronously again
+     */
+    static void setAsyncVerifier(AsyncVerifier verifier) {
+        asyncVerifier = verifier;
+    }
+
+    /**
+     * Locks every safe operation on the map so that it can be shared between threads: reads run in
+     * parallel on striped read locks and each verification sees one consistent state, while writes
+     * exclude all other operations on the map. Reads of maps whose reads modify them, such as
+     * BoundedRoamingMap, exclude each other as well. Maps guarded by an AsyncVerifier are not locked, and
+     * views returned by the map, such as sub-maps, are not protected once they are returned.
+     * @param map the map shared between threads
+     * @throws NullPointerException if the map is null
+     */
+    static void shareBetweenThreads(NavigableMap<?, ?> map) {
+        MapLock.register(map, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Stops locking operations on the map
+     * @param map the shared map
+     */
+    static void stopSharing(NavigableMap<?, ?> map) {
+        MapLock.unregister(map);
+    }
+
     // Renamed to safeGet to better express the intent of validating state while getting a value
     final static <K extends Comparable<K>, V> StateRecoveryOptional<V> safeGet(NavigableMap<K, V> map, K key) {
+        return StateRecoveryOptional.of(safeValue(map, key));
+    }
+
+    /**
+     * Gets the value of the key like safeGet, without wrapping it in a result, so that successful
+     * reads do not allocate. Whether the correct value had to be used instead of the one returned
+     * by the map is reported by {@link #lastValueRecovered()} on the same thread.
+     * @param map the map to read from
+     * @param key the key to look up
+     * @return the correct value of the key, or null if the key is absent
+     * @throws NullPointerException if the map or the key is null
+     */
+    final static <K extends Comparable<K>, V> V safeValue(NavigableMap<K, V> map, K key) {
         Objects.requireNonNull(map);
         Objects.requireNonNull(key);
-        Map<K, V> copy = new TreeMap<>();
-        copy.putAll(map);
-        Set<Map.Entry<K, V>> entrySetBefore = copy.entrySet();
-        V prevValue = entrySetBefore.stream()
-                .filter(entry -> Objects.equals(entry.getKey(), key))
-                .map(Map.Entry::getValue)
-                .findFirst().orElse(null);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.GET);
+        counters.called();
+        recovered.set(Boolean.FALSE);
+        AsyncVerifier verifier = asyncVerifier;
+        if (verifier != null && verifier.guards(map)) {
+            return verifier.get(map, key);
+        }
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                return map.get(key);
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedValue(BarricadeMetrics.Operation.GET, map, key);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    /**
+     * Returns true if the last safeValue or safeGet call of this thread had to use the correct
+     * value instead of the value returned by the map, false otherwise
+     * @return true if the last read of this thread was recovered, false otherwise
+     */
+    static boolean lastValueRecovered() {
+        return recovered.get();
+    }
+
+    private static <K extends Comparable<K>, V> V verifiedValue(BarricadeMetrics.Operation operation, NavigableMap<K, V> map, K key) {
+        MapState<K, V> state = capture(operation, map);
+        V prevValue = state.value(key);
         V value = map.get(key);
-        Set<Map.Entry<K, V>> entrySetAfter = correctEntrySet(map);
-        if (!Objects.equals(entrySetBefore, entrySetAfter)) {
-            throw new RuntimeException("get method of NavigableMap operated incorrectly");
+        if (!state.matches(map)) {
+            throw failure(operation, "get method of NavigableMap operated incorrectly");
         }
         // If the returned value is inconsistent with expectation, log a warning and return the correct value
         if (!Objects.equals(prevValue, value)) {
-            logger.log(Level.WARNING, "get method of NavigableMap returned incorrect value; correct value was used instead");
-            return new StateRecoveryOptional<>(prevValue, null);
+            warn(operation, "get method of NavigableMap returned incorrect value; correct value was used instead");
+            recovered.set(Boolean.TRUE);
+            return prevValue;
         }
-        return new StateRecoveryOptional<>(value, null);
+        return value;
     }
 
     final static <K extends Comparable<K>, V> int correctSize(NavigableMap<K, V> map) {
         Objects.requireNonNull(map);
-        int prevSize = Collections.unmodifiableNavigableMap(map).size();
-        Set<Map.Entry<K, V>> entrySetBefore = correctEntrySet(map);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.SIZE);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                return map.size();
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedSize(map);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    private static <K extends Comparable<K>, V> int verifiedSize(NavigableMap<K, V> map) {
+        MapState<K, V> state = capture(BarricadeMetrics.Operation.SIZE, map);
+        int prevSize = state.size();
         int size = map.size();
-        Set<Map.Entry<K, V>> entrySetAfter = correctEntrySet(map);
-        if (!Objects.equals(entrySetBefore, entrySetAfter)) {
-            throw new RuntimeException("size method of NavigableMap operated incorrectly");
+        if (!state.matches(map)) {
+            throw failure(BarricadeMetrics.Operation.SIZE, "size method of NavigableMap operated incorrectly");
         }
         if (size != prevSize) {
-            logger.log(Level.WARNING, "size method of NavigableMap returned incorrect value; correct value was used instead");
+            warn(BarricadeMetrics.Operation.SIZE, "size method of NavigableMap returned incorrect value; correct value was used instead");
             return prevSize;
         }
         return size;
@@ -58,21 +220,385 @@ public class Barricade {
         Objects.requireNonNull(map);
         Objects.requireNonNull(key);
         Objects.requireNonNull(value, "Value cannot be null");
-        Map<K, V> copy = new TreeMap<>();
-        copy.putAll(map);
-        copy.put(key, value);
-        Set<Map.Entry<K, V>> prevRoamingSet = copy.entrySet();
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.PUT);
+        counters.called();
+        AsyncVerifier verifier = asyncVerifier;
+        if (verifier != null && verifier.guards(map)) {
+            return StateRecoveryOptional.of(verifier.put(map, key, value));
+        }
+        MapLock lock = MapLock.of(map);
+        lock.lockWrite();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                return StateRecoveryOptional.of(map.put(key, value));
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedPut(map, key, value);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    private static <K extends Comparable<K>, V> StateRecoveryOptional<V> verifiedPut(NavigableMap<K, V> map, K key, V value) {
+        MapState<K, V> state = capture(BarricadeMetrics.Operation.PUT, map);
+        state.expectPut(key, value);
         V lastValue = map.put(key, value);
-        V updatedValue = safeGet(map, key).value();
-        Set<Map.Entry<K, V>> newRoamingSet = correctEntrySet(map);
-        if (Objects.equals(updatedValue, value) && Objects.equals(prevRoamingSet, newRoamingSet)) {
-            return new StateRecoveryOptional<>(lastValue, null);
-        } else {
-            throw new RuntimeException("put method of NavigableMap operated incorrectly");
+        if (!state.matches(map)) {
+            throw failure(BarricadeMetrics.Operation.PUT, "put method of NavigableMap operated incorrectly");
+        }
+        state.commit();
+        V updatedValue = verifiedValue(BarricadeMetrics.Operation.PUT, map, key);
+        if (!Objects.equals(updatedValue, value)) {
+            throw failure(BarricadeMetrics.Operation.PUT, "put method of NavigableMap operated incorrectly");
+        }
+        return StateRecoveryOptional.of(lastValue);
+    }
+
+    /**
+     * Gets the values of all keys from the map, verifying the state of the map once for the whole batch
+     * @param map the map to read from
+     * @param keys the keys to look up
+     * @return the result of each key, in the iteration order of the keys
+     * @throws NullPointerException if the map, the keys or any key is null
+     * @throws RuntimeException if the state of the map changed during the batch
+     */
+    final static <K extends Comparable<K>, V> Map<K, StateRecoveryOptional<V>> safeGetAll(NavigableMap<K, V> map, Collection<? extends K> keys) {
+        Objects.requireNonNull(map);
+        Objects.requireNonNull(keys);
+        keys.forEach(Objects::requireNonNull);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.GET_ALL);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                Map<K, StateRecoveryOptional<V>> results = new LinkedHashMap<>();
+                for (K key : keys) {
+                    results.put(key, StateRecoveryOptional.of(map.get(key)));
+                }
+                return results;
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedGetAll(map, keys);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Map<K, StateRecoveryOptional<V>> verifiedGetAll(NavigableMap<K, V> map, Collection<? extends K> keys) {
+        MapState<K, V> state = capture(BarricadeMetrics.Operation.GET_ALL, map);
+        Map<K, StateRecoveryOptional<V>> results = new LinkedHashMap<>();
+        int incorrectValues = 0;
+        for (K key : keys) {
+            V prevValue = state.value(key);
+            V value = map.get(key);
+            if (!Objects.equals(prevValue, value)) {
+                incorrectValues++;
+            }
+            results.put(key, StateRecoveryOptional.of(prevValue));
+        }
+        if (!state.matches(map)) {
+            throw failure(BarricadeMetrics.Operation.GET_ALL, "get method of NavigableMap operated incorrectly");
+        }
+        if (incorrectValues > 0) {
+            warn(BarricadeMetrics.Operation.GET_ALL, "get method of NavigableMap returned incorrect value for " + incorrectValues
+                    + " keys; correct values were used instead");
+        }
+        return results;
+    }
+
+    /**
+     * Puts all entries into the map, verifying the state of the map once for the whole batch
+     * @param map the map to write to
+     * @param entries the entries to put
+     * @return the previous value of each key, in the iteration order of the entries
+     * @throws NullPointerException if the map, the entries or any key or value is null
+     * @throws RuntimeException if the map did not end up in the expected state
+     */
+    final static <K extends Comparable<K>, V> Map<K, StateRecoveryOptional<V>> safePutAll(NavigableMap<K, V> map, Map<? extends K, ? extends V> entries) {
+        Objects.requireNonNull(map);
+        Objects.requireNonNull(entries);
+        entries.forEach((key, value) -> {
+            Objects.requireNonNull(key);
+            Objects.requireNonNull(value, "Value cannot be null");
+        });
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.PUT_ALL);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        lock.lockWrite();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                Map<K, StateRecoveryOptional<V>> results = new LinkedHashMap<>();
+                entries.forEach((key, value) -> results.put(key, StateRecoveryOptional.of(map.put(key, value))));
+                return results;
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedPutAll(map, entries);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Verifies a map that was bulk loaded from the entries instead of filled through safePutAll, with
+     * the check of a verified batch of puts into an empty map: the map must hold one entry per entry
+     * given, and both its own fingerprint and that of the entries it iterates must be the fingerprint
+     * of the entries given. Counts as a batch of puts in the metrics and follows the verification policy.
+     * @param map the map that was loaded
+     * @param entries the entries it was loaded from, with distinct keys
+     * @throws NullPointerException if the map or the entries are null
+     * @throws RuntimeException if the map does not hold the entries
+     */
+    static <K extends Comparable<K>, V> void verifyLoaded(VersionedMap<K, V> map, Collection<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        Objects.requireNonNull(map);
+        Objects.requireNonNull(entries);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.PUT_ALL);
+        counters.called();
+        VerificationPolicy sampler = policy;
+        if (!sampler.shouldVerify()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            long fingerprint = 0;
+            for (Map.Entry<? extends K, ? extends V> entry : entries) {
+                fingerprint += VersionedMap.fingerprint(entry.getKey(), entry.getValue());
+            }
+            RangeSummary loaded = RangeSummary.of(map.entrySet());
+            if (loaded.size() != entries.size() || loaded.fingerprint() != fingerprint || map.fingerprint() != fingerprint) {
+                throw failure(BarricadeMetrics.Operation.PUT_ALL, "put method of NavigableMap operated incorrectly");
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            sampler.verified(elapsed);
+            counters.verified(elapsed);
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Map<K, StateRecoveryOptional<V>> verifiedPutAll(NavigableMap<K, V> map, Map<? extends K, ? extends V> entries) {
+        MapState<K, V> state = capture(BarricadeMetrics.Operation.PUT_ALL, map);
+        entries.forEach(state::expectPut);
+        Map<K, StateRecoveryOptional<V>> results = new LinkedHashMap<>();
+        entries.forEach((key, value) -> results.put(key, StateRecoveryOptional.of(map.put(key, value))));
+        if (!state.matches(map)) {
+            throw failure(BarricadeMetrics.Operation.PUT_ALL, "put method of NavigableMap operated incorrectly");
+        }
+        state.commit();
+        MapState<K, V> updated = capture(BarricadeMetrics.Operation.PUT_ALL, map);
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            if (!Objects.equals(updated.value(entry.getKey()), entry.getValue())) {
+                throw failure(BarricadeMetrics.Operation.PUT_ALL, "put method of NavigableMap operated incorrectly");
+            }
         }
+        return results;
+    }
+
+    final static <K extends Comparable<K>, V> Map.Entry<K, V> safeFloorEntry(NavigableMap<K, V> map, K key) {
+        return safeNeighbour(map, key, true, true);
+    }
+
+    final static <K extends Comparable<K>, V> Map.Entry<K, V> safeLowerEntry(NavigableMap<K, V> map, K key) {
+        return safeNeighbour(map, key, false, true);
+    }
+
+    final static <K extends Comparable<K>, V> Map.Entry<K, V> safeCeilingEntry(NavigableMap<K, V> map, K key) {
+        return safeNeighbour(map, key, true, false);
+    }
+
+    final static <K extends Comparable<K>, V> Map.Entry<K, V> safeHigherEntry(NavigableMap<K, V> map, K key) {
+        return safeNeighbour(map, key, false, false);
+    }
+
+    // Verifies floorEntry, lowerEntry, ceilingEntry or higherEntry by looking only at the keys between the key and the answer
+    private static <K extends Comparable<K>, V> Map.Entry<K, V> safeNeighbour(NavigableMap<K, V> map, K key, boolean inclusive, boolean below) {
+        Objects.requireNonNull(map);
+        Objects.requireNonNull(key);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.NAVIGATION);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                return neighbour(map, key, inclusive, below);
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedNeighbour(map, key, inclusive, below);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Map.Entry<K, V> verifiedNeighbour(NavigableMap<K, V> map, K key, boolean inclusive, boolean below) {
+        String method = (below ? (inclusive ? "floorEntry" : "lowerEntry") : (inclusive ? "ceilingEntry" : "higherEntry"));
+        if (!(map instanceof VersionedMap<K, V> versioned)) {
+            NavigableMap<K, V> copy = copy(BarricadeMetrics.Operation.NAVIGATION, map);
+            Map.Entry<K, V> entry = neighbour(map, key, inclusive, below);
+            if (!Objects.equals(copy.entrySet(), correctEntrySet(map))) {
+                throw failure(BarricadeMetrics.Operation.NAVIGATION, method + " method of NavigableMap operated incorrectly");
+            }
+            Map.Entry<K, V> expected = neighbour(copy, key, inclusive, below);
+            if (!Objects.equals(expected, entry)) {
+                warn(BarricadeMetrics.Operation.NAVIGATION, method + " method of NavigableMap returned incorrect value; correct value was used instead");
+                return expected;
+            }
+            return entry;
+        }
+        long fingerprint = versioned.fingerprint();
+        Map.Entry<K, V> entry = neighbour(map, key, inclusive, below);
+        if (versioned.fingerprint() != fingerprint) {
+            throw failure(BarricadeMetrics.Operation.NAVIGATION, method + " method of NavigableMap operated incorrectly");
+        }
+        if (isNeighbour(versioned, key, inclusive, below, entry)) {
+            return entry;
+        }
+        // The full copy is only paid for once a wrong answer has been detected
+        Map.Entry<K, V> expected = neighbour(copy(BarricadeMetrics.Operation.NAVIGATION, map), key, inclusive, below);
+        warn(BarricadeMetrics.Operation.NAVIGATION, method + " method of NavigableMap returned incorrect value; correct value was used instead");
+        return expected;
+    }
+
+    private static <K extends Comparable<K>, V> Map.Entry<K, V> neighbour(NavigableMap<K, V> map, K key, boolean inclusive, boolean below) {
+        if (below) {
+            return inclusive ? map.floorEntry(key) : map.lowerEntry(key);
+        }
+        return inclusive ? map.ceilingEntry(key) : map.higherEntry(key);
+    }
+
+    // The entry is the right answer if it is on the right side of the key, holds the value stored
+    // under its key, and no other key of the map lies between it and the key
+    private static <K extends Comparable<K>, V> boolean isNeighbour(VersionedMap<K, V> map, K key, boolean inclusive, boolean below, Map.Entry<K, V> entry) {
+        if (entry == null) {
+            RangeSummary beyond = below ? map.rangeSummary(null, false, key, inclusive) : map.rangeSummary(key, inclusive, null, false);
+            return beyond.size() == 0;
+        }
+        K found = entry.getKey();
+        int comparison = found.compareTo(key);
+        boolean sideOk = below ? (inclusive ? comparison <= 0 : comparison < 0) : (inclusive ? comparison >= 0 : comparison > 0);
+        if (!sideOk) {
+            return false;
+        }
+        RangeSummary gap = below ? map.rangeSummary(found, false, key, inclusive) : map.rangeSummary(key, inclusive, found, false);
+        RangeSummary point = map.rangeSummary(found, true, found, true);
+        return gap.size() == 0 && point.size() == 1 && point.fingerprint() == VersionedMap.fingerprint(found, entry.getValue());
+    }
+
+    final static <K extends Comparable<K>, V> NavigableMap<K, V> safeHeadMap(NavigableMap<K, V> map, K toKey, boolean inclusive) {
+        Objects.requireNonNull(toKey);
+        return safeRange(map, null, false, toKey, inclusive);
+    }
+
+    final static <K extends Comparable<K>, V> NavigableMap<K, V> safeTailMap(NavigableMap<K, V> map, K fromKey, boolean inclusive) {
+        Objects.requireNonNull(fromKey);
+        return safeRange(map, fromKey, inclusive, null, false);
+    }
+
+    final static <K extends Comparable<K>, V> NavigableMap<K, V> safeSubMap(NavigableMap<K, V> map, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        Objects.requireNonNull(fromKey);
+        Objects.requireNonNull(toKey);
+        return safeRange(map, fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    // Verifies a sub-map view by comparing its summary with the summary of the same range of the map
+    private static <K extends Comparable<K>, V> NavigableMap<K, V> safeRange(NavigableMap<K, V> map, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        Objects.requireNonNull(map);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.SUB_MAP);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                return Collections.unmodifiableNavigableMap(RangeSummary.slice(map, fromKey, fromInclusive, toKey, toInclusive));
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedRange(map, fromKey, fromInclusive, toKey, toInclusive);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    private static <K extends Comparable<K>, V> NavigableMap<K, V> verifiedRange(NavigableMap<K, V> map, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (!(map instanceof VersionedMap<K, V> versioned)) {
+            NavigableMap<K, V> copy = copy(BarricadeMetrics.Operation.SUB_MAP, map);
+            NavigableMap<K, V> range = RangeSummary.slice(map, fromKey, fromInclusive, toKey, toInclusive);
+            Set<Map.Entry<K, V>> entries = new HashSet<>(range.entrySet());
+            if (!Objects.equals(copy.entrySet(), correctEntrySet(map))) {
+                throw failure(BarricadeMetrics.Operation.SUB_MAP, "subMap method of NavigableMap operated incorrectly");
+            }
+            NavigableMap<K, V> expected = RangeSummary.slice(copy, fromKey, fromInclusive, toKey, toInclusive);
+            if (!Objects.equals(expected.entrySet(), entries)) {
+                warn(BarricadeMetrics.Operation.SUB_MAP, "subMap method of NavigableMap returned incorrect value; correct value was used instead");
+                return Collections.unmodifiableNavigableMap(expected);
+            }
+            return Collections.unmodifiableNavigableMap(range);
+        }
+        long fingerprint = versioned.fingerprint();
+        NavigableMap<K, V> range = RangeSummary.slice(map, fromKey, fromInclusive, toKey, toInclusive);
+        RangeSummary actual = RangeSummary.of(range.entrySet());
+        boolean inRange = range.isEmpty() || (inRange(range.firstKey(), fromKey, fromInclusive, toKey, toInclusive)
+                && inRange(range.lastKey(), fromKey, fromInclusive, toKey, toInclusive));
+        if (versioned.fingerprint() != fingerprint) {
+            throw failure(BarricadeMetrics.Operation.SUB_MAP, "subMap method of NavigableMap operated incorrectly");
+        }
+        if (inRange && actual.equals(versioned.rangeSummary(fromKey, fromInclusive, toKey, toInclusive))) {
+            return Collections.unmodifiableNavigableMap(range);
+        }
+        // The full copy is only paid for once a wrong answer has been detected
+        NavigableMap<K, V> copy = copy(BarricadeMetrics.Operation.SUB_MAP, map);
+        warn(BarricadeMetrics.Operation.SUB_MAP, "subMap method of NavigableMap returned incorrect value; correct value was used instead");
+        return Collections.unmodifiableNavigableMap(RangeSummary.slice(copy, fromKey, fromInclusive, toKey, toInclusive));
+    }
+
+    private static <K extends Comparable<K>> boolean inRange(K key, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey != null) {
+            int comparison = key.compareTo(fromKey);
+            if (comparison < 0 || (comparison == 0 && !fromInclusive)) {
+                return false;
+            }
+        }
+        if (toKey != null) {
+            int comparison = key.compareTo(toKey);
+            return comparison < 0 || (comparison == 0 && toInclusive);
+        }
+        return true;
     }
 
     final static <K extends Comparable<K>, V> Set<K> correctKeySet(NavigableMap<K, V> map) {
+        metrics.operation(BarricadeMetrics.Operation.KEY_SET).called();
         return Collections.unmodifiableMap(Objects.requireNonNull(map)).keySet();
     }
 
@@ -82,19 +608,131 @@ public class Barricade {
 
     final static <K extends Comparable<K>, V> String correctStringRepresentation(NavigableMap<K, V> map) {
         Objects.requireNonNull(map);
-        Map<K, V> copy = new TreeMap<>();
-        copy.putAll(map);
-        String prevRepresentation = copy.toString();
-        Set<Map.Entry<K, V>> roamingSetBefore = correctEntrySet(map);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.STRING_REPRESENTATION);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                return map.toString();
+            }
+            long start = System.nanoTime();
+            try {
+                return verifiedStringRepresentation(map);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    private static <K extends Comparable<K>, V> String verifiedStringRepresentation(NavigableMap<K, V> map) {
+        MapState<K, V> state = capture(BarricadeMetrics.Operation.STRING_REPRESENTATION, map);
+        String prevRepresentation = state.representation();
         String representation = map.toString();
-        Set<Map.Entry<K, V>> roamingSetAfter = correctEntrySet(map);
-        if (!Objects.equals(roamingSetBefore, roamingSetAfter)) {
-            throw new RuntimeException("toString method of NavigableMap operated incorrectly");
+        if (!state.matches(map)) {
+            throw failure(BarricadeMetrics.Operation.STRING_REPRESENTATION, "toString method of NavigableMap operated incorrectly");
         }
         if (!Objects.equals(prevRepresentation, representation)) {
-            logger.log(Level.WARNING, "toString method of NavigableMap returned incorrect value; correct value was used instead");
+            warn(BarricadeMetrics.Operation.STRING_REPRESENTATION, "toString method of NavigableMap returned incorrect value; correct value was used instead");
             return prevRepresentation;
         }
         return representation;
     }
+
+    /**
+     * Writes the string representation of the map to the output in the format of AbstractMap.toString,
+     * in chunks of bounded size instead of as one string. The written entries are digested as they are
+     * streamed and checked against the state of the map captured before writing, so memory stays
+     * bounded by the chunk size and the state, not by the length of the representation.
+     * If the check fails, part of the representation may already have been written and must be discarded.
+     * @param map the map to render
+     * @param out the output to write to
+     * @throws NullPointerException if the map or the output is null
+     * @throws IOException if writing to the output fails
+     * @throws RuntimeException if the map changed or did not yield the entries of its state while being written
+     */
+    final static <K extends Comparable<K>, V> void writeStringRepresentation(NavigableMap<K, V> map, Appendable out) throws IOException {
+        Objects.requireNonNull(map);
+        Objects.requireNonNull(out);
+        BarricadeMetrics.OperationMetrics counters = metrics.operation(BarricadeMetrics.Operation.STRING_REPRESENTATION);
+        counters.called();
+        MapLock lock = MapLock.of(map);
+        int stripe = lock.lockRead();
+        try {
+            VerificationPolicy sampler = policy;
+            if (!sampler.shouldVerify()) {
+                stream(map.entrySet(), out);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                MapState<K, V> state = capture(BarricadeMetrics.Operation.STRING_REPRESENTATION, map);
+                RangeSummary expected = state.summary();
+                RangeSummary written = stream(state.entries(), out);
+                if (!state.matches(map) || !written.equals(expected)) {
+                    throw failure(BarricadeMetrics.Operation.STRING_REPRESENTATION, "toString method of NavigableMap operated incorrectly");
+                }
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                sampler.verified(elapsed);
+                counters.verified(elapsed);
+            }
+        } finally {
+            lock.unlockRead(stripe);
+        }
+    }
+
+    // Writes the entries in chunks and returns the summary of what was written
+    private static <K, V> RangeSummary stream(Iterable<Map.Entry<K, V>> entries, Appendable out) throws IOException {
+        StringBuilder chunk = new StringBuilder(RENDER_CHUNK + 64).append('{');
+        int size = 0;
+        long fingerprint = 0;
+        for (Map.Entry<K, V> entry : entries) {
+            K key = entry.getKey();
+            V value = entry.getValue();
+            if (size > 0) {
+                chunk.append(", ");
+            }
+            chunk.append(key).append('=').append(value);
+            size++;
+            fingerprint += VersionedMap.fingerprint(key, value);
+            if (chunk.length() >= RENDER_CHUNK) {
+                out.append(chunk);
+                chunk.setLength(0);
+            }
+        }
+        out.append(chunk.append('}'));
+        return new RangeSummary(size, fingerprint);
+    }
+
+    private static <K extends Comparable<K>, V> MapState<K, V> capture(BarricadeMetrics.Operation operation, NavigableMap<K, V> map) {
+        MapState<K, V> state = MapState.capture(map);
+        metrics.operation(operation).copied(state.copiedEntries());
+        return state;
+    }
+
+    private static <K extends Comparable<K>, V> NavigableMap<K, V> copy(BarricadeMetrics.Operation operation, NavigableMap<K, V> map) {
+        if (map instanceof PersistentRoamingMap<K, V> persistent) {
+            metrics.operation(operation).copied(0);
+            return persistent.snapshot();
+        }
+        RoamingMap<K, V> copy = RoamingMap.copyOf(map);
+        metrics.operation(operation).copied(copy.size());
+        return copy;
+    }
+
+    private static void warn(BarricadeMetrics.Operation operation, String message) {
+        metrics.operation(operation).warned();
+        logger.log(Level.WARNING, message);
+    }
+
+    private static RuntimeException failure(BarricadeMetrics.Operation operation, String message) {
+        metrics.operation(operation).failed();
+        return new RuntimeException(message);
+    }
 }
@@ -0,0 +1,242 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Low-overhead instrumentation of Barricade: how often each operation is called, how long
+ * verification takes, how often the correct value had to be used instead, how often the map
+ * was found operating incorrectly and how many entries were copied to verify it.
+ * All counters are striped LongAdders and latencies go to fixed power-of-two buckets, so
+ * recording never blocks. The metrics can be read through {@link #snapshot()} or over JMX
+ * once {@link #registerMBean()} has been called.
+ */
+public final class BarricadeMetrics implements BarricadeMetricsMXBean {
+
+    /**
+     * The Barricade operations that are instrumented
+     */
+    public enum Operation {
+        GET,
+        PUT,
+        GET_ALL,
+        PUT_ALL,
+        SIZE,
+        KEY_SET,
+        STRING_REPRESENTATION,
+        NAVIGATION,
+        SUB_MAP
+    }
+
+    static final String OBJECT_NAME = "Barricade:type=BarricadeMetrics";
+
+    // Bucket i counts latencies in [2^(i-1), 2^i) nanoseconds, the last bucket everything above
+    static final int BUCKETS = 40;
+
+    /**
+     * An immutable view of the metrics of one operation
+     */
+    public record OperationSnapshot(long calls, long verifiedCalls, long verificationNanos, long warnings,
+                                    long failures, long copiedEntries, long[] latencyBuckets) {
+
+        /**
+         * Returns an upper bound on the given percentile of the verification latency
+         * @param percentile the percentile, between 0 and 100
+         * @return the upper bound of the bucket containing the percentile, in nanoseconds, or 0 if nothing was verified
+         * @throws IllegalArgumentException if the percentile is not between 0 and 100
+         */
+        public long percentileNanos(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+            }
+            long total = Arrays.stream(latencyBuckets).sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                seen += latencyBuckets[i];
+                if (seen >= rank && seen > 0) {
+                    return (i == latencyBuckets.length - 1) ? Long.MAX_VALUE : 1L << i;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * The counters of one operation
+     */
+    static final class OperationMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder verifiedCalls = new LongAdder();
+        private final LongAdder verificationNanos = new LongAdder();
+        private final LongAdder warnings = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder copiedEntries = new LongAdder();
+        private final LongAdder[] latencyBuckets = new LongAdder[BUCKETS];
+
+        private OperationMetrics() {
+            for (int i = 0; i < BUCKETS; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+        void called() {
+            calls.increment();
+        }
+
+        void verified(long nanos) {
+            verifiedCalls.increment();
+            verificationNanos.add(nanos);
+            latencyBuckets[bucket(nanos)].increment();
+        }
+
+        void warned() {
+            warnings.increment();
+        }
+
+        void failed() {
+            failures.increment();
+        }
+
+        void copied(int entries) {
+            if (entries > 0) {
+                copiedEntries.add(entries);
+            }
+        }
+
+        private OperationSnapshot snapshot() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = latencyBuckets[i].sum();
+            }
+            return new OperationSnapshot(calls.sum(), verifiedCalls.sum(), verificationNanos.sum(),
+                    warnings.sum(), failures.sum(), copiedEntries.sum(), buckets);
+        }
+
+        private void reset() {
+            calls.reset();
+            verifiedCalls.reset();
+            verificationNanos.reset();
+            warnings.reset();
+            failures.reset();
+            copiedEntries.reset();
+            for (LongAdder bucket : latencyBuckets) {
+                bucket.reset();
+            }
+        }
+
+        private static int bucket(long nanos) {
+            int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+            return Math.min(bucket, BUCKETS - 1);
+        }
+    }
+
+    private final EnumMap<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+
+    BarricadeMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    OperationMetrics operation(Operation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Returns a snapshot of the metrics of every operation
+     * @return the metrics of every operation, in the order of the Operation enum
+     */
+    public Map<Operation, OperationSnapshot> snapshot() {
+        Map<Operation, OperationSnapshot> snapshot = new EnumMap<>(Operation.class);
+        operations.forEach((operation, metrics) -> snapshot.put(operation, metrics.snapshot()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, unless they are already registered
+     * @throws IllegalStateException if the registration fails
+     */
+    public void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register Barricade metrics", e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        return perOperation(OperationSnapshot::calls);
+    }
+
+    @Override
+    public Map<String, Long> getVerifiedCalls() {
+        return perOperation(OperationSnapshot::verifiedCalls);
+    }
+
+    @Override
+    public Map<String, Long> getVerificationNanos() {
+        return perOperation(OperationSnapshot::verificationNanos);
+    }
+
+    @Override
+    public Map<String, Long> getWarnings() {
+        return perOperation(OperationSnapshot::warnings);
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        return perOperation(OperationSnapshot::failures);
+    }
+
+    @Override
+    public Map<String, Long> getCopiedEntries() {
+        return perOperation(OperationSnapshot::copiedEntries);
+    }
+
+    @Override
+    public Map<String, Long> getP99VerificationNanos() {
+        return perOperation(snapshot -> snapshot.percentileNanos(99));
+    }
+
+    @Override
+    public long getTotalWarnings() {
+        return total(OperationSnapshot::warnings);
+    }
+
+    @Override
+    public long getTotalFailures() {
+        return total(OperationSnapshot::failures);
+    }
+
+    @Override
+    public long getTotalVerificationNanos() {
+        return total(OperationSnapshot::verificationNanos);
+    }
+
+    @Override
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+    }
+
+    private Map<String, Long> perOperation(ToLongFunction<OperationSnapshot> attribute) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        snapshot().forEach((operation, snapshot) -> values.put(operation.name(), attribute.applyAsLong(snapshot)));
+        return values;
+    }
+
+    private long total(ToLongFunction<OperationSnapshot> attribute) {
+        return snapshot().values().stream().mapToLong(attribute).sum();
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.Map;
+
+/**
+ * Management interface of the Barricade metrics. Per-operation attributes are keyed by
+ * the name of the BarricadeMetrics.Operation.
+ */
+public interface BarricadeMetricsMXBean {
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getVerifiedCalls();
+
+    Map<String, Long> getVerificationNanos();
+
+    Map<String, Long> getWarnings();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getCopiedEntries();
+
+    Map<String, Long> getP99VerificationNanos();
+
+    long getTotalWarnings();
+
+    long getTotalFailures();
+
+    long getTotalVerificationNanos();
+
+    void reset();
+}
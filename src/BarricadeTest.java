@@ -1,14 +1,32 @@
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.util.AbstractMap;
 import java.util.Set;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.Objects;
+import java.util.Random;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.NavigableMap;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.io.IOException;
+import java.io.StringWriter;
 
 // Test class for Barricade
 public class BarricadeTest {
@@ -21,6 +39,13 @@ public class BarricadeTest {
         logger.addHandler(handler);
     }
 
+    @After
+    public void teardown() {
+        logger.removeHandler(handler);
+        Barricade.setVerificationPolicy(VerificationPolicy.always());
+        Barricade.setAsyncVerifier(null);
+    }
+
     @Test
     public void testSafeGetReturnsValueAndNoWarning() {
         RoamingMap<Indexes, String> map = new RoamingMap<>();
@@ -276,12 +301,44 @@ public class BarricadeTest {
         
         assertEquals("Should return correct value despite map returning wrong value", 
                     correctValue, result.value());
+        assertTrue("Recovery should be reported to the calling thread", Barricade.lastValueRecovered());
         assertTrue("Should log warning about incorrect value", 
                   handler.getLastLog().isPresent());
         assertTrue("Warning should mention incorrect value", 
                   handler.getLastLog().get().contains("incorrect value"));
     }
     
+    @Test
+    public void testBarricadeRecoversFromIntermittentFaults() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.faultInjector(999);
+        for (int i = 0; i < 10; i++) {
+            buggyMap.put("key" + i, i);
+        }
+        buggyMap.inject(BuggyRoamingMap.BugType.RETURN_WRONG_VALUE_ON_GET, 0.5)
+                .inject(BuggyRoamingMap.BugType.RETURN_WRONG_SIZE, 0.5)
+                .seed(7);
+
+        int recoveries = 0;
+        for (int i = 0; i < 200; i++) {
+            assertEquals(Integer.valueOf(i % 10), Barricade.safeGet(buggyMap, "key" + (i % 10)).value());
+            if (Barricade.lastValueRecovered()) {
+                recoveries++;
+            }
+            assertEquals(10, Barricade.correctSize(buggyMap));
+        }
+        assertEquals(buggyMap.injectedFaults(BuggyRoamingMap.BugType.RETURN_WRONG_VALUE_ON_GET), recoveries);
+        assertTrue("Faults should be intermittent", recoveries > 0 && recoveries < 200);
+        assertTrue(buggyMap.injectedFaults(BuggyRoamingMap.BugType.RETURN_WRONG_SIZE) > 0);
+    }
+
+    @Test
+    public void testBuggyMapRejectsInvalidRates() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.faultInjector(999);
+        assertThrows(IllegalArgumentException.class, () -> buggyMap.inject(BuggyRoamingMap.BugType.RETURN_WRONG_SIZE, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> buggyMap.injectLatency(Double.NaN, 0));
+        assertThrows(IllegalArgumentException.class, () -> buggyMap.injectLatency(0.5, -1));
+    }
+
     @Test
     public void testBarricadeHandlesStateChangeOnSize() {
         BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withStateModificationOnSize();
@@ -386,4 +443,669 @@ public class BarricadeTest {
         assertEquals("Map with 3 entries should have size 3", 3, populatedSize);
         assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
     }
+
+    @Test
+    public void testBarricadeHandlesWrongSize() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongSize();
+        buggyMap.put("key1", 100);
+        buggyMap.put("key2", 200);
+
+        handler.clearLogRecords();
+        assertEquals("Should return correct size despite map returning wrong size", 2, Barricade.correctSize(buggyMap));
+        assertTrue("Should log warning about incorrect size", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testBarricadeHandlesStateChangeOnToString() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withStateModificationOnToString();
+        buggyMap.put("key1", 100);
+
+        try {
+            Barricade.correctStringRepresentation(buggyMap);
+            fail("Should throw exception when map state changes during toString");
+        } catch (RuntimeException e) {
+            assertTrue("Exception message should be about incorrect operation",
+                      e.getMessage().contains("operated incorrectly"));
+        }
+    }
+
+    @Test
+    public void testRoamingMapVersionTracksModifications() {
+        RoamingMap<String, Integer> map = new RoamingMap<>();
+        long initial = map.version();
+        Barricade.safePut(map, "a", 1);
+        assertEquals("A put should advance the version by one", initial + 1, map.version());
+        Barricade.safeGet(map, "a");
+        Barricade.correctSize(map);
+        Barricade.correctStringRepresentation(map);
+        assertEquals("Reads should not advance the version", initial + 1, map.version());
+        map.remove("missing");
+        assertEquals("Removing an absent key should not advance the version", initial + 1, map.version());
+        map.remove("a");
+        assertEquals("Removing a key should advance the version", initial + 2, map.version());
+    }
+
+    @Test
+    public void testBarricadeVerifiesUnversionedMaps() {
+        NavigableMap<String, Integer> map = new TreeMap<>();
+        handler.clearLogRecords();
+        assertNull(Barricade.safePut(map, "a", 1).value());
+        assertEquals(Integer.valueOf(1), Barricade.safeGet(map, "a").value());
+        assertEquals(1, Barricade.correctSize(map));
+        assertEquals("{a=1}", Barricade.correctStringRepresentation(map));
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testPointOperationsDoNotTrustWrongNavigation() {
+        BuggyRoamingMap<Integer, String> buggyMap = BuggyRoamingMap.withWrongNavigation();
+        buggyMap.put(10, "ten");
+        buggyMap.put(20, "twenty");
+        buggyMap.put(30, "thirty");
+
+        handler.clearLogRecords();
+        assertEquals("twenty", Barricade.safeGet(buggyMap, 20).value());
+        assertFalse("A correct get should not be reported as recovered", Barricade.lastValueRecovered());
+        assertNull(Barricade.safeGet(buggyMap, 25).value());
+        assertEquals("ten", Barricade.safeValue(buggyMap, 10));
+        // The expected size and fingerprint of a put must not come from floorEntry either
+        assertEquals("twenty", Barricade.safePut(buggyMap, 20, "TWENTY").value());
+        Barricade.safePut(buggyMap, 25, "twenty-five");
+        assertEquals(4, Barricade.correctSize(buggyMap));
+        assertEquals("TWENTY", buggyMap.get(20));
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testEveryNthPolicySkipsVerification() {
+        VerificationPolicy policy = VerificationPolicy.everyNth(2);
+        Barricade.setVerificationPolicy(policy);
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongValueOnGet("test", 999);
+        buggyMap.put("test", 100);
+
+        assertEquals("Sampled call should recover the correct value", Integer.valueOf(100), Barricade.safeGet(buggyMap, "test").value());
+        assertEquals("Skipped call should go straight to the map", Integer.valueOf(999), Barricade.safeGet(buggyMap, "test").value());
+        assertEquals(1, policy.verifiedCalls());
+        assertEquals(1, policy.skippedCalls());
+        assertEquals(0.5, policy.coverage(), 0.0);
+    }
+
+    @Test
+    public void testSamplingPoliciesAppliedToAllOperations() {
+        VerificationPolicy never = VerificationPolicy.probabilistic(0.0);
+        Barricade.setVerificationPolicy(never);
+        RoamingMap<String, Integer> map = new RoamingMap<>();
+        assertNull(Barricade.safePut(map, "a", 1).value());
+        assertEquals(Integer.valueOf(1), Barricade.safeGet(map, "a").value());
+        assertEquals(1, Barricade.correctSize(map));
+        assertEquals("{a=1}", Barricade.correctStringRepresentation(map));
+        assertEquals(0, never.verifiedCalls());
+        assertEquals(4, never.skippedCalls());
+
+        VerificationPolicy budgeted = VerificationPolicy.timeBudgeted(Long.MAX_VALUE, 1_000_000_000L);
+        Barricade.setVerificationPolicy(budgeted);
+        assertEquals(1, Barricade.correctSize(map));
+        assertEquals(1, budgeted.verifiedCalls());
+
+        VerificationPolicy exhausted = VerificationPolicy.timeBudgeted(0, 1_000_000_000L);
+        Barricade.setVerificationPolicy(exhausted);
+        assertEquals(1, Barricade.correctSize(map));
+        assertEquals(1, exhausted.skippedCalls());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEveryNthPolicyRejectsNonPositivePeriod() {
+        VerificationPolicy.everyNth(0);
+    }
+
+    @Test
+    public void testSafePutAllAndSafeGetAll() {
+        RoamingMap<String, Integer> map = new RoamingMap<>();
+        map.put("a", 1);
+        Map<String, Integer> entries = new LinkedHashMap<>();
+        entries.put("a", 10);
+        entries.put("b", 20);
+
+        handler.clearLogRecords();
+        Map<String, Barricade.StateRecoveryOptional<Integer>> putResults = Barricade.safePutAll(map, entries);
+        assertEquals(Integer.valueOf(1), putResults.get("a").value());
+        assertNull(putResults.get("b").value());
+        assertEquals(2, map.size());
+
+        Map<String, Barricade.StateRecoveryOptional<Integer>> getResults = Barricade.safeGetAll(map, List.of("a", "b", "c"));
+        assertEquals(Integer.valueOf(10), getResults.get("a").value());
+        assertEquals(Integer.valueOf(20), getResults.get("b").value());
+        assertNull(getResults.get("c").value());
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testSafeGetAllRecoversWrongValues() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongValueOnGet("test", 999);
+        buggyMap.put("test", 100);
+        buggyMap.put("other", 200);
+
+        handler.clearLogRecords();
+        Map<String, Barricade.StateRecoveryOptional<Integer>> results = Barricade.safeGetAll(buggyMap, List.of("test", "other"));
+        assertEquals(Integer.valueOf(100), results.get("test").value());
+        assertEquals(Integer.valueOf(200), results.get("other").value());
+        assertTrue("Should log warning about incorrect value", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testSafePutAllDetectsFailedPut() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withFailureOnPut("test");
+        Map<String, Integer> entries = new LinkedHashMap<>();
+        entries.put("first", 1);
+        entries.put("test", 2);
+        try {
+            Barricade.safePutAll(buggyMap, entries);
+            fail("Should throw exception when a put in the batch fails");
+        } catch (RuntimeException e) {
+            assertTrue("Exception message should be about incorrect operation",
+                      e.getMessage().contains("operated incorrectly"));
+        }
+    }
+
+    @Test
+    public void testRoamingMapFingerprintDependsOnlyOnContents() {
+        RoamingMap<String, Integer> first = new RoamingMap<>();
+        RoamingMap<String, Integer> second = new RoamingMap<>();
+        first.put("a", 1);
+        first.put("b", 2);
+        second.put("b", 2);
+        second.put("c", 3);
+        second.put("a", 1);
+        assertNotEquals(first.fingerprint(), second.fingerprint());
+        second.remove("c");
+        assertEquals("Maps with equal contents should have equal fingerprints", first.fingerprint(), second.fingerprint());
+        second.put("a", 5);
+        assertNotEquals(first.fingerprint(), second.fingerprint());
+        second.put("a", 1);
+        assertEquals(first.fingerprint(), second.fingerprint());
+        second.clear();
+        assertEquals(new RoamingMap<String, Integer>().fingerprint(), second.fingerprint());
+    }
+
+    @Test
+    public void testMetricsCountCallsWarningsFailuresAndCopies() {
+        BarricadeMetrics metrics = Barricade.metrics();
+        metrics.reset();
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongValueOnGet("test", 999);
+        buggyMap.put("test", 100);
+        Barricade.safeGet(buggyMap, "test");
+        try {
+            Barricade.safePut(BuggyRoamingMap.withFailureOnPut("test"), "test", 1);
+            fail("Should throw exception when put operation fails");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        NavigableMap<String, Integer> plainMap = new TreeMap<>();
+        plainMap.put("a", 1);
+        plainMap.put("b", 2);
+        Barricade.correctSize(plainMap);
+        Barricade.correctKeySet(plainMap);
+
+        Map<BarricadeMetrics.Operation, BarricadeMetrics.OperationSnapshot> snapshot = metrics.snapshot();
+        BarricadeMetrics.OperationSnapshot get = snapshot.get(BarricadeMetrics.Operation.GET);
+        assertEquals(1, get.calls());
+        assertEquals(1, get.verifiedCalls());
+        assertEquals(1, get.warnings());
+        assertEquals(0, get.copiedEntries());
+        assertTrue(get.percentileNanos(99) > 0);
+        assertEquals(1, snapshot.get(BarricadeMetrics.Operation.PUT).failures());
+        assertEquals(2, snapshot.get(BarricadeMetrics.Operation.SIZE).copiedEntries());
+        assertEquals(1, snapshot.get(BarricadeMetrics.Operation.KEY_SET).calls());
+        assertEquals(1, metrics.getTotalWarnings());
+        assertEquals(1, metrics.getTotalFailures());
+    }
+
+    @Test
+    public void testMetricsExposedThroughMBean() throws Exception {
+        Barricade.metrics().registerMBean();
+        Barricade.metrics().registerMBean();
+        javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+        javax.management.ObjectName name = new javax.management.ObjectName(BarricadeMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertNotNull(server.getAttribute(name, "Calls"));
+        assertNotNull(server.getAttribute(name, "TotalWarnings"));
+    }
+
+    @Test
+    public void testAsyncVerifierReportsDiscrepanciesOffThread() throws Exception {
+        List<AsyncVerifier.Discrepancy> discrepancies = Collections.synchronizedList(new ArrayList<>());
+        try (AsyncVerifier verifier = new AsyncVerifier(2, 16, AsyncVerifier.Backpressure.BLOCK, discrepancies::add)) {
+            Barricade.setAsyncVerifier(verifier);
+            BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongValueOnGet("test", 999);
+            RoamingMap<String, Integer> map = new RoamingMap<>();
+            verifier.guard(buggyMap);
+            verifier.guard(map);
+
+            Barricade.safePut(buggyMap, "test", 100);
+            Barricade.safePut(map, "a", 1);
+            Barricade.safePut(map, "a", 2);
+            assertEquals(Integer.valueOf(2), Barricade.safeGet(map, "a").value());
+            assertEquals("Async mode should return straight from the map", Integer.valueOf(999), Barricade.safeGet(buggyMap, "test").value());
+
+            assertTrue(verifier.awaitQuiescence(10, TimeUnit.SECONDS));
+            assertEquals(1, discrepancies.size());
+            assertEquals(BarricadeMetrics.Operation.GET, discrepancies.get(0).operation());
+            assertEquals("test", discrepancies.get(0).key());
+            assertTrue(discrepancies.get(0).message().contains("incorrect value"));
+        }
+    }
+
+    @Test
+    public void testAsyncVerifierDetectsFailedPut() throws Exception {
+        List<AsyncVerifier.Discrepancy> discrepancies = Collections.synchronizedList(new ArrayList<>());
+        try (AsyncVerifier verifier = new AsyncVerifier(1, 4, AsyncVerifier.Backpressure.DROP, discrepancies::add)) {
+            Barricade.setAsyncVerifier(verifier);
+            BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withFailureOnPut("test");
+            verifier.guard(buggyMap);
+            Barricade.safePut(buggyMap, "test", 100);
+            assertTrue(verifier.awaitQuiescence(10, TimeUnit.SECONDS));
+            assertEquals(1, verifier.discrepancies());
+            assertTrue(discrepancies.get(0).message().contains("operated incorrectly"));
+        }
+    }
+
+    @Test
+    public void testShadowReplicaAnswersExpectedState() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongValueOnGet("test", 999);
+        Barricade.replicate(buggyMap);
+        try {
+            Barricade.safePut(buggyMap, "test", 100);
+            Barricade.safePut(buggyMap, "other", 200);
+            handler.clearLogRecords();
+            assertEquals(Integer.valueOf(100), Barricade.safeGet(buggyMap, "test").value());
+            assertTrue("Should log warning about incorrect value", handler.getLastLog().isPresent());
+            assertEquals(2, Barricade.correctSize(buggyMap));
+            assertEquals("{other=200, test=100}", Barricade.correctStringRepresentation(buggyMap));
+
+            // A write outside of Barricade makes the replica resynchronize
+            buggyMap.put("direct", 300);
+            Barricade.metrics().reset();
+            assertEquals(3, Barricade.correctSize(buggyMap));
+            assertEquals(3, Barricade.metrics().snapshot().get(BarricadeMetrics.Operation.SIZE).copiedEntries());
+        } finally {
+            Barricade.stopReplicating(buggyMap);
+        }
+    }
+
+    @Test
+    public void testVerifyLoadedDetectsMissingEntries() {
+        List<Map.Entry<Integer, String>> entries = List.of(Map.entry(1, "a"), Map.entry(2, "b"), Map.entry(3, "c"));
+        Barricade.verifyLoaded(RoamingMap.fromSorted(entries.iterator()), entries);
+        RuntimeException failure = assertThrows(RuntimeException.class,
+                () -> Barricade.verifyLoaded(RoamingMap.fromSorted(entries.subList(0, 2).iterator()), entries));
+        assertTrue(failure.getMessage().contains("operated incorrectly"));
+        assertThrows(RuntimeException.class,
+                () -> Barricade.verifyLoaded(RoamingMap.fromSorted(List.of(Map.entry(1, "a"), Map.entry(2, "b"), Map.entry(3, "x")).iterator()), entries));
+    }
+
+    @Test
+    public void testShadowReplicaDetectsFailedPut() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withFailureOnPut("test");
+        Barricade.replicate(buggyMap);
+        try {
+            Barricade.safePut(buggyMap, "test", 100);
+            fail("Should throw exception when put operation fails");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("operated incorrectly"));
+        } finally {
+            Barricade.stopReplicating(buggyMap);
+        }
+    }
+
+    @Test
+    public void testSafeNavigationOnRoamingMap() {
+        RoamingMap<Integer, String> map = new RoamingMap<>();
+        map.put(10, "ten");
+        map.put(20, "twenty");
+        map.put(30, "thirty");
+        handler.clearLogRecords();
+        assertEquals(Integer.valueOf(20), Barricade.safeFloorEntry(map, 25).getKey());
+        assertEquals(Integer.valueOf(20), Barricade.safeFloorEntry(map, 20).getKey());
+        assertEquals(Integer.valueOf(10), Barricade.safeLowerEntry(map, 20).getKey());
+        assertEquals(Integer.valueOf(30), Barricade.safeCeilingEntry(map, 25).getKey());
+        assertEquals(Integer.valueOf(30), Barricade.safeHigherEntry(map, 20).getKey());
+        assertNull(Barricade.safeFloorEntry(map, 5));
+        assertNull(Barricade.safeHigherEntry(map, 30));
+        assertEquals(2, Barricade.safeSubMap(map, 10, true, 30, false).size());
+        assertEquals(1, Barricade.safeHeadMap(map, 20, false).size());
+        assertEquals(2, Barricade.safeTailMap(map, 20, true).size());
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testSafeNavigationRecoversWrongAnswers() {
+        BuggyRoamingMap<Integer, String> buggyMap = BuggyRoamingMap.withWrongNavigation();
+        buggyMap.put(10, "ten");
+        buggyMap.put(20, "twenty");
+        buggyMap.put(30, "thirty");
+
+        handler.clearLogRecords();
+        assertEquals(Integer.valueOf(20), Barricade.safeFloorEntry(buggyMap, 25).getKey());
+        assertTrue("Should log warning about incorrect value", handler.getLastLog().isPresent());
+
+        handler.clearLogRecords();
+        NavigableMap<Integer, String> range = Barricade.safeSubMap(buggyMap, 15, true, 25, true);
+        assertEquals(Map.of(20, "twenty"), range);
+        assertTrue("Should log warning about incorrect value", handler.getLastLog().isPresent());
+
+        // Point operations answer correctly on their own, so wrong navigation must not spoil them
+        handler.clearLogRecords();
+        assertEquals("twenty", Barricade.safeGet(buggyMap, 20).value());
+        assertEquals("thirty", Barricade.safeValue(buggyMap, 30));
+        assertFalse(Barricade.lastValueRecovered());
+        assertEquals("twenty", Barricade.safePut(buggyMap, 20, "vingt").value());
+        assertEquals("vingt", Barricade.safeValue(buggyMap, 20));
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testSafeNavigationOnUnversionedMap() {
+        NavigableMap<Integer, String> map = new TreeMap<>(Map.of(1, "a", 3, "c"));
+        assertEquals(Integer.valueOf(1), Barricade.safeFloorEntry(map, 2).getKey());
+        assertEquals(Map.of(3, "c"), Barricade.safeTailMap(map, 2, true));
+    }
+
+    @Test
+    public void testSafeValueReportsRecoveryPerCall() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongValueOnGet("test", 999);
+        buggyMap.put("test", 100);
+        buggyMap.put("other", 200);
+
+        assertEquals(Integer.valueOf(100), Barricade.safeValue(buggyMap, "test"));
+        assertTrue(Barricade.lastValueRecovered());
+        assertEquals(Integer.valueOf(200), Barricade.safeValue(buggyMap, "other"));
+        assertFalse(Barricade.lastValueRecovered());
+        assertNull(Barricade.safeValue(buggyMap, "absent"));
+        assertSame("Successful null results should share one instance",
+                Barricade.safeGet(buggyMap, "absent"), Barricade.safeGet(buggyMap, "missing"));
+    }
+
+    @Test
+    public void testWriteStringRepresentationStreamsInChunks() throws IOException {
+        RoamingMap<Integer, String> map = new RoamingMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            map.put(i, "value" + i);
+        }
+        List<Integer> chunks = new ArrayList<>();
+        StringBuilder out = new StringBuilder();
+        Appendable recorder = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) {
+                chunks.add(csq.length());
+                out.append(csq);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                return append(csq.subSequence(start, end));
+            }
+
+            @Override
+            public Appendable append(char c) {
+                return append(String.valueOf(c));
+            }
+        };
+        Barricade.writeStringRepresentation(map, recorder);
+        assertEquals(map.toString(), out.toString());
+        assertTrue("Representation should be written in several chunks", chunks.size() > 1);
+        assertTrue("Chunks should stay bounded", Collections.max(chunks) < 10_000);
+    }
+
+    @Test
+    public void testWriteStringRepresentationIgnoresWrongToString() throws IOException {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withWrongToString();
+        buggyMap.put("a", 1);
+        buggyMap.put("b", 2);
+        StringWriter out = new StringWriter();
+        Barricade.writeStringRepresentation(buggyMap, out);
+        assertEquals("{a=1, b=2}", out.toString());
+
+        StringWriter copied = new StringWriter();
+        Barricade.writeStringRepresentation(new TreeMap<>(Map.of("x", 1)), copied);
+        assertEquals("{x=1}", copied.toString());
+    }
+
+    @Test
+    public void testSharedMapUnderConcurrentReadsAndWrites() throws Exception {
+        RoamingMap<Integer, Integer> map = new RoamingMap<>();
+        Barricade.shareBetweenThreads(map);
+        int threads = 8;
+        int keysPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * keysPerThread;
+                boolean writer = t % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < keysPerThread; i++) {
+                        int key = offset + i;
+                        if (writer) {
+                            Barricade.safePut(map, key, key * 2);
+                            assertEquals(Integer.valueOf(key * 2), Barricade.safeValue(map, key));
+                        } else {
+                            Barricade.correctSize(map);
+                            Barricade.safeFloorEntry(map, key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+            Barricade.stopSharing(map);
+        }
+        assertEquals(threads / 2 * keysPerThread, Barricade.correctSize(map));
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+
+    @Test
+    public void testRoamingMapFromSortedMatchesPuts() {
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            RoamingMap<Integer, String> expected = new RoamingMap<>();
+            for (int key = 0; key < 20_000; key += 2) {
+                expected.put(key, "v" + key);
+            }
+            RoamingMap<Integer, String> map = RoamingMap.fromSorted(expected.entrySet().iterator(), backend);
+            assertEquals(expected.entrySet(), map.entrySet());
+            assertEquals(expected.version(), map.version());
+            assertEquals(expected.fingerprint(), map.fingerprint());
+            assertEquals(expected.floorEntry(777), map.floorEntry(777));
+            assertEquals(expected.subMap(100, true, 300, false).entrySet(), map.subMap(100, true, 300, false).entrySet());
+
+            // The loaded structure takes further writes like one built by puts
+            for (int key = 1; key < 20_000; key += 4) {
+                assertEquals(expected.put(key, "w"), map.put(key, "w"));
+                assertEquals(expected.remove(key + 1), map.remove(key + 1));
+            }
+            assertEquals(expected.entrySet(), map.entrySet());
+            assertEquals(expected.fingerprint(), map.fingerprint());
+        }
+        assertTrue(RoamingMap.fromSorted(Collections.<Map.Entry<Integer, String>>emptyIterator(), RoamingMap.Backend.B_PLUS_TREE).isEmpty());
+    }
+
+    @Test
+    public void testRoamingMapFromSortedRejectsUnsortedInput() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RoamingMap.fromSorted(List.of(Map.entry(1, "a"), Map.entry(3, "c"), Map.entry(2, "b")).iterator()));
+        assertThrows(IllegalArgumentException.class,
+                () -> RoamingMap.fromSorted(List.of(Map.entry(1, "a"), Map.entry(1, "b")).iterator(), RoamingMap.Backend.B_PLUS_TREE));
+        assertThrows(NullPointerException.class,
+                () -> RoamingMap.fromSorted(Collections.singletonList(new AbstractMap.SimpleEntry<Integer, String>(null, "a")).iterator()));
+
+        // Copies of maps that iterate out of order fall back to one put per entry
+        RoamingMap<Integer, String> map = new RoamingMap<>();
+        for (int key = 0; key < 100; key++) {
+            map.put(key, "v" + key);
+        }
+        RoamingMap<Integer, String> copy = RoamingMap.copyOf(map.descendingMap());
+        assertEquals(map.entrySet(), copy.entrySet());
+        assertEquals(map.fingerprint(), copy.fingerprint());
+    }
+
+    @Test
+    public void testRoamingMapJournalReplaysChanges() throws Exception {
+        RoamingMap<String, Integer> map = new RoamingMap<>();
+        map.put("before", 0);
+        long enabledAt = map.version();
+        map.enableJournal(4);
+        List<RoamingMap.Change<String, Integer>> heard = new ArrayList<>();
+        Consumer<RoamingMap.Change<String, Integer>> listener = heard::add;
+        map.addListener(listener);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<RoamingMap.Change<String, Integer>> heardLater = Collections.synchronizedList(new ArrayList<>());
+        map.addListener(heardLater::add, executor);
+
+        RoamingMap<String, Integer> copy = RoamingMap.copyOf(map);
+        long copied = map.version();
+        map.put("a", 1);
+        map.put("a", 2);
+        map.remove("before");
+        map.remove("absent");
+        List<RoamingMap.Change<String, Integer>> changes = map.changesSince(copied).orElseThrow();
+        assertEquals(List.of(
+                new RoamingMap.Change<>(copied + 1, RoamingMap.Change.Kind.PUT, "a", null, 1),
+                new RoamingMap.Change<>(copied + 2, RoamingMap.Change.Kind.PUT, "a", 1, 2),
+                new RoamingMap.Change<>(copied + 3, RoamingMap.Change.Kind.REMOVE, "before", 0, null)), changes);
+        changes.forEach(change -> change.applyTo(copy));
+        assertEquals(map.entrySet(), copy.entrySet());
+        assertEquals(List.of(), map.changesSince(map.version()).orElseThrow());
+        assertTrue("Changes before the journal are unknown", map.changesSince(enabledAt - 1).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> map.changesSince(map.version() + 1));
+
+        map.clear();
+        map.put("b", 3);
+        assertTrue("The journal only keeps the last 4 changes", map.changesSince(copied).isEmpty());
+        assertEquals(RoamingMap.Change.Kind.CLEAR, map.changesSince(map.version() - 2).orElseThrow().get(0).kind());
+        assertEquals(5, heard.size());
+        map.removeListener(listener);
+        map.put("c", 4);
+        assertEquals(5, heard.size());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals("Asynchronous listeners hear changes in order", map.version() - copied, heardLater.size());
+        assertEquals(heard, heardLater.subList(0, heard.size()));
+        assertThrows(IllegalArgumentException.class, () -> map.enableJournal(0));
+    }
+
+    @Test
+    public void testShadowReplicaCatchesUpThroughJournal() {
+        RoamingMap<Integer, Integer> map = new RoamingMap<>();
+        for (int key = 0; key < 1_000; key++) {
+            map.put(key, key);
+        }
+        map.enableJournal(16);
+        Barricade.replicate(map);
+        try {
+            map.put(5, -5);
+            map.remove(6);
+            map.put(2_000, 2_000);
+            Barricade.metrics().reset();
+            assertEquals(1_000, Barricade.correctSize(map));
+            assertEquals("Only the changes should be replayed", 3,
+                    Barricade.metrics().snapshot().get(BarricadeMetrics.Operation.SIZE).copiedEntries());
+            assertEquals(Integer.valueOf(-5), Barricade.safeValue(map, 5));
+
+            for (int key = 0; key < 100; key++) {
+                map.put(key, key);
+            }
+            Barricade.metrics().reset();
+            assertEquals(1_001, Barricade.correctSize(map));
+            assertEquals("An overflowed journal falls back to copying", 1_001,
+                    Barricade.metrics().snapshot().get(BarricadeMetrics.Operation.SIZE).copiedEntries());
+        } finally {
+            Barricade.stopReplicating(map);
+        }
+    }
+
+    @Test
+    public void testRankAndSelectMatchTreeMap() {
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            RoamingMap<Integer, Integer> map = new RoamingMap<>(backend);
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            Random random = new Random(31);
+            // Splits and empties leaves and inner nodes, whose counts must follow
+            DifferentialTesting.randomWrites(random, 20_000, 4, 20_000, Integer::valueOf, i -> i, expected, map);
+            DifferentialTesting.randomWrites(random, 20_000, 2, 20_000, Integer::valueOf, i -> i, expected, map);
+            List<Integer> keys = new ArrayList<>(expected.keySet());
+            for (int index = 0; index < keys.size(); index += 7) {
+                assertEquals(keys.get(index), map.select(index));
+                assertEquals(index, map.rank(keys.get(index)));
+            }
+            for (int key = -5; key <= 20_005; key += 11) {
+                assertEquals(expected.headMap(key, false).size(), map.rank(key));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> map.select(-1));
+            assertThrows(IndexOutOfBoundsException.class, () -> map.select(keys.size()));
+            assertThrows(NullPointerException.class, () -> map.rank(null));
+        }
+    }
+
+    @Test
+    public void testAggregateMatchesIteratingTheRange() {
+        Aggregator<Integer, Long> sum = Aggregator.summingLong(Integer::longValue);
+        Aggregator<Integer, Integer> minimum = Aggregator.minimum(Comparator.naturalOrder());
+        RoamingMap<Integer, Integer> sums = new RoamingMap<>(sum);
+        RoamingMap<Integer, Integer> minimums = new RoamingMap<>(minimum);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        Random random = new Random(37);
+        // Splits and empties nodes, whose summaries must follow
+        DifferentialTesting.randomWrites(random, 20_000, 4, 20_000, Integer::valueOf,
+                i -> random.nextInt(1_000_000) - 500_000, expected, sums, minimums);
+        DifferentialTesting.randomWrites(random, 20_000, 2, 20_000, Integer::valueOf,
+                i -> random.nextInt(1_000_000) - 500_000, expected, sums, minimums);
+        for (int from = -7; from <= 20_007; from += 1_301) {
+            for (int to = from; to <= 20_007; to += 2_999) {
+                Collection<Integer> values = expected.subMap(from, false, to, true).values();
+                assertEquals((Long) values.stream().mapToLong(Integer::longValue).sum(), sums.aggregate(sum, from, false, to, true));
+                assertEquals(values.stream().min(Comparator.naturalOrder()).orElse(null), minimums.aggregate(minimum, from, false, to, true));
+            }
+            assertEquals((Long) expected.headMap(from, true).values().stream().mapToLong(Integer::longValue).sum(), sums.aggregate(sum, null, false, from, true));
+        }
+        assertEquals(expected.values().stream().min(Comparator.naturalOrder()).orElse(null), minimums.aggregate(minimum, null, null));
+        assertThrows(IllegalArgumentException.class, () -> sums.aggregate(sum, 10, 5));
+
+        // Any other aggregator iterates the range
+        Aggregator<Integer, Long> count = Aggregator.counting();
+        assertEquals(Long.valueOf(expected.subMap(100, 5_000).size()), sums.aggregate(count, 100, 5_000));
+        assertEquals(Long.valueOf(expected.subMap(100, 5_000).size()), RoamingMap.fromSorted(expected.entrySet().iterator()).aggregate(count, 100, 5_000));
+    }
+
+    @Test
+    public void testParallelBulkOperationsMatchSequential() {
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            RoamingMap<Integer, String> map = new RoamingMap<>(backend);
+            for (int key = 0; key < 50_000; key++) {
+                map.put(key, Integer.toString(key % 10));
+            }
+            LongAdder sum = new LongAdder();
+            map.forEachParallel((key, value) -> sum.add(key));
+            assertEquals(50_000L * 49_999 / 2, sum.sum());
+
+            // Concatenation is not commutative, so the parts must be combined in key order
+            Aggregator<String, String> concatenation = Aggregator.of("", value -> value, String::concat);
+            StringBuilder expected = new StringBuilder();
+            map.values().forEach(expected::append);
+            assertEquals(expected.toString(), map.reduceParallel(concatenation));
+            assertEquals(Long.valueOf(50_000), map.reduceParallel(Aggregator.counting()));
+
+            // Both backends split by rank, the red-black tree after copying its entries
+            Spliterator<Map.Entry<Integer, String>> entries = map.ranked().entrySet().spliterator();
+            assertTrue(entries.hasCharacteristics(Spliterator.SUBSIZED));
+            Spliterator<Map.Entry<Integer, String>> prefix = entries.trySplit();
+            assertEquals(25_000, prefix.getExactSizeIfKnown());
+            assertEquals(12_500, prefix.trySplit().getExactSizeIfKnown());
+            assertTrue(entries.tryAdvance(entry -> assertEquals(Integer.valueOf(25_000), entry.getKey())));
+        }
+        assertEquals("", new RoamingMap<Integer, String>(RoamingMap.Backend.B_PLUS_TREE).reduceParallel(Aggregator.of("", value -> value, String::concat)));
+    }
 }
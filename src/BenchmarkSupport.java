@@ -0,0 +1,151 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Minimal timing harness shared by the benchmark mains. Each workload runs a few warm-up
+ * rounds so the JIT can compile it, then the best of the measured rounds is reported.
+ */
+final class BenchmarkSupport {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // Results of the workloads are accumulated here so the JIT cannot discard them
+    private static volatile long sink;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Runs the workload and prints the best time per operation
+     * @param name the name of the workload
+     * @param operations the number of operations one run of the workload performs
+     * @param workload the workload, returning any value that depends on its results
+     * @return the best time per operation, in nanoseconds
+     */
+    static double run(String name, long operations, LongSupplier workload) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += workload.getAsLong();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += workload.getAsLong();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double nanosPerOperation = (double) best / operations;
+        System.out.printf("%-48s %12.1f ns/op %14.0f ops/s%n", name, nanosPerOperation, 1e9 / nanosPerOperation);
+        return nanosPerOperation;
+    }
+
+    /**
+     * Runs the workload on the current thread and prints the bytes it allocates per operation,
+     * as measured by the thread allocation counter of the JVM
+     * @param name the name of the workload
+     * @param operations the number of operations one run of the workload performs
+     * @param workload the workload, returning any value that depends on its results
+     * @return the fewest bytes allocated per operation in a measured round
+     * @throws UnsupportedOperationException if the JVM does not count allocated bytes
+     */
+    static double allocation(String name, long operations, LongSupplier workload) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocation counting is not supported");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += workload.getAsLong();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            sink += workload.getAsLong();
+            best = Math.min(best, threads.getThreadAllocatedBytes(thread) - before);
+        }
+        double bytesPerOperation = (double) best / operations;
+        System.out.printf("%-48s %12.2f B/op%n", name, bytesPerOperation);
+        return bytesPerOperation;
+    }
+
+    /**
+     * Runs the operation one call at a time and prints the throughput of the fastest measured round
+     * together with the latency percentiles of every call in the measured rounds
+     * @param name the name of the workload
+     * @param operations the number of calls in one round
+     * @param operation the operation, given the index of the call in the round and returning any value
+     *                  that depends on its result
+     * @return the 99th percentile latency of a call, in nanoseconds
+     */
+    static long latency(String name, int operations, IntToLongFunction operation) {
+        long[] latencies = new long[operations * MEASURED_ROUNDS];
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (int j = 0; j < operations; j++) {
+                sink += operation.applyAsLong(j);
+            }
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long roundStart = System.nanoTime();
+            for (int j = 0; j < operations; j++) {
+                long start = System.nanoTime();
+                sink += operation.applyAsLong(j);
+                latencies[i * operations + j] = System.nanoTime() - start;
+            }
+            best = Math.min(best, System.nanoTime() - roundStart);
+        }
+        Arrays.sort(latencies);
+        long p99 = percentile(latencies, 0.99);
+        System.out.printf("%-48s %12.0f ops/s  p50 %8d  p99 %8d  p99.9 %9d  max %10d ns%n", name,
+                1e9 * operations / best, percentile(latencies, 0.50), p99, percentile(latencies, 0.999),
+                latencies[latencies.length - 1]);
+        return p99;
+    }
+
+    /**
+     * Runs the task on the given number of threads, all released at the same time, and waits for them to finish
+     * @param threads the number of threads
+     * @param task the task, given the index of its thread and returning any value that depends on its results
+     * @return the sum of the values returned by the threads
+     */
+    static long onThreads(int threads, IntToLongFunction task) {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] results = new long[threads];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                results[index] = task.applyAsLong(index);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            try {
+                workers.get(t).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            total += results[t];
+        }
+        return total;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,383 @@
+import java.util.*;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A RoamingMap with a capacity, for use as an ordered cache. The capacity bounds the total weight
+ * of the entries, which is their number or an estimate of their size in bytes given by a weigher.
+ * Whenever a put takes the map past its capacity, the {@link EvictionPolicy} picks entries to
+ * remove until it fits again. Evictions are removals like any other: they update the version and
+ * fingerprint, appear in the change journal, and leave the remaining entries in key order.
+ * <p>
+ * The map counts hits and misses of get, and evictions. Only get and put count as uses of an
+ * entry for the eviction policy; navigation, views and containsKey do not. Weights are computed
+ * again when entries are removed, so values must not be modified in place while they are in the
+ * map. Not thread-safe, and since get updates the statistics and the eviction policy, not even for
+ * concurrent reads; when the map is shared with {@link Barricade#shareBetweenThreads}, safe reads
+ * take its lock exclusively.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class BoundedRoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V>, StatefulReads {
+
+    private final RoamingMap<K, V> map = new RoamingMap<>();
+    private final long capacity;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final EvictionPolicy<? super K> policy;
+
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private BoundedRoamingMap(long capacity, ToLongBiFunction<? super K, ? super V> weigher, EvictionPolicy<? super K> policy) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.policy = Objects.requireNonNull(policy);
+        policy.attach();
+    }
+
+    /**
+     * Creates an empty map that holds at most the given number of entries
+     * @param maximumSize the number of entries
+     * @param policy the eviction policy, which must not bound any other map
+     * @return the map
+     * @throws IllegalArgumentException if the number of entries is negative
+     * @throws IllegalStateException if the policy already bounds another map
+     */
+    public static <K extends Comparable<K>, V> BoundedRoamingMap<K, V> withMaximumSize(long maximumSize, EvictionPolicy<? super K> policy) {
+        return new BoundedRoamingMap<K, V>(maximumSize, (key, value) -> 1, policy);
+    }
+
+    /**
+     * Creates an empty map whose entries weigh at most the given total, such as an estimate of
+     * the bytes they retain
+     * @param maximumWeight the total weight
+     * @param weigher returns the weight of an entry, which must not be negative
+     * @param policy the eviction policy, which must not bound any other map
+     * @return the map
+     * @throws IllegalArgumentException if the total weight is negative
+     * @throws IllegalStateException if the policy already bounds another map
+     */
+    public static <K extends Comparable<K>, V> BoundedRoamingMap<K, V> withMaximumWeight(long maximumWeight,
+            ToLongBiFunction<? super K, ? super V> weigher, EvictionPolicy<? super K> policy) {
+        return new BoundedRoamingMap<K, V>(maximumWeight, weigher, policy);
+    }
+
+    private long weigh(K key, V value) {
+        long weight = weigher.applyAsLong(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        }
+        return weight;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        V value = map.get(key);
+        if (value != null || map.containsKey(key)) {
+            hits++;
+            policy.accessed((K) key);
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        long added = weigh(key, value);
+        int size = map.size();
+        V previous = map.put(key, value);
+        if (map.size() == size) {
+            weight -= weigh(key, previous);
+            policy.accessed(key);
+        } else {
+            policy.added(key);
+        }
+        weight += added;
+        while (weight > capacity && !map.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            K victim = (K) policy.victim(map);
+            removed(victim, map.remove(victim));
+            evictions++;
+        }
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        V previous = map.remove(key);
+        removed((K) key, previous);
+        return previous;
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return removed(map.pollFirstEntry());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return removed(map.pollLastEntry());
+    }
+
+    private Entry<K, V> removed(Entry<K, V> entry) {
+        if (entry != null) {
+            removed(entry.getKey(), entry.getValue());
+        }
+        return entry;
+    }
+
+    private void removed(K key, V value) {
+        weight -= weigh(key, value);
+        policy.removed(key);
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        weight = 0;
+        policy.cleared();
+    }
+
+    /**
+     * Returns the capacity of this map
+     * @return the maximum total weight of the entries
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the total weight of the entries, the number of entries for maps bounded by size
+     * @return the total weight of the entries
+     */
+    public long weight() {
+        return weight;
+    }
+
+    public long hitCount() {
+        return hits;
+    }
+
+    public long missCount() {
+        return misses;
+    }
+
+    public long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the fraction of gets that found their key
+     * @return the fraction of gets that found their key, or 1 if there were none
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 1.0 : (double) hits / total;
+    }
+
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    @Override
+    public long version() {
+        return map.version();
+    }
+
+    @Override
+    public long fingerprint() {
+        return map.fingerprint();
+    }
+
+    @Override
+    public RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return map.rangeSummary(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    /**
+     * Returns the change journal of the underlying map, see {@link RoamingMap#changesSince}
+     * @param since the version of the copy
+     * @return the changes after that version, or empty if some of them are no longer recorded
+     */
+    public Optional<List<RoamingMap.Change<K, V>>> changesSince(long since) {
+        return map.changesSince(since);
+    }
+
+    /**
+     * Starts recording the last changes of this map, evictions included, see {@link RoamingMap#enableJournal}
+     * @param capacity the number of changes to keep
+     */
+    public void enableJournal(int capacity) {
+        map.enableJournal(capacity);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return map.containsValue(value);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return map.values();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return map.entrySet();
+    }
+
+    @Override
+    public String toString() {
+        return map.toString();
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return map.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return map.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return map.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return map.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return map.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return map.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return map.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return map.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return map.firstEntry();
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return map.lastEntry();
+    }
+
+    @Override
+    public K firstKey() {
+        return map.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return map.lastKey();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return map.comparator();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return map.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return map.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return map.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return map.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return map.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return map.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return map.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return map.headMap(toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return map.tailMap(fromKey);
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Measures BoundedRoamingMap as a cache of a tenth of a million keys, read with a skewed
+ * distribution where a few keys are far more popular than the rest, and filled on every miss:
+ * the time per lookup and the hit rate of each eviction policy, against an unbounded RoamingMap,
+ * which never misses after warming up but keeps every key.
+ * Run with: ant bench -Dbenchmark=BoundedRoamingMapBenchmark
+ */
+public class BoundedRoamingMapBenchmark {
+
+    private static final int KEYS = 1_000_000;
+    private static final int CAPACITY = KEYS / 10;
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] probes = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            // The minimum of uniform draws favours low keys
+            probes[i] = Math.min(random.nextInt(KEYS), Math.min(random.nextInt(KEYS), random.nextInt(KEYS)));
+        }
+
+        RoamingMap<Integer, Integer> unbounded = new RoamingMap<>();
+        BenchmarkSupport.run("get or put / unbounded", LOOKUPS, () -> lookUp(unbounded, probes));
+        run("least recently used", EvictionPolicy::leastRecentlyUsed, probes);
+        run("least frequently used", EvictionPolicy::leastFrequentlyUsed, probes);
+        run("highest key", EvictionPolicy::highestKey, probes);
+    }
+
+    private static void run(String name, Supplier<EvictionPolicy<Integer>> policy, int[] probes) {
+        BoundedRoamingMap<Integer, Integer> cache = BoundedRoamingMap.withMaximumSize(CAPACITY, policy.get());
+        BenchmarkSupport.run("get or put / " + name, LOOKUPS, () -> lookUp(cache, probes));
+        cache.resetStatistics();
+        lookUp(cache, probes);
+        System.out.printf("%-48s %12.1f %% hits%n", "hit rate / " + name, 100 * cache.hitRate());
+    }
+
+    private static long lookUp(VersionedMap<Integer, Integer> cache, int[] probes) {
+        long sum = 0;
+        for (int probe : probes) {
+            Integer value = cache.get(probe);
+            if (value == null) {
+                value = probe;
+                cache.put(probe, value);
+            }
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,150 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Test class for BoundedRoamingMap
+public class BoundedRoamingMapTest {
+
+    @Test
+    public void testEvictsByPolicy() {
+        BoundedRoamingMap<Integer, String> recent = BoundedRoamingMap.withMaximumSize(3, EvictionPolicy.leastRecentlyUsed());
+        recent.put(1, "a");
+        recent.put(2, "b");
+        recent.put(3, "c");
+        assertEquals("a", recent.get(1));
+        recent.put(4, "d");
+        assertEquals(List.of(1, 3, 4), new ArrayList<>(recent.keySet()));
+        assertNull(recent.get(2));
+        assertEquals(1, recent.hitCount());
+        assertEquals(1, recent.missCount());
+        assertEquals(1, recent.evictionCount());
+        assertEquals(0.5, recent.hitRate(), 0.0);
+
+        BoundedRoamingMap<Integer, String> frequent = BoundedRoamingMap.withMaximumSize(3, EvictionPolicy.leastFrequentlyUsed());
+        frequent.put(1, "a");
+        frequent.put(2, "b");
+        frequent.put(3, "c");
+        frequent.get(1);
+        frequent.get(1);
+        frequent.get(3);
+        frequent.remove(3);
+        frequent.put(3, "c");
+        frequent.get(2);
+        frequent.put(4, "d");
+        assertEquals("The re-added key starts over", List.of(1, 2, 4), new ArrayList<>(frequent.keySet()));
+        frequent.put(5, "e");
+        assertEquals("Ties go to the least recently used", List.of(1, 2, 5), new ArrayList<>(frequent.keySet()));
+
+        BoundedRoamingMap<Integer, String> window = BoundedRoamingMap.withMaximumSize(100, EvictionPolicy.lowestKey());
+        BoundedRoamingMap<Integer, String> lowest = BoundedRoamingMap.withMaximumSize(100, EvictionPolicy.highestKey());
+        for (int key = 0; key < 1_000; key++) {
+            window.put(key, "v");
+            lowest.put(999 - key, "v");
+        }
+        assertEquals(Integer.valueOf(900), window.firstKey());
+        assertEquals(Integer.valueOf(99), lowest.lastKey());
+        assertEquals(100, window.size());
+        assertEquals(900, window.evictionCount());
+
+        EvictionPolicy<Integer> shared = EvictionPolicy.leastRecentlyUsed();
+        BoundedRoamingMap.withMaximumSize(1, shared);
+        assertThrows(IllegalStateException.class, () -> BoundedRoamingMap.withMaximumSize(1, shared));
+        assertThrows(IllegalArgumentException.class, () -> BoundedRoamingMap.withMaximumSize(-1, EvictionPolicy.lowestKey()));
+    }
+
+    @Test
+    public void testSharedMapTakesReadsExclusively() throws Exception {
+        BoundedRoamingMap<Integer, Integer> map = BoundedRoamingMap.withMaximumSize(64, EvictionPolicy.leastRecentlyUsed());
+        for (int key = 0; key < 64; key++) {
+            map.put(key, key);
+        }
+        Barricade.shareBetweenThreads(map);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // A read that holds the lock keeps other safe reads out, since reads reorder the policy
+            MapLock lock = MapLock.of(map);
+            int stripe = lock.lockRead();
+            Future<Integer> blocked;
+            try {
+                blocked = executor.submit(() -> Barricade.safeValue(map, 7));
+                assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+            } finally {
+                lock.unlockRead(stripe);
+            }
+            assertEquals(Integer.valueOf(7), blocked.get(30, TimeUnit.SECONDS));
+
+            map.resetStatistics();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        Barricade.safeValue(map, i % 64);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+            Barricade.stopSharing(map);
+        }
+        assertEquals("No hit should be lost", 20_000, map.hitCount());
+        // Every key was used, so the policy evicts the least recently used one, which is still in order
+        map.put(64, 64);
+        assertEquals(64, map.size());
+        assertEquals(1, map.evictionCount());
+    }
+
+    @Test
+    public void testKeepsWeightAndContents() {
+        BoundedRoamingMap<Integer, String> map = BoundedRoamingMap.withMaximumWeight(1_000,
+                (key, value) -> value.length(), EvictionPolicy.leastRecentlyUsed());
+        map.enableJournal(1 << 16);
+        // A reference LRU cache of the same capacity
+        LinkedHashMap<Integer, String> expected = new LinkedHashMap<>(16, 0.75f, true);
+        Random random = new Random(41);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(500);
+            switch (random.nextInt(4)) {
+                case 0 -> assertEquals(expected.get(key), map.get(key));
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> {
+                    String value = "x".repeat(1 + random.nextInt(20));
+                    assertEquals(expected.put(key, value), map.put(key, value));
+                    int weight = expected.values().stream().mapToInt(String::length).sum();
+                    for (Iterator<String> values = expected.values().iterator(); weight > 1_000; ) {
+                        weight -= values.next().length();
+                        values.remove();
+                    }
+                }
+            }
+        }
+        assertEquals(new TreeMap<>(expected).entrySet(), map.entrySet());
+        assertEquals(expected.values().stream().mapToInt(String::length).sum(), map.weight());
+        assertTrue(map.weight() <= map.capacity());
+
+        // Evictions are recorded as removals, so copies of the map stay in sync
+        RoamingMap<Integer, String> copy = new RoamingMap<>();
+        map.changesSince(0).orElseThrow().forEach(change -> change.applyTo(copy));
+        assertEquals(map.entrySet(), copy.entrySet());
+        assertEquals(map.fingerprint(), copy.fingerprint());
+        assertEquals(map.size(), Barricade.correctSize(map));
+
+        map.clear();
+        assertEquals(0, map.weight());
+        map.put(1, "y");
+        assertEquals(1, map.weight());
+    }
+}
@@ -3,50 +3,143 @@ import java.util.*;
 /**
  * A special implementation that wraps RoamingMap and can be configured to exhibit buggy behavior for testing.
  * This class helps test the error handling and warning branches in the Barricade class.
+ * <p>
+ * Each bug fires at a configurable rate, so the map can also serve as a fault injector for measuring
+ * Barricade under fault storms, and every call to get, size, put or toString can be delayed by an
+ * injected latency. Faults are drawn from a seeded random generator, so runs are reproducible.
+ * Like RoamingMap, the map is not thread-safe.
  * @param <K> the type of keys
  * @param <V> the type of values
  */
-public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap<K, V> {
+public class BuggyRoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V> {
     
-    private enum BugType {
+    public enum BugType {
         MODIFY_STATE_ON_GET,       // modifies the state of the map when get is called
         RETURN_WRONG_VALUE_ON_GET, // returns an incorrect value when get is called
         MODIFY_STATE_ON_SIZE,      // modifies the state of the map when size is called
         RETURN_WRONG_SIZE,         // returns an incorrect size
         MODIFY_STATE_ON_TOSTRING,  // modifies the state when toString is called
         RETURN_WRONG_TOSTRING,     // returns an incorrect string representation
-        FAILURE_ON_PUT             // simulates a failure during put operation
+        FAILURE_ON_PUT,            // simulates a failure during put operation
+        RETURN_WRONG_NAVIGATION    // floorEntry returns the first entry and subMap returns the whole map
     }
     
-    private final Set<BugType> enabledBugs = new HashSet<>();
+    private static final long DEFAULT_SEED = 42;
+
+    private final double[] rates = new double[BugType.values().length];
+    private final long[] injected = new long[BugType.values().length];
     private final K bugTriggerKey;      // The key that triggers the bug
     private final V wrongValue;         // The wrong value to return for get bugs
     private final RoamingMap<K, V> map; // Delegate to RoamingMap
+    private SplittableRandom random = new SplittableRandom(DEFAULT_SEED);
+    private double latencyRate;
+    private long latencyNanos;
     
     /**
      * Creates a new BuggyRoamingMap with specific bugs enabled
-     * @param bugTriggerKey the key that will trigger bugs (ignored if null)
+     * @param bugTriggerKey the key that will trigger get and put bugs, or null to trigger them on every key
      * @param wrongValue the incorrect value to return for get bugs
-     * @param bugs the types of bugs to enable
+     * @param bugs the types of bugs to enable, each firing on every call
      */
     public BuggyRoamingMap(K bugTriggerKey, V wrongValue, BugType... bugs) {
         this.map = new RoamingMap<>();
         this.bugTriggerKey = bugTriggerKey;
         this.wrongValue = wrongValue;
         if (bugs != null) {
-            Collections.addAll(this.enabledBugs, bugs);
+            for (BugType bug : bugs) {
+                rates[bug.ordinal()] = 1.0;
+            }
+        }
+    }
+
+    /**
+     * Sets the rate at which the bug fires on the calls it applies to
+     * @param bug the type of bug
+     * @param rate the probability that a call exhibits the bug, between 0 and 1
+     * @return this map
+     * @throws IllegalArgumentException if the rate is not between 0 and 1
+     */
+    public BuggyRoamingMap<K, V> inject(BugType bug, double rate) {
+        rates[Objects.requireNonNull(bug).ordinal()] = requireRate(rate);
+        return this;
+    }
+
+    /**
+     * Delays calls to get, size, put and toString by the given latency at the given rate
+     * @param rate the probability that a call is delayed, between 0 and 1
+     * @param nanos the delay, in nanoseconds
+     * @return this map
+     * @throws IllegalArgumentException if the rate is not between 0 and 1 or the delay is negative
+     */
+    public BuggyRoamingMap<K, V> injectLatency(double rate, long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Latency cannot be negative: " + nanos);
+        }
+        latencyRate = requireRate(rate);
+        latencyNanos = nanos;
+        return this;
+    }
+
+    /**
+     * Reseeds the generator that decides which calls exhibit faults
+     * @param seed the seed
+     * @return this map
+     */
+    public BuggyRoamingMap<K, V> seed(long seed) {
+        random = new SplittableRandom(seed);
+        return this;
+    }
+
+    /**
+     * Returns how many times the bug fired
+     * @param bug the type of bug
+     * @return the number of calls that exhibited the bug
+     */
+    public long injectedFaults(BugType bug) {
+        return injected[Objects.requireNonNull(bug).ordinal()];
+    }
+
+    private static double requireRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+
+    private boolean fires(BugType bug) {
+        double rate = rates[bug.ordinal()];
+        if (rate == 0 || (rate < 1 && random.nextDouble() >= rate)) {
+            return false;
+        }
+        injected[bug.ordinal()]++;
+        return true;
+    }
+
+    private boolean triggers(Object key) {
+        return bugTriggerKey == null || bugTriggerKey.equals(key);
+    }
+
+    private void delay() {
+        if (latencyRate == 0 || (latencyRate < 1 && random.nextDouble() >= latencyRate)) {
+            return;
+        }
+        // Spin rather than sleep, since sleeping cannot resolve delays of a few microseconds
+        long deadline = System.nanoTime() + latencyNanos;
+        while (System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
         }
     }
     
     @Override
     public V get(Object key) {
-        if (bugTriggerKey != null && bugTriggerKey.equals(key)) {
-            if (enabledBugs.contains(BugType.MODIFY_STATE_ON_GET)) {
+        delay();
+        if (triggers(key)) {
+            if (fires(BugType.MODIFY_STATE_ON_GET)) {
                 // Modify the state by adding a random entry
                 map.put((K)("bug-" + System.nanoTime()), (V)"bugvalue");
             }
             
-            if (enabledBugs.contains(BugType.RETURN_WRONG_VALUE_ON_GET)) {
+            if (fires(BugType.RETURN_WRONG_VALUE_ON_GET)) {
                 return wrongValue;
             }
         }
@@ -55,12 +148,13 @@ public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap
     
     @Override
     public int size() {
-        if (enabledBugs.contains(BugType.MODIFY_STATE_ON_SIZE)) {
+        delay();
+        if (fires(BugType.MODIFY_STATE_ON_SIZE)) {
             // Modify the state by adding a random entry
             map.put((K)("bug-" + System.nanoTime()), (V)"bugvalue");
         }
         
-        if (enabledBugs.contains(BugType.RETURN_WRONG_SIZE)) {
+        if (fires(BugType.RETURN_WRONG_SIZE)) {
             return map.size() + 100; // Return incorrect size
         }
         
@@ -69,23 +163,34 @@ public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap
     
     @Override
     public V put(K key, V value) {
-        if (enabledBugs.contains(BugType.FAILURE_ON_PUT)) {
-            if (bugTriggerKey != null && bugTriggerKey.equals(key)) {
-                // Pretend to put but don't actually do it
-                return null;
-            }
+        delay();
+        if (triggers(key) && fires(BugType.FAILURE_ON_PUT)) {
+            // Pretend to put but don't actually do it
+            return null;
         }
         return map.put(key, value);
     }
     
+    @Override
+    public long version() {
+        // Bugs that modify the state go through the delegate, so its version sees them
+        return map.version();
+    }
+
+    @Override
+    public long fingerprint() {
+        return map.fingerprint();
+    }
+    
     @Override
     public String toString() {
-        if (enabledBugs.contains(BugType.MODIFY_STATE_ON_TOSTRING)) {
+        delay();
+        if (fires(BugType.MODIFY_STATE_ON_TOSTRING)) {
             // Modify the state by adding a random entry
             map.put((K)("bug-" + System.nanoTime()), (V)"bugvalue");
         }
         
-        if (enabledBugs.contains(BugType.RETURN_WRONG_TOSTRING)) {
+        if (fires(BugType.RETURN_WRONG_TOSTRING)) {
             return "BuggyMap-" + System.nanoTime();
         }
         
@@ -94,6 +199,10 @@ public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap
     
     // Static factory methods to create maps with specific bugs
     
+    public static <K extends Comparable<K>, V> BuggyRoamingMap<K, V> faultInjector(V wrongValue) {
+        return new BuggyRoamingMap<>(null, wrongValue);
+    }
+    
     public static <K extends Comparable<K>, V> BuggyRoamingMap<K, V> withStateModificationOnGet(K triggerKey) {
         return new BuggyRoamingMap<>(triggerKey, null, BugType.MODIFY_STATE_ON_GET);
     }
@@ -122,6 +231,10 @@ public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap
         return new BuggyRoamingMap<>(triggerKey, null, BugType.FAILURE_ON_PUT);
     }
     
+    public static <K extends Comparable<K>, V> BuggyRoamingMap<K, V> withWrongNavigation() {
+        return new BuggyRoamingMap<>(null, null, BugType.RETURN_WRONG_NAVIGATION);
+    }
+    
     // Remaining NavigableMap interface methods - delegate to map
     
     @Override
@@ -136,6 +249,9 @@ public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap
 
     @Override
     public Entry<K, V> floorEntry(K key) {
+        if (fires(BugType.RETURN_WRONG_NAVIGATION)) {
+            return map.firstEntry();
+        }
         return map.floorEntry(key);
     }
 
@@ -201,6 +317,9 @@ public class BuggyRoamingMap<K extends Comparable<K>, V> implements NavigableMap
 
     @Override
     public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fires(BugType.RETURN_WRONG_NAVIGATION)) {
+            return map;
+        }
         return map.subMap(fromKey, fromInclusive, toKey, toInclusive);
     }
 
@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares building a RoamingMap from the cells of a 1024 x 1024 matrix, in row-major order, one put
+ * at a time against bulk loading them with fromSorted, for both backends, and the cost of building
+ * a whole MatrixMap, which bulk loads its cells.
+ * Run with: ant bench -Dbenchmark=BulkLoadBenchmark
+ */
+public class BulkLoadBenchmark {
+
+    private static final int SIDE = 1 << 10;
+
+    private static final String VALUE = "value";
+
+    public static void main(String[] args) {
+        List<Map.Entry<Indexes, String>> cells = new ArrayList<>(SIDE * SIDE);
+        for (int row = 0; row < SIDE; row++) {
+            for (int column = 0; column < SIDE; column++) {
+                cells.add(Map.entry(new Indexes(row, column), VALUE));
+            }
+        }
+
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            BenchmarkSupport.run("puts / " + backend, cells.size(), () -> {
+                RoamingMap<Indexes, String> map = new RoamingMap<>(backend);
+                for (Map.Entry<Indexes, String> cell : cells) {
+                    map.put(cell.getKey(), cell.getValue());
+                }
+                return map.size();
+            });
+            BenchmarkSupport.run("fromSorted / " + backend, cells.size(), () -> RoamingMap.fromSorted(cells.iterator(), backend).size());
+        }
+        BenchmarkSupport.run("MatrixMap.instance", cells.size(), () -> MatrixMap.instance(SIDE, SIDE, indexes -> VALUE).size().row());
+    }
+}
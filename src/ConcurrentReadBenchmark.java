@@ -0,0 +1,39 @@
+/**
+ * Measures the throughput of verified reads on a map shared between threads with
+ * Barricade.shareBetweenThreads, for one thread up to the number of available cores.
+ * Run with: ant bench -Dbenchmark=ConcurrentReadBenchmark
+ */
+public class ConcurrentReadBenchmark {
+
+    private static final int SIZE = 4_096;
+    private static final int LOOKUPS_PER_THREAD = 500_000;
+
+    public static void main(String[] args) {
+        RoamingMap<Integer, Integer> map = new RoamingMap<>();
+        for (int i = 0; i < SIZE; i++) {
+            map.put(i, i);
+        }
+        Integer[] keys = new Integer[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = i;
+        }
+        BenchmarkSupport.run("safeValue / unshared", LOOKUPS_PER_THREAD, () -> readConcurrently(map, keys, 1));
+        Barricade.shareBetweenThreads(map);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            int count = threads;
+            BenchmarkSupport.run("safeValue / " + threads + " threads", (long) count * LOOKUPS_PER_THREAD,
+                    () -> readConcurrently(map, keys, count));
+        }
+    }
+
+    private static long readConcurrently(RoamingMap<Integer, Integer> map, Integer[] keys, int threads) {
+        return BenchmarkSupport.onThreads(threads, index -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                sum += Barricade.safeValue(map, keys[(i * 31 + index) & (SIZE - 1)]);
+            }
+            return sum;
+        });
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An ordered map with non-null keys and values that keeps track of its own modifications, like
+ * RoamingMap, but can be read and written by several threads without external locking.
+ * It is backed by a lock-free ConcurrentSkipListMap, so its views (key sets, entry sets, values and
+ * sub-maps) are read-only and their iterators are weakly consistent: they never throw
+ * ConcurrentModificationException and reflect some state of the map at or since their creation.
+ * <p>
+ * putIfAbsent, replace and the two-argument remove are atomic. compute, computeIfAbsent,
+ * computeIfPresent and merge are built on them by ConcurrentMap, so each takes effect atomically
+ * but its function may be applied more than once under contention.
+ * <p>
+ * The version and fingerprint are updated right after each change to the contents, so they only
+ * match the contents while no write is in progress. Barricade verification therefore still needs
+ * {@link Barricade#shareBetweenThreads} when the map is written concurrently with verified calls.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class ConcurrentRoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V>, ConcurrentMap<K, V> {
+
+    private final ConcurrentSkipListMap<K, V> map;
+    // Read-only view of the map; it caches its entry set, so entrySet() does not allocate
+    private final Map<K, V> view;
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong fingerprint = new AtomicLong();
+
+    public ConcurrentRoamingMap() {
+        map = new ConcurrentSkipListMap<>();
+        view = Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        return map.get(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        V previous = map.put(key, value);
+        changed(key, previous, value);
+        return previous;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        V previous = map.putIfAbsent(key, value);
+        if (previous == null) {
+            changed(key, null, value);
+        }
+        return previous;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        if (!map.replace(key, oldValue, newValue)) {
+            return false;
+        }
+        changed(key, oldValue, newValue);
+        return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        V previous = map.replace(key, value);
+        if (previous != null) {
+            changed(key, previous, value);
+        }
+        return previous;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Objects.requireNonNull(key);
+        if (value == null || !map.remove(key, value)) {
+            return false;
+        }
+        changed(key, value, null);
+        return true;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        V previous = map.remove(key);
+        if (previous != null) {
+            changed(key, previous, null);
+        }
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        // Remove entry by entry, so that the fingerprint stays correct if other threads write meanwhile
+        for (Entry<K, V> entry = map.pollFirstEntry(); entry != null; entry = map.pollFirstEntry()) {
+            changed(entry.getKey(), entry.getValue(), null);
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint.get();
+    }
+
+    @Override
+    public RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return RangeSummary.of(RangeSummary.slice(map, fromKey, fromInclusive, toKey, toInclusive).entrySet());
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return view.entrySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(map.values());
+    }
+
+    @Override
+    public String toString() {
+        return map.toString();
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return map.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return map.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return map.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return map.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return map.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return map.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return map.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return map.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return map.firstEntry();
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return map.lastEntry();
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return removed(map.pollFirstEntry());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return removed(map.pollLastEntry());
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return Collections.unmodifiableNavigableMap(map.descendingMap());
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return Collections.unmodifiableNavigableSet(map.navigableKeySet());
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return Collections.unmodifiableNavigableSet(map.descendingKeySet());
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return Collections.unmodifiableNavigableMap(map.subMap(fromKey, fromInclusive, toKey, toInclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return Collections.unmodifiableNavigableMap(map.headMap(toKey, inclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return Collections.unmodifiableNavigableMap(map.tailMap(fromKey, inclusive));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return Collections.unmodifiableSortedMap(map.subMap(fromKey, toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return Collections.unmodifiableSortedMap(map.headMap(toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return Collections.unmodifiableSortedMap(map.tailMap(fromKey));
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return map.comparator();
+    }
+
+    @Override
+    public K firstKey() {
+        return map.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return map.lastKey();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        return map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return map.containsValue(value);
+    }
+
+    private Entry<K, V> removed(Entry<K, V> entry) {
+        if (entry != null) {
+            changed(entry.getKey(), entry.getValue(), null);
+        }
+        return entry;
+    }
+
+    // Values are never null in the map, so a null previous or next value means the entry was absent
+    private void changed(Object key, Object previous, Object next) {
+        long delta = 0;
+        if (previous != null) {
+            delta -= VersionedMap.fingerprint(key, previous);
+        }
+        if (next != null) {
+            delta += VersionedMap.fingerprint(key, next);
+        }
+        fingerprint.addAndGet(delta);
+        version.incrementAndGet();
+    }
+}
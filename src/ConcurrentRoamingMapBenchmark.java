@@ -0,0 +1,59 @@
+import java.util.NavigableMap;
+
+/**
+ * Compares ConcurrentRoamingMap against a RoamingMap serialized behind one global lock, for a mix of
+ * 90% reads and 10% writes, from one thread up to the number of available cores.
+ * Run with: ant bench -Dbenchmark=ConcurrentRoamingMapBenchmark
+ */
+public class ConcurrentRoamingMapBenchmark {
+
+    private static final int SIZE = 4_096;
+    private static final int OPERATIONS_PER_THREAD = 500_000;
+    // One operation in WRITE_EVERY is a put, the others are gets
+    private static final int WRITE_EVERY = 10;
+
+    public static void main(String[] args) {
+        Integer[] keys = new Integer[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = i;
+        }
+        RoamingMap<Integer, Integer> locked = new RoamingMap<>();
+        ConcurrentRoamingMap<Integer, Integer> concurrent = new ConcurrentRoamingMap<>();
+        for (int i = 0; i < SIZE; i++) {
+            locked.put(keys[i], i);
+            concurrent.put(keys[i], i);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            int count = threads;
+            long operations = (long) count * OPERATIONS_PER_THREAD;
+            BenchmarkSupport.run("RoamingMap, global lock / " + threads + " threads", operations,
+                    () -> BenchmarkSupport.onThreads(count, index -> mixed(locked, keys, index, true)));
+            BenchmarkSupport.run("ConcurrentRoamingMap / " + threads + " threads", operations,
+                    () -> BenchmarkSupport.onThreads(count, index -> mixed(concurrent, keys, index, false)));
+        }
+    }
+
+    private static long mixed(NavigableMap<Integer, Integer> map, Integer[] keys, int index, boolean lock) {
+        long sum = 0;
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            Integer key = keys[(i * 31 + index) & (SIZE - 1)];
+            if (lock) {
+                synchronized (map) {
+                    sum += operate(map, key, i);
+                }
+            } else {
+                sum += operate(map, key, i);
+            }
+        }
+        return sum;
+    }
+
+    private static long operate(NavigableMap<Integer, Integer> map, Integer key, int i) {
+        if (i % WRITE_EVERY == 0) {
+            map.put(key, i);
+            return 0;
+        }
+        return map.get(key);
+    }
+}
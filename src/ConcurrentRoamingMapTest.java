@@ -0,0 +1,70 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Test class for ConcurrentRoamingMap
+public class ConcurrentRoamingMapTest {
+
+    @Test
+    public void testTracksAtomicOperations() {
+        ConcurrentRoamingMap<String, Integer> concurrent = new ConcurrentRoamingMap<>();
+        RoamingMap<String, Integer> expected = new RoamingMap<>();
+        expected.put("a", 1);
+        expected.put("b", 3);
+
+        assertNull(concurrent.putIfAbsent("a", 1));
+        assertEquals(Integer.valueOf(1), concurrent.putIfAbsent("a", 2));
+        assertFalse(concurrent.replace("a", 2, 5));
+        concurrent.compute("b", (key, value) -> (value == null) ? 3 : value + 1);
+        concurrent.merge("c", 4, Integer::sum);
+        assertTrue(concurrent.remove("c", 4));
+        assertEquals(expected.entrySet(), concurrent.entrySet());
+        assertEquals("Fingerprint should follow atomic operations", expected.fingerprint(), concurrent.fingerprint());
+        assertEquals(4, concurrent.version());
+
+        assertThrows(NullPointerException.class, () -> concurrent.get(null));
+        assertThrows(NullPointerException.class, () -> concurrent.put(null, 1));
+        assertThrows(UnsupportedOperationException.class, () -> concurrent.keySet().remove("a"));
+        concurrent.clear();
+        assertEquals(0, concurrent.fingerprint());
+    }
+
+    @Test
+    public void testUnderConcurrentWrites() throws Exception {
+        ConcurrentRoamingMap<Integer, Integer> concurrent = new ConcurrentRoamingMap<>();
+        int threads = 8;
+        int keys = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        concurrent.merge(i % keys, 1, Integer::sum);
+                        // Iteration is weakly consistent and never fails while other threads write
+                        concurrent.entrySet().iterator().hasNext();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        RoamingMap<Integer, Integer> expected = new RoamingMap<>();
+        for (int i = 0; i < keys; i++) {
+            expected.put(i, threads * 1_000 / keys);
+        }
+        assertEquals("No increment should be lost", expected.entrySet(), concurrent.entrySet());
+        assertEquals(expected.fingerprint(), concurrent.fingerprint());
+        assertEquals(keys, Barricade.correctSize(concurrent));
+        assertEquals(Integer.valueOf(80), Barricade.safeValue(concurrent, 42));
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Helpers for tests that check maps against a reference map, usually a TreeMap, which gets the same
+ * writes and answers the same queries
+ */
+final class DifferentialTesting {
+
+    private DifferentialTesting() {
+    }
+
+    /**
+     * Puts and removes random keys in the reference and in the maps, and checks that every write
+     * returns on each map what it returns on the reference
+     * @param random the source of the keys and of the choice between put and remove
+     * @param writes the number of writes
+     * @param removeOneIn one write in this many is a remove, on average
+     * @param keys the number of distinct keys
+     * @param key the key for a number from 0 to keys, exclusive
+     * @param value the value for the index of a write
+     * @param expected the reference map
+     * @param maps the maps under test
+     */
+    @SafeVarargs
+    static <K, V> void randomWrites(Random random, int writes, int removeOneIn, int keys, IntFunction<K> key,
+                                    IntFunction<V> value, Map<K, V> expected, Map<K, V>... maps) {
+        for (int i = 0; i < writes; i++) {
+            K k = key.apply(random.nextInt(keys));
+            if (random.nextInt(removeOneIn) == 0) {
+                V previous = expected.remove(k);
+                for (Map<K, V> map : maps) {
+                    assertEquals(previous, map.remove(k));
+                }
+            } else {
+                V v = value.apply(i);
+                V previous = expected.put(k, v);
+                for (Map<K, V> map : maps) {
+                    assertEquals(previous, map.put(k, v));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns keys to probe a map with, from one number up to another in steps
+     * @param from the first number
+     * @param to the last number, inclusive
+     * @param step the distance between two numbers
+     * @param key the key for a number
+     * @return the keys
+     */
+    static <K> List<K> probes(int from, int to, int step, IntFunction<K> key) {
+        List<K> probes = new ArrayList<>();
+        for (int number = from; number <= to; number += step) {
+            probes.add(key.apply(number));
+        }
+        return probes;
+    }
+
+    /**
+     * Checks that the map holds the entries of the reference in the same order, finds the same
+     * neighbours of every probe, and has the same sub-maps between the probes at a quarter, half and
+     * three quarters of the list, in both orders
+     * @param expected the reference map
+     * @param map the map under test
+     * @param probes the keys to probe with, in ascending order
+     */
+    static <K, V> void assertNavigatesLike(NavigableMap<K, V> expected, NavigableMap<K, V> map, List<K> probes) {
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+        for (K probe : probes) {
+            assertEquals(expected.lowerEntry(probe), map.lowerEntry(probe));
+            assertEquals(expected.lowerKey(probe), map.lowerKey(probe));
+            assertEquals(expected.floorEntry(probe), map.floorEntry(probe));
+            assertEquals(expected.floorKey(probe), map.floorKey(probe));
+            assertEquals(expected.ceilingEntry(probe), map.ceilingEntry(probe));
+            assertEquals(expected.ceilingKey(probe), map.ceilingKey(probe));
+            assertEquals(expected.higherEntry(probe), map.higherEntry(probe));
+            assertEquals(expected.higherKey(probe), map.higherKey(probe));
+        }
+        K low = probes.get(probes.size() / 4);
+        K middle = probes.get(probes.size() / 2);
+        K high = probes.get(3 * probes.size() / 4);
+        assertEquals(new ArrayList<>(expected.subMap(low, true, high, false).entrySet()),
+                new ArrayList<>(map.subMap(low, true, high, false).entrySet()));
+        assertEquals(expected.subMap(low, false, high, true).size(), map.subMap(low, false, high, true).size());
+        assertEquals(new ArrayList<>(expected.descendingMap().headMap(middle, true).keySet()),
+                new ArrayList<>(map.descendingMap().headMap(middle, true).keySet()));
+        assertEquals(expected.tailMap(middle, false).descendingMap().firstEntry(), map.tailMap(middle, false).descendingMap().firstEntry());
+        assertEquals(expected.descendingMap().subMap(high, false, low, true).lastKey(),
+                map.descendingMap().subMap(high, false, low, true).lastKey());
+    }
+}
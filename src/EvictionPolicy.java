@@ -0,0 +1,236 @@
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Decides which entry a {@link BoundedRoamingMap} evicts when it grows past its capacity.
+ * A policy keeps track of the keys of one map, in O(1) per access, so every map needs a policy
+ * of its own.
+ * @param <K> the type of keys
+ */
+public abstract class EvictionPolicy<K> {
+
+    private boolean attached;
+
+    /**
+     * Returns a policy that evicts the entry that was read or written the longest time ago
+     * @param <K> the type of keys
+     * @return a least-recently-used policy
+     */
+    public static <K> EvictionPolicy<K> leastRecentlyUsed() {
+        return new LeastRecentlyUsed<>();
+    }
+
+    /**
+     * Returns a policy that evicts the entry read or written the fewest times since it was added,
+     * the least recently used of them on a tie
+     * @param <K> the type of keys
+     * @return a least-frequently-used policy
+     */
+    public static <K> EvictionPolicy<K> leastFrequentlyUsed() {
+        return new LeastFrequentlyUsed<>();
+    }
+
+    /**
+     * Returns a policy that evicts the entry with the lowest key, which keeps a sliding window
+     * over the highest keys
+     * @param <K> the type of keys
+     * @return a lowest-key policy
+     */
+    public static <K> EvictionPolicy<K> lowestKey() {
+        return new Ordered<>(true);
+    }
+
+    /**
+     * Returns a policy that evicts the entry with the highest key, which keeps the lowest keys
+     * @param <K> the type of keys
+     * @return a highest-key policy
+     */
+    public static <K> EvictionPolicy<K> highestKey() {
+        return new Ordered<>(false);
+    }
+
+    /**
+     * Binds the policy to the map it will keep track of
+     * @throws IllegalStateException if the policy already keeps track of another map
+     */
+    final void attach() {
+        if (attached) {
+            throw new IllegalStateException("The eviction policy already bounds another map");
+        }
+        attached = true;
+    }
+
+    abstract void added(K key);
+
+    abstract void accessed(K key);
+
+    abstract void removed(K key);
+
+    abstract void cleared();
+
+    /**
+     * Returns the key to evict
+     * @param map the entries of the map, which is not empty
+     * @return the key to evict
+     */
+    abstract K victim(NavigableMap<? extends K, ?> map);
+
+    private static final class LeastRecentlyUsed<K> extends EvictionPolicy<K> {
+        // Keys from the least to the most recently used
+        private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+        @Override
+        void added(K key) {
+            order.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        void accessed(K key) {
+            order.get(key);
+        }
+
+        @Override
+        void removed(K key) {
+            order.remove(key);
+        }
+
+        @Override
+        void cleared() {
+            order.clear();
+        }
+
+        @Override
+        K victim(NavigableMap<? extends K, ?> map) {
+            return order.keySet().iterator().next();
+        }
+
+        @Override
+        public String toString() {
+            return "least recently used";
+        }
+    }
+
+    private static final class LeastFrequentlyUsed<K> extends EvictionPolicy<K> {
+
+        // The keys used a given number of times, from the least to the most recently used, in a
+        // list of the counts in use in increasing order
+        private static final class Frequency<K> {
+            final long count;
+            final LinkedHashSet<K> keys = new LinkedHashSet<>();
+            Frequency<K> previous;
+            Frequency<K> next;
+
+            Frequency(long count) {
+                this.count = count;
+            }
+        }
+
+        private final Map<K, Frequency<K>> frequencies = new HashMap<>();
+        private Frequency<K> lowest;
+
+        @Override
+        void added(K key) {
+            if (lowest == null || lowest.count != 1) {
+                Frequency<K> first = new Frequency<>(1);
+                first.next = lowest;
+                if (lowest != null) {
+                    lowest.previous = first;
+                }
+                lowest = first;
+            }
+            lowest.keys.add(key);
+            frequencies.put(key, lowest);
+        }
+
+        @Override
+        void accessed(K key) {
+            Frequency<K> frequency = frequencies.get(key);
+            Frequency<K> next = frequency.next;
+            if (next == null || next.count != frequency.count + 1) {
+                next = new Frequency<>(frequency.count + 1);
+                next.previous = frequency;
+                next.next = frequency.next;
+                if (frequency.next != null) {
+                    frequency.next.previous = next;
+                }
+                frequency.next = next;
+            }
+            next.keys.add(key);
+            frequencies.put(key, next);
+            remove(frequency, key);
+        }
+
+        @Override
+        void removed(K key) {
+            remove(frequencies.remove(key), key);
+        }
+
+        private void remove(Frequency<K> frequency, K key) {
+            frequency.keys.remove(key);
+            if (!frequency.keys.isEmpty()) {
+                return;
+            }
+            if (frequency.previous != null) {
+                frequency.previous.next = frequency.next;
+            } else {
+                lowest = frequency.next;
+            }
+            if (frequency.next != null) {
+                frequency.next.previous = frequency.previous;
+            }
+        }
+
+        @Override
+        void cleared() {
+            frequencies.clear();
+            lowest = null;
+        }
+
+        @Override
+        K victim(NavigableMap<? extends K, ?> map) {
+            return lowest.keys.iterator().next();
+        }
+
+        @Override
+        public String toString() {
+            return "least frequently used";
+        }
+    }
+
+    private static final class Ordered<K> extends EvictionPolicy<K> {
+        private final boolean lowest;
+
+        private Ordered(boolean lowest) {
+            this.lowest = lowest;
+        }
+
+        @Override
+        void added(K key) {
+        }
+
+        @Override
+        void accessed(K key) {
+        }
+
+        @Override
+        void removed(K key) {
+        }
+
+        @Override
+        void cleared() {
+        }
+
+        @Override
+        K victim(NavigableMap<? extends K, ?> map) {
+            return lowest ? map.firstKey() : map.lastKey();
+        }
+
+        @Override
+        public String toString() {
+            return lowest ? "lowest key" : "highest key";
+        }
+    }
+}
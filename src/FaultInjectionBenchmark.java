@@ -0,0 +1,126 @@
+import java.util.Objects;
+import java.util.function.IntToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the throughput and tail latency of Barricade while BuggyRoamingMap injects each class
+ * of fault at increasing rates, so the cost of the recovery paths of safeGet, correctSize,
+ * correctStringRepresentation, safeFloorEntry and safeSubMap and of the failure paths can be
+ * compared against fault-free calls. A last group adds injected latency
+ * to the map to show how slow calls into the map reach the tail of the verified calls.
+ * Run with: ant bench -Dbenchmark=FaultInjectionBenchmark
+ */
+public class FaultInjectionBenchmark {
+
+    private static final int SIZE = 1_024;
+    private static final int CALLS = 20_000;
+    private static final double[] RATES = {0.0, 0.001, 0.01, 0.1, 1.0};
+    private static final long INJECTED_LATENCY_NANOS = 20_000;
+
+    private static final String[] keys = new String[SIZE];
+
+    public static void main(String[] args) {
+        // Every recovery logs a warning, which would otherwise dominate the measurement
+        Logger.getLogger(Barricade.class.getName()).setLevel(Level.OFF);
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = String.format("key-%04d", i);
+        }
+
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.RETURN_WRONG_VALUE_ON_GET, rate);
+            measure("safeGet / wrong value", rate, map, BuggyRoamingMap.BugType.RETURN_WRONG_VALUE_ON_GET,
+                    call -> Objects.hashCode(Barricade.safeGet(map, keys[call & (SIZE - 1)]).value()));
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.MODIFY_STATE_ON_GET, rate);
+            measure("safeGet / state change", rate, map, BuggyRoamingMap.BugType.MODIFY_STATE_ON_GET,
+                    failing(call -> Objects.hashCode(Barricade.safeGet(map, keys[call & (SIZE - 1)]).value())));
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.RETURN_WRONG_SIZE, rate);
+            measure("correctSize / wrong size", rate, map, BuggyRoamingMap.BugType.RETURN_WRONG_SIZE,
+                    call -> Barricade.correctSize(map));
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.MODIFY_STATE_ON_SIZE, rate);
+            measure("correctSize / state change", rate, map, BuggyRoamingMap.BugType.MODIFY_STATE_ON_SIZE,
+                    failing(call -> Barricade.correctSize(map)));
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.RETURN_WRONG_TOSTRING, rate);
+            measure("correctStringRepresentation / wrong string", rate, map, BuggyRoamingMap.BugType.RETURN_WRONG_TOSTRING,
+                    call -> Barricade.correctStringRepresentation(map).length());
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.MODIFY_STATE_ON_TOSTRING, rate);
+            measure("correctStringRepresentation / state change", rate, map, BuggyRoamingMap.BugType.MODIFY_STATE_ON_TOSTRING,
+                    failing(trimmed(map, call -> Barricade.correctStringRepresentation(map).length())));
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.RETURN_WRONG_NAVIGATION, rate);
+            measure("safeFloorEntry / wrong navigation", rate, map, BuggyRoamingMap.BugType.RETURN_WRONG_NAVIGATION,
+                    call -> Objects.hashCode(Barricade.safeFloorEntry(map, keys[call & (SIZE - 1)] + "-")));
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.RETURN_WRONG_NAVIGATION, rate);
+            measure("safeSubMap / wrong navigation", rate, map, BuggyRoamingMap.BugType.RETURN_WRONG_NAVIGATION,
+                    call -> {
+                        String from = keys[call & (SIZE - 1) & ~15];
+                        return Barricade.safeSubMap(map, from, true, from + "~", false).size();
+                    });
+        }
+        for (double rate : RATES) {
+            BuggyRoamingMap<String, Integer> map = filledMap().inject(BuggyRoamingMap.BugType.FAILURE_ON_PUT, rate);
+            measure("safePut / lost put", rate, map, BuggyRoamingMap.BugType.FAILURE_ON_PUT,
+                    failing(call -> Objects.hashCode(Barricade.safePut(map, keys[call & (SIZE - 1)], call).value())));
+        }
+
+        for (double rate : new double[] {0.001, 0.01}) {
+            BuggyRoamingMap<String, Integer> map = filledMap()
+                    .inject(BuggyRoamingMap.BugType.RETURN_WRONG_VALUE_ON_GET, 0.01)
+                    .injectLatency(rate, INJECTED_LATENCY_NANOS);
+            measure("safeGet / wrong value 1%, latency", rate, map, BuggyRoamingMap.BugType.RETURN_WRONG_VALUE_ON_GET,
+                    call -> Objects.hashCode(Barricade.safeGet(map, keys[call & (SIZE - 1)]).value()));
+        }
+    }
+
+    private static BuggyRoamingMap<String, Integer> filledMap() {
+        BuggyRoamingMap<String, Integer> map = BuggyRoamingMap.faultInjector(-1);
+        for (int i = 0; i < SIZE; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+
+    private static void measure(String name, double rate, BuggyRoamingMap<String, Integer> map,
+                                BuggyRoamingMap.BugType bug, IntToLongFunction operation) {
+        BenchmarkSupport.latency(String.format("%s @ %s", name, rate), CALLS, operation);
+        System.out.printf("%-48s %12d faults injected%n", "", map.injectedFaults(bug));
+    }
+
+    // Removes the entries a state change added after each call, so that the map keeps its size and
+    // the cost of a string representation does not grow with the number of faults injected so far
+    private static IntToLongFunction trimmed(BuggyRoamingMap<String, Integer> map, IntToLongFunction operation) {
+        return call -> {
+            try {
+                return operation.applyAsLong(call);
+            } finally {
+                while (map.size() > SIZE) {
+                    map.pollFirstEntry();
+                }
+            }
+        };
+    }
+
+    // Fault classes Barricade cannot recover from surface as exceptions, which are part of the cost measured
+    private static IntToLongFunction failing(IntToLongFunction operation) {
+        return call -> {
+            try {
+                return operation.applyAsLong(call);
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.NavigableMap;
+
+/**
+ * The verification run around every method of a map guarded by {@link GuardedMaps}.
+ * The generated guard calls {@link #before} and {@link #after} with the index of the method,
+ * which identifies it in {@link GuardedMaps#methodName(int)} and {@link GuardedMaps#isMutator(int)}.
+ * The state passed from before to after is a primitive long, so the hot path neither boxes nor allocates.
+ */
+public interface GuardStrategy {
+
+    /**
+     * Called before the guarded map runs a method
+     * @param map the guarded map
+     * @param method the index of the method
+     * @return a token describing the state of the map, passed on to after
+     */
+    long before(NavigableMap<?, ?> map, int method);
+
+    /**
+     * Called after the guarded map ran a method without throwing
+     * @param map the guarded map
+     * @param method the index of the method
+     * @param token the token returned by before
+     */
+    void after(NavigableMap<?, ?> map, int method, long token);
+
+    /**
+     * Returns a strategy that does nothing, to measure the cost of the guard itself
+     * @return a strategy that does nothing
+     */
+    static GuardStrategy none() {
+        return NoCheck.INSTANCE;
+    }
+
+    /**
+     * Returns a strategy that checks that methods which do not modify a map leave its state unchanged.
+     * The state of a VersionedMap is its fingerprint, which is checked in O(1); the state of any
+     * other map is approximated by its size.
+     * @return a state-checking strategy
+     */
+    static GuardStrategy stateChecking() {
+        return StateCheck.INSTANCE;
+    }
+
+    enum NoCheck implements GuardStrategy {
+        INSTANCE;
+
+        @Override
+        public long before(NavigableMap<?, ?> map, int method) {
+            return 0;
+        }
+
+        @Override
+        public void after(NavigableMap<?, ?> map, int method, long token) {
+        }
+    }
+
+    enum StateCheck implements GuardStrategy {
+        INSTANCE;
+
+        @Override
+        public long before(NavigableMap<?, ?> map, int method) {
+            return state(map);
+        }
+
+        @Override
+        public void after(NavigableMap<?, ?> map, int method, long token) {
+            if (!GuardedMaps.isMutator(method) && state(map) != token) {
+                throw new RuntimeException(GuardedMaps.methodName(method) + " method of NavigableMap operated incorrectly");
+            }
+        }
+
+        private static long state(NavigableMap<?, ?> map) {
+            return (map instanceof VersionedMap<?, ?> versioned) ? versioned.fingerprint() : map.entrySet().size();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Wraps any NavigableMap in a guard that runs a {@link GuardStrategy} around every one of its methods,
+ * including the navigation, sub-map, polling and default methods that Barricade does not cover.
+ * <p>
+ * The guard is a class generated with ASM for the concrete class of the wrapped map. Each method loads
+ * its arguments and calls the wrapped map directly, with invokevirtual when the class of the map is
+ * accessible, so the hot path has no reflection, no argument arrays and no boxing.
+ * Views returned by the guarded map, such as key sets and sub-maps, are not guarded themselves.
+ */
+public final class GuardedMaps {
+
+    private static final String STRATEGY = Type.getInternalName(GuardStrategy.class);
+    private static final String NAVIGABLE_MAP = Type.getInternalName(NavigableMap.class);
+    private static final String BEFORE = Type.getMethodDescriptor(Type.LONG_TYPE, Type.getType(NavigableMap.class), Type.INT_TYPE);
+    private static final String AFTER = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(NavigableMap.class), Type.INT_TYPE, Type.LONG_TYPE);
+    private static final String CONSTRUCTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(NavigableMap.class), Type.getType(GuardStrategy.class));
+
+    private static final Set<String> MUTATOR_NAMES = Set.of("put", "putAll", "remove", "clear", "pollFirstEntry",
+            "pollLastEntry", "putIfAbsent", "replace", "replaceAll", "compute", "computeIfAbsent", "computeIfPresent", "merge");
+
+    // Every guarded method, in a fixed order whose index is passed to the strategy; toString is the last one
+    private static final List<Method> METHODS = guardedMethods();
+    private static final String[] NAMES;
+    private static final boolean[] MUTATORS;
+
+    static {
+        NAMES = new String[METHODS.size()];
+        MUTATORS = new boolean[METHODS.size()];
+        for (int i = 0; i < METHODS.size(); i++) {
+            NAMES[i] = METHODS.get(i).getName();
+            MUTATORS[i] = MUTATOR_NAMES.contains(NAMES[i]);
+        }
+    }
+
+    private static final ClassValue<MethodHandle> GUARDS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            return defineGuard(type);
+        }
+    };
+
+    private GuardedMaps() {
+    }
+
+    /**
+     * Wraps the map in a guard that runs the strategy around every method
+     * @param map the map to guard
+     * @param strategy the verification run around every method
+     * @return the guarded map
+     * @throws NullPointerException if the map or the strategy is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> NavigableMap<K, V> guard(NavigableMap<K, V> map, GuardStrategy strategy) {
+        Objects.requireNonNull(map);
+        Objects.requireNonNull(strategy);
+        try {
+            return (NavigableMap<K, V>) GUARDS.get(map.getClass()).invoke(map, strategy);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not create guard for " + map.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Returns the name of the guarded method with the given index
+     * @param method the index of the method
+     * @return the name of the method
+     */
+    public static String methodName(int method) {
+        return NAMES[method];
+    }
+
+    /**
+     * Returns true if the guarded method with the given index may modify the map, false otherwise
+     * @param method the index of the method
+     * @return true if the method may modify the map, false otherwise
+     */
+    public static boolean isMutator(int method) {
+        return MUTATORS[method];
+    }
+
+    static int methodCount() {
+        return NAMES.length;
+    }
+
+    private static List<Method> guardedMethods() {
+        Map<String, Method> methods = new TreeMap<>();
+        for (Method method : NavigableMap.class.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.putIfAbsent(method.getName() + Type.getMethodDescriptor(method), method);
+            }
+        }
+        List<Method> guarded = new ArrayList<>(methods.values());
+        try {
+            guarded.add(Object.class.getMethod("toString"));
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+        return List.copyOf(guarded);
+    }
+
+    private static MethodHandle defineGuard(Class<?> type) {
+        boolean direct = isLinkable(type);
+        String delegateName = direct ? Type.getInternalName(type) : NAVIGABLE_MAP;
+        String delegateDescriptor = "L" + delegateName + ";";
+        String guardName = "GuardedMap$" + (direct ? type.getSimpleName() : "Interface") + "$" + Integer.toHexString(System.identityHashCode(type));
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, guardName, null,
+                "java/lang/Object", new String[] {NAVIGABLE_MAP});
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "delegate", delegateDescriptor, null, null).visitEnd();
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "strategy", "L" + STRATEGY + ";", null, null).visitEnd();
+
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR, null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitTypeInsn(Opcodes.CHECKCAST, delegateName);
+        init.visitFieldInsn(Opcodes.PUTFIELD, guardName, "delegate", delegateDescriptor);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 2);
+        init.visitFieldInsn(Opcodes.PUTFIELD, guardName, "strategy", "L" + STRATEGY + ";");
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int index = 0; index < METHODS.size(); index++) {
+            writeMethod(writer, guardName, delegateName, delegateDescriptor, direct, index, METHODS.get(index));
+        }
+        writer.visitEnd();
+
+        try {
+            Class<?> guard = MethodHandles.lookup().defineClass(writer.toByteArray());
+            return MethodHandles.lookup()
+                    .findConstructor(guard, MethodType.methodType(void.class, NavigableMap.class, GuardStrategy.class))
+                    .asType(MethodType.methodType(Object.class, NavigableMap.class, GuardStrategy.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not define guard for " + type.getName(), e);
+        }
+    }
+
+    private static void writeMethod(ClassWriter writer, String guardName, String delegateName, String delegateDescriptor,
+                                    boolean direct, int index, Method method) {
+        String descriptor = Type.getMethodDescriptor(method);
+        Type[] arguments = Type.getArgumentTypes(descriptor);
+        Type returnType = Type.getReturnType(descriptor);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), descriptor, null, null);
+        mv.visitCode();
+
+        int tokenSlot = 1;
+        for (Type argument : arguments) {
+            tokenSlot += argument.getSize();
+        }
+        int resultSlot = tokenSlot + 2;
+
+        // long token = strategy.before(delegate, index);
+        loadFields(mv, guardName, delegateDescriptor);
+        mv.visitLdcInsn(index);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, STRATEGY, "before", BEFORE, true);
+        mv.visitVarInsn(Opcodes.LSTORE, tokenSlot);
+
+        // result = delegate.method(arguments...);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, guardName, "delegate", delegateDescriptor);
+        int slot = 1;
+        for (Type argument : arguments) {
+            mv.visitVarInsn(argument.getOpcode(Opcodes.ILOAD), slot);
+            slot += argument.getSize();
+        }
+        if (direct) {
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, delegateName, method.getName(), descriptor, false);
+        } else {
+            String owner = method.getDeclaringClass() == Object.class ? "java/lang/Object" : NAVIGABLE_MAP;
+            boolean onInterface = owner.equals(NAVIGABLE_MAP);
+            mv.visitMethodInsn(onInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL, owner, method.getName(), descriptor, onInterface);
+        }
+        if (returnType.getSort() != Type.VOID) {
+            mv.visitVarInsn(returnType.getOpcode(Opcodes.ISTORE), resultSlot);
+        }
+
+        // strategy.after(delegate, index, token);
+        loadFields(mv, guardName, delegateDescriptor);
+        mv.visitLdcInsn(index);
+        mv.visitVarInsn(Opcodes.LLOAD, tokenSlot);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, STRATEGY, "after", AFTER, true);
+
+        if (returnType.getSort() != Type.VOID) {
+            mv.visitVarInsn(returnType.getOpcode(Opcodes.ILOAD), resultSlot);
+        }
+        mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void loadFields(MethodVisitor mv, String guardName, String delegateDescriptor) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, guardName, "strategy", "L" + STRATEGY + ";");
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, guardName, "delegate", delegateDescriptor);
+    }
+
+    // The generated guard can call the map class directly only if it can see it by name from this package
+    private static boolean isLinkable(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers()) || type.isHidden() || type.getEnclosingClass() != null) {
+            return false;
+        }
+        if (!type.getPackageName().isEmpty() && !type.getModule().isExported(type.getPackageName())) {
+            return false;
+        }
+        try {
+            return Class.forName(type.getName(), false, GuardedMaps.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
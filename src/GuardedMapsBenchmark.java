@@ -0,0 +1,81 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Compares the ASM-generated guard of GuardedMaps against an equivalent java.lang.reflect.Proxy
+ * guard and against the unguarded map, for point lookups and navigation.
+ * Run with: ant bench -Dbenchmark=GuardedMapsBenchmark
+ */
+public class GuardedMapsBenchmark {
+
+    // Small enough to stay in cache, so the cost of the guard is not hidden by cache misses
+    private static final int SIZE = 1_024;
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        RoamingMap<Integer, Integer> map = new RoamingMap<>();
+        for (int i = 0; i < SIZE; i++) {
+            map.put(i * 2, i);
+        }
+        GuardStrategy strategy = GuardStrategy.stateChecking();
+        NavigableMap<Integer, Integer> generated = GuardedMaps.guard(map, strategy);
+        NavigableMap<Integer, Integer> proxy = proxyGuard(map, strategy);
+
+        Integer[] keys = new Integer[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = (int) ((i * 2654435761L) % (2L * SIZE));
+        }
+
+        Map<String, NavigableMap<Integer, Integer>> candidates = new LinkedHashMap<>();
+        candidates.put("unguarded", map);
+        candidates.put("generated guard", generated);
+        candidates.put("reflective proxy", proxy);
+        for (Map.Entry<String, NavigableMap<Integer, Integer>> candidate : candidates.entrySet()) {
+            NavigableMap<Integer, Integer> target = candidate.getValue();
+            BenchmarkSupport.run("get / " + candidate.getKey(), LOOKUPS, () -> {
+                long sum = 0;
+                for (Integer key : keys) {
+                    Integer value = target.get(key);
+                    sum += (value == null) ? 0 : value;
+                }
+                return sum;
+            });
+            BenchmarkSupport.run("ceilingEntry / " + candidate.getKey(), LOOKUPS, () -> {
+                long sum = 0;
+                for (Integer key : keys) {
+                    Map.Entry<Integer, Integer> entry = target.ceilingEntry(key);
+                    sum += (entry == null) ? 0 : entry.getValue();
+                }
+                return sum;
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> NavigableMap<K, V> proxyGuard(NavigableMap<K, V> map, GuardStrategy strategy) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < GuardedMaps.methodCount(); i++) {
+            indexes.putIfAbsent(GuardedMaps.methodName(i), i);
+        }
+        InvocationHandler handler = (proxy, method, arguments) -> {
+            int index = indexes.get(method.getName());
+            long token = strategy.before(map, index);
+            Object result;
+            try {
+                result = method.invoke(map, arguments);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            strategy.after(map, index, token);
+            return result;
+        };
+        return (NavigableMap<K, V>) Proxy.newProxyInstance(GuardedMapsBenchmark.class.getClassLoader(),
+                new Class<?>[] {NavigableMap.class}, handler);
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Test class for GuardedMaps
+public class GuardedMapsTest {
+
+    @Test
+    public void testGuardDelegatesEveryMethod() {
+        RoamingMap<Integer, String> map = new RoamingMap<>();
+        NavigableMap<Integer, String> guarded = GuardedMaps.guard(map, GuardStrategy.stateChecking());
+        guarded.put(1, "one");
+        guarded.put(3, "three");
+        guarded.putIfAbsent(5, "five");
+
+        assertEquals("one", guarded.get(1));
+        assertEquals(3, guarded.size());
+        assertEquals(Integer.valueOf(3), guarded.ceilingEntry(2).getKey());
+        assertEquals(Integer.valueOf(1), guarded.floorKey(2));
+        assertEquals(2, guarded.subMap(1, true, 3, true).size());
+        assertEquals("default", guarded.getOrDefault(7, "default"));
+        assertEquals(map.toString(), guarded.toString());
+        assertEquals(Integer.valueOf(1), guarded.pollFirstEntry().getKey());
+        assertEquals(2, map.size());
+        assertTrue(guarded.containsKey(5));
+    }
+
+    @Test
+    public void testGuardDetectsStateChangeInReadOnlyMethod() {
+        BuggyRoamingMap<String, Integer> buggyMap = BuggyRoamingMap.withStateModificationOnSize();
+        buggyMap.put("key1", 100);
+        NavigableMap<String, Integer> guarded = GuardedMaps.guard(buggyMap, GuardStrategy.stateChecking());
+        assertEquals(Integer.valueOf(100), guarded.ceilingEntry("key").getValue());
+        try {
+            guarded.size();
+            fail("Should throw exception when map state changes during size");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("size method of NavigableMap operated incorrectly"));
+        }
+    }
+
+    @Test
+    public void testGuardWorksForInterfaceOnlyMaps() {
+        NavigableMap<String, Integer> map = new TreeMap<>(Map.of("a", 1, "b", 2));
+        // The class of an unmodifiable view is private, so the guard has to call it through the interface
+        NavigableMap<String, Integer> guarded = GuardedMaps.guard(Collections.unmodifiableNavigableMap(map), GuardStrategy.none());
+        assertEquals(Integer.valueOf(2), guarded.lastEntry().getValue());
+        assertEquals("b", guarded.higherKey("a"));
+    }
+}
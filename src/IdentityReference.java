@@ -0,0 +1,26 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak reference to a guarded map, compared by the identity of the map, used as the key of
+ * the per-map registries of Barricade so that registering a map does not keep it alive
+ */
+final class IdentityReference extends WeakReference<Object> {
+    private final int hash;
+
+    IdentityReference(Object map, ReferenceQueue<Object> queue) {
+        super(map, queue);
+        this.hash = System.identityHashCode(map);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof IdentityReference reference && reference.get() != null && reference.get() == get();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
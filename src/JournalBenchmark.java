@@ -0,0 +1,59 @@
+import java.util.Random;
+
+/**
+ * Measures what the change journal of RoamingMap costs writers, and what it saves a consumer that
+ * mirrors a map of a million entries: catching up on a few changes through changesSince against
+ * copying the whole map again.
+ * Run with: ant bench -Dbenchmark=JournalBenchmark
+ */
+public class JournalBenchmark {
+
+    private static final int SIZE = 1 << 20;
+    private static final int WRITES = 1_000_000;
+    private static final int CHANGES = 100;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] keys = new int[WRITES];
+        for (int i = 0; i < WRITES; i++) {
+            keys[i] = random.nextInt(SIZE);
+        }
+        RoamingMap<Integer, Integer> plain = new RoamingMap<>();
+        RoamingMap<Integer, Integer> journaled = new RoamingMap<>();
+        for (int key = 0; key < SIZE; key++) {
+            plain.put(key, key);
+            journaled.put(key, key);
+        }
+        journaled.enableJournal(1 << 16);
+
+        BenchmarkSupport.run("put / no journal", WRITES, () -> {
+            for (int key : keys) {
+                plain.put(key, key);
+            }
+            return plain.version();
+        });
+        BenchmarkSupport.run("put / journal", WRITES, () -> {
+            for (int key : keys) {
+                journaled.put(key, key);
+            }
+            return journaled.version();
+        });
+
+        RoamingMap<Integer, Integer> mirror = RoamingMap.copyOf(journaled);
+        long[] synced = {journaled.version()};
+        BenchmarkSupport.run("catch up on " + CHANGES + " changes / copy", 1, () -> {
+            for (int i = 0; i < CHANGES; i++) {
+                journaled.put(keys[i], i);
+            }
+            return RoamingMap.copyOf(journaled).size();
+        });
+        BenchmarkSupport.run("catch up on " + CHANGES + " changes / changesSince", 1, () -> {
+            for (int i = 0; i < CHANGES; i++) {
+                journaled.put(keys[i], i);
+            }
+            journaled.changesSince(synced[0]).orElseThrow().forEach(change -> change.applyTo(mirror));
+            synced[0] = journaled.version();
+            return mirror.size();
+        });
+    }
+}
@@ -0,0 +1,532 @@
+import java.util.*;
+
+/**
+ * An ordered map from primitive long keys to values that keeps track of its own modifications,
+ * like RoamingMap, without boxing its keys. The entries are kept in sorted pages of parallel key
+ * and value arrays, with the first key of every page in one more array, so a lookup is a binary
+ * search over the first keys followed by one within a single page. An entry costs its key, one
+ * value reference and the free slots of its page, instead of a boxed key and a tree node.
+ * <p>
+ * Pages are split in half when they overflow, except when keys are appended in increasing order,
+ * which fills every page completely. Pages are dropped once empty but not merged, so removing most
+ * keys in scattered order leaves the remaining pages sparse.
+ * <p>
+ * {@link #asNavigableMap()} exposes the map as a VersionedMap so that it can be passed wherever a
+ * NavigableMap is expected, including Barricade. Like RoamingMap, the map is not thread-safe.
+ * @param <V> the type of values
+ */
+public final class LongRoamingMap<V> {
+
+    /**
+     * An action on a primitive key and its value
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final int PAGE_SIZE = 128;
+    // Positions encode the page in the high half and the slot in the low half; no entry is -1
+    private static final long NONE = SortedStore.NONE;
+
+    private long[] firstKeys = new long[4];
+    private long[][] keys = new long[4][];
+    private Object[][] values = new Object[4][];
+    private int[] sizes = new int[4];
+    private int pages;
+    private int size;
+
+    private long version;
+    private long fingerprint;
+
+    private Adapter view;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(long key) {
+        long position = find(key);
+        return (position == NONE) ? null : valueAt(position);
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) != NONE;
+    }
+
+    public V put(long key, V value) {
+        if (pages == 0) {
+            addPage(0);
+        }
+        int page = pageFor(key);
+        int slot = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        version++;
+        if (slot >= 0) {
+            V previous = valueAt(position(page, slot));
+            values[page][slot] = value;
+            fingerprint += VersionedMap.fingerprint(key, value) - VersionedMap.fingerprint(key, previous);
+            return previous;
+        }
+        slot = -slot - 1;
+        if (sizes[page] == PAGE_SIZE) {
+            if (slot == PAGE_SIZE && page == pages - 1) {
+                // Appending past the last key: start a new page instead of leaving two half-full ones
+                addPage(pages);
+                page++;
+                slot = 0;
+            } else {
+                split(page);
+                if (slot > sizes[page]) {
+                    slot -= sizes[page];
+                    page++;
+                }
+            }
+        }
+        insert(page, slot, key, value);
+        size++;
+        fingerprint += VersionedMap.fingerprint(key, value);
+        return null;
+    }
+
+    public V remove(long key) {
+        long position = find(key);
+        if (position == NONE) {
+            return null;
+        }
+        int page = page(position);
+        int slot = slot(position);
+        V previous = valueAt(position);
+        int last = sizes[page] - 1;
+        System.arraycopy(keys[page], slot + 1, keys[page], slot, last - slot);
+        System.arraycopy(values[page], slot + 1, values[page], slot, last - slot);
+        values[page][last] = null;
+        sizes[page] = last;
+        if (last == 0) {
+            removePage(page);
+        } else if (slot == 0) {
+            firstKeys[page] = keys[page][0];
+        }
+        size--;
+        version++;
+        fingerprint -= VersionedMap.fingerprint(key, previous);
+        return previous;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            version++;
+        }
+        firstKeys = new long[4];
+        keys = new long[4][];
+        values = new Object[4][];
+        sizes = new int[4];
+        pages = 0;
+        size = 0;
+        fingerprint = 0;
+    }
+
+    /**
+     * Returns the current version of this map, as defined by {@link VersionedMap#version()}
+     * @return the current version of this map
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the fingerprint of the contents of this map, as defined by {@link VersionedMap#fingerprint()}
+     * @return the fingerprint of the contents of this map
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the lowest key
+     * @return the lowest key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long firstKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(firstPosition());
+    }
+
+    /**
+     * Returns the highest key
+     * @return the highest key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long lastKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(lastPosition());
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key
+     * @param key the key
+     * @param absent the key to return if there is no such key
+     * @return the greatest key less than or equal to the given key, or absent if there is none
+     */
+    public long floorKey(long key, long absent) {
+        long position = floorPosition(key, true);
+        return (position == NONE) ? absent : keyAt(position);
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key
+     * @param key the key
+     * @param absent the key to return if there is no such key
+     * @return the least key greater than or equal to the given key, or absent if there is none
+     */
+    public long ceilingKey(long key, long absent) {
+        long position = ceilingPosition(key, true);
+        return (position == NONE) ? absent : keyAt(position);
+    }
+
+    /**
+     * Returns the value of the greatest key less than or equal to the given key
+     * @param key the key
+     * @return the value of the floor key, or null if there is none
+     */
+    public V floorValue(long key) {
+        long position = floorPosition(key, true);
+        return (position == NONE) ? null : valueAt(position);
+    }
+
+    /**
+     * Returns the value of the least key greater than or equal to the given key
+     * @param key the key
+     * @return the value of the ceiling key, or null if there is none
+     */
+    public V ceilingValue(long key) {
+        long position = ceilingPosition(key, true);
+        return (position == NONE) ? null : valueAt(position);
+    }
+
+    /**
+     * Passes the entries between the bounds to the action, in key order
+     * @param fromKey the low end of the range
+     * @param fromInclusive true if the low end is included in the range
+     * @param toKey the high end of the range
+     * @param toInclusive true if the high end is included in the range
+     * @param action the action to perform on each entry
+     * @throws NullPointerException if the action is null
+     */
+    public void forEachInRange(long fromKey, boolean fromInclusive, long toKey, boolean toInclusive, EntryConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        for (long position = ceilingPosition(fromKey, fromInclusive); position != NONE; position = nextPosition(position)) {
+            long key = keyAt(position);
+            if (key > toKey || (key == toKey && !toInclusive)) {
+                return;
+            }
+            action.accept(key, valueAt(position));
+        }
+    }
+
+    /**
+     * Returns a view of this map as a NavigableMap with boxed keys. Writes through the view change
+     * this map, while the key sets, entry sets, values and sub-maps it returns are read-only.
+     * @return the map view of this map
+     */
+    public VersionedMap<Long, V> asNavigableMap() {
+        if (view == null) {
+            view = new Adapter();
+        }
+        return view;
+    }
+
+    @Override
+    public String toString() {
+        return asNavigableMap().toString();
+    }
+
+    private static long position(int page, int slot) {
+        return ((long) page << 32) | slot;
+    }
+
+    private static int page(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int slot(long position) {
+        return (int) position;
+    }
+
+    private long keyAt(long position) {
+        return keys[page(position)][slot(position)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(long position) {
+        return (V) values[page(position)][slot(position)];
+    }
+
+    // Returns the last page whose first key is not above the key, or the first page if there is none
+    private int pageFor(long key) {
+        int low = 0;
+        int high = pages - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (firstKeys[middle] <= key) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private long find(long key) {
+        if (pages == 0) {
+            return NONE;
+        }
+        int page = pageFor(key);
+        int slot = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        return (slot < 0) ? NONE : position(page, slot);
+    }
+
+    private long firstPosition() {
+        return (pages == 0) ? NONE : position(0, 0);
+    }
+
+    private long lastPosition() {
+        return (pages == 0) ? NONE : position(pages - 1, sizes[pages - 1] - 1);
+    }
+
+    private long nextPosition(long position) {
+        int page = page(position);
+        int slot = slot(position) + 1;
+        if (slot < sizes[page]) {
+            return position(page, slot);
+        }
+        return (page + 1 < pages) ? position(page + 1, 0) : NONE;
+    }
+
+    private long previousPosition(long position) {
+        int page = page(position);
+        int slot = slot(position) - 1;
+        if (slot >= 0) {
+            return position(page, slot);
+        }
+        return (page > 0) ? position(page - 1, sizes[page - 1] - 1) : NONE;
+    }
+
+    private long ceilingPosition(long key, boolean inclusive) {
+        if (pages == 0) {
+            return NONE;
+        }
+        int page = pageFor(key);
+        int found = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        int slot = (found >= 0) ? (inclusive ? found : found + 1) : -found - 1;
+        if (slot < sizes[page]) {
+            return position(page, slot);
+        }
+        return (page + 1 < pages) ? position(page + 1, 0) : NONE;
+    }
+
+    private long floorPosition(long key, boolean inclusive) {
+        if (pages == 0) {
+            return NONE;
+        }
+        int page = pageFor(key);
+        int found = Arrays.binarySearch(keys[page], 0, sizes[page], key);
+        int slot = (found >= 0) ? (inclusive ? found : found - 1) : -found - 2;
+        if (slot >= 0) {
+            return position(page, slot);
+        }
+        return (page > 0) ? position(page - 1, sizes[page - 1] - 1) : NONE;
+    }
+
+    private void insert(int page, int slot, long key, V value) {
+        int count = sizes[page];
+        System.arraycopy(keys[page], slot, keys[page], slot + 1, count - slot);
+        System.arraycopy(values[page], slot, values[page], slot + 1, count - slot);
+        keys[page][slot] = key;
+        values[page][slot] = value;
+        sizes[page] = count + 1;
+        if (slot == 0) {
+            firstKeys[page] = key;
+        }
+    }
+
+    private void split(int page) {
+        addPage(page + 1);
+        int half = PAGE_SIZE / 2;
+        System.arraycopy(keys[page], half, keys[page + 1], 0, PAGE_SIZE - half);
+        System.arraycopy(values[page], half, values[page + 1], 0, PAGE_SIZE - half);
+        Arrays.fill(values[page], half, PAGE_SIZE, null);
+        sizes[page] = half;
+        sizes[page + 1] = PAGE_SIZE - half;
+        firstKeys[page + 1] = keys[page + 1][0];
+    }
+
+    private void addPage(int page) {
+        if (pages == sizes.length) {
+            int capacity = pages * 2;
+            firstKeys = Arrays.copyOf(firstKeys, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        int moved = pages - page;
+        System.arraycopy(firstKeys, page, firstKeys, page + 1, moved);
+        System.arraycopy(keys, page, keys, page + 1, moved);
+        System.arraycopy(values, page, values, page + 1, moved);
+        System.arraycopy(sizes, page, sizes, page + 1, moved);
+        keys[page] = new long[PAGE_SIZE];
+        values[page] = new Object[PAGE_SIZE];
+        sizes[page] = 0;
+        pages++;
+    }
+
+    private void removePage(int page) {
+        int moved = pages - page - 1;
+        System.arraycopy(firstKeys, page + 1, firstKeys, page, moved);
+        System.arraycopy(keys, page + 1, keys, page, moved);
+        System.arraycopy(values, page + 1, values, page, moved);
+        System.arraycopy(sizes, page + 1, sizes, page, moved);
+        pages--;
+        keys[pages] = null;
+        values[pages] = null;
+    }
+
+    /**
+     * The positions of the map, for the views returned by the adapter
+     */
+    private final class Store implements SortedStore<Long, V> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public long find(Long key) {
+            return LongRoamingMap.this.find(key);
+        }
+
+        @Override
+        public long first() {
+            return firstPosition();
+        }
+
+        @Override
+        public long last() {
+            return lastPosition();
+        }
+
+        @Override
+        public long next(long position) {
+            return nextPosition(position);
+        }
+
+        @Override
+        public long previous(long position) {
+            return previousPosition(position);
+        }
+
+        @Override
+        public long ceiling(Long key, boolean inclusive) {
+            return ceilingPosition(key, inclusive);
+        }
+
+        @Override
+        public long floor(Long key, boolean inclusive) {
+            return floorPosition(key, inclusive);
+        }
+
+        @Override
+        public Long keyAt(long position) {
+            return LongRoamingMap.this.keyAt(position);
+        }
+
+        @Override
+        public V valueAt(long position) {
+            return LongRoamingMap.this.valueAt(position);
+        }
+    }
+
+    /**
+     * The whole map, which unlike its sub-maps can be written
+     */
+    private final class Adapter extends SortedView<Long, V> implements VersionedMap<Long, V> {
+
+        Adapter() {
+            super(new Store());
+        }
+
+        @Override
+        public V put(Long key, V value) {
+            Objects.requireNonNull(key);
+            return LongRoamingMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            Objects.requireNonNull(key);
+            return (key instanceof Long k) ? LongRoamingMap.this.remove(k) : null;
+        }
+
+        @Override
+        public void clear() {
+            LongRoamingMap.this.clear();
+        }
+
+        @Override
+        public Entry<Long, V> pollFirstEntry() {
+            return removed(firstEntry());
+        }
+
+        @Override
+        public Entry<Long, V> pollLastEntry() {
+            return removed(lastEntry());
+        }
+
+        private Entry<Long, V> removed(Entry<Long, V> entry) {
+            if (entry != null) {
+                LongRoamingMap.this.remove(entry.getKey());
+            }
+            return entry;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public long fingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public RangeSummary rangeSummary(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+            int count = 0;
+            long sum = 0;
+            long position = (fromKey == null) ? firstPosition() : ceilingPosition(fromKey, fromInclusive);
+            for (; position != NONE; position = nextPosition(position)) {
+                long key = keyAt(position);
+                if (toKey != null && (key > toKey || (key == toKey && !toInclusive))) {
+                    break;
+                }
+                count++;
+                sum += VersionedMap.fingerprint(key, valueAt(position));
+            }
+            return new RangeSummary(count, sum);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares LongRoamingMap against RoamingMap and TreeMap with boxed Long keys: the bytes allocated
+ * per entry while building the map, which for these maps is what they retain, and the time of
+ * point lookups and floor navigation.
+ * Run with: ant bench -Dbenchmark=LongRoamingMapBenchmark
+ */
+public class LongRoamingMapBenchmark {
+
+    private static final int SIZE = 1 << 20;
+    private static final int LOOKUPS = 1_000_000;
+
+    private static final String VALUE = "value";
+
+    public static void main(String[] args) {
+        // Identifiers spread over a range larger than the map, inserted in random order
+        Random random = new Random(42);
+        long[] keys = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = i * 4L + random.nextInt(4);
+        }
+        for (int i = SIZE - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+        long[] probes = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = random.nextInt(SIZE * 4);
+        }
+
+        BenchmarkSupport.allocation("build / TreeMap<Long, V>", SIZE, () -> {
+            TreeMap<Long, String> map = new TreeMap<>();
+            for (long key : keys) {
+                map.put(key, VALUE);
+            }
+            return map.size();
+        });
+        BenchmarkSupport.allocation("build / RoamingMap<Long, V>", SIZE, () -> {
+            RoamingMap<Long, String> map = new RoamingMap<>();
+            for (long key : keys) {
+                map.put(key, VALUE);
+            }
+            return map.size();
+        });
+        BenchmarkSupport.allocation("build / LongRoamingMap<V>", SIZE, () -> {
+            LongRoamingMap<String> map = new LongRoamingMap<>();
+            for (long key : keys) {
+                map.put(key, VALUE);
+            }
+            return map.size();
+        });
+
+        RoamingMap<Long, String> boxed = new RoamingMap<>();
+        LongRoamingMap<String> primitive = new LongRoamingMap<>();
+        for (long key : keys) {
+            boxed.put(key, VALUE);
+            primitive.put(key, VALUE);
+        }
+        BenchmarkSupport.run("get / RoamingMap<Long, V>", LOOKUPS, () -> {
+            long found = 0;
+            for (long probe : probes) {
+                found += (boxed.get(probe) == null) ? 0 : 1;
+            }
+            return found;
+        });
+        BenchmarkSupport.run("get / LongRoamingMap<V>", LOOKUPS, () -> {
+            long found = 0;
+            for (long probe : probes) {
+                found += (primitive.get(probe) == null) ? 0 : 1;
+            }
+            return found;
+        });
+        BenchmarkSupport.run("floorKey / RoamingMap<Long, V>", LOOKUPS, () -> {
+            long sum = 0;
+            for (long probe : probes) {
+                Long key = boxed.floorKey(probe);
+                sum += (key == null) ? 0 : key;
+            }
+            return sum;
+        });
+        BenchmarkSupport.run("floorKey / LongRoamingMap<V>", LOOKUPS, () -> {
+            long sum = 0;
+            for (long probe : probes) {
+                sum += primitive.floorKey(probe, 0);
+            }
+            return sum;
+        });
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+// Test class for LongRoamingMap
+public class LongRoamingMapTest {
+
+    private final Logger logger = Logger.getLogger(Barricade.class.getName());
+    private final LoggerTestingHandler handler = new LoggerTestingHandler();
+
+    @Before
+    public void setup() {
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void teardown() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    public void testMatchesTreeMap() {
+        LongRoamingMap<Integer> map = new LongRoamingMap<>();
+        NavigableMap<Long, Integer> view = map.asNavigableMap();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        DifferentialTesting.randomWrites(new Random(17), 5_000, 4, 2_000, key -> key - 1_000L, i -> i, expected, view);
+        assertEquals(expected.put(5L, -1), map.put(5L, -1));
+        assertEquals(expected.remove(6L), map.remove(6L));
+        assertEquals(expected, view);
+        assertEquals(expected.toString(), map.toString());
+        DifferentialTesting.assertNavigatesLike(expected, view, DifferentialTesting.probes(-1_010, 1_010, 7, key -> (long) key));
+        for (long key = -1_010; key <= 1_010; key += 7) {
+            assertEquals(expected.ceilingKey(key) == null ? Long.MIN_VALUE : (long) expected.ceilingKey(key),
+                    map.ceilingKey(key, Long.MIN_VALUE));
+        }
+        assertThrows(IllegalArgumentException.class, () -> view.headMap(0L).tailMap(1L));
+        assertThrows(UnsupportedOperationException.class, () -> view.headMap(0L).remove(-1L));
+
+        List<Long> inRange = new ArrayList<>();
+        map.forEachInRange(-10, false, 10, true, (key, value) -> inRange.add(key));
+        assertEquals(new ArrayList<>(expected.subMap(-10L, false, 10L, true).keySet()), inRange);
+    }
+
+    @Test
+    public void testIsVerifiedLikeRoamingMap() {
+        LongRoamingMap<String> map = new LongRoamingMap<>();
+        VersionedMap<Long, String> view = map.asNavigableMap();
+        RoamingMap<Long, String> expected = new RoamingMap<>();
+        for (long key = 0; key < 1_000; key++) {
+            Barricade.safePut(view, key * 3, "v" + key);
+            expected.put(key * 3, "v" + key);
+        }
+        assertEquals("Fingerprint should match the boxed fingerprint", expected.fingerprint(), view.fingerprint());
+        assertEquals(expected.rangeSummary(30L, true, 90L, false), view.rangeSummary(30L, true, 90L, false));
+        assertEquals("v7", Barricade.safeValue(view, 21L));
+        assertEquals(1_000, Barricade.correctSize(view));
+        assertEquals(Map.entry(21L, "v7"), Barricade.safeFloorEntry(view, 23L));
+        assertEquals(expected.toString(), Barricade.correctStringRepresentation(view));
+        assertEquals(expected.firstEntry(), view.pollFirstEntry());
+        expected.pollFirstEntry();
+        assertEquals(expected.fingerprint(), map.fingerprint());
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+}
@@ -0,0 +1,182 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The lock Barricade holds while it runs and verifies an operation on a map shared between threads,
+ * so that every verification sees the map in one consistent state.
+ * <p>
+ * Reads take the read lock of one stripe, chosen by the calling thread, so readers on different
+ * stripes never touch the same lock word and scale with the number of cores. Writes take the write
+ * lock of every stripe, in order, and therefore exclude all readers. Maps whose reads modify them,
+ * marked with {@link StatefulReads}, get a single lock that reads take exclusively as well. Maps that
+ * were not registered with {@link #register} share a lock that does nothing.
+ */
+abstract class MapLock {
+
+    private static final Map<IdentityReference, MapLock> locks = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    private MapLock() {
+    }
+
+    /**
+     * Starts locking operations on the map, keeping its lock if it already had one
+     * @param map the map shared between threads
+     * @param stripes the number of read stripes, rounded up to a power of two, unless reads of the
+     * map modify it
+     * @throws IllegalArgumentException if the number of stripes is not positive
+     */
+    static void register(NavigableMap<?, ?> map, int stripes) {
+        Objects.requireNonNull(map);
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be positive: " + stripes);
+        }
+        expungeCollected();
+        MapLock lock = (map instanceof StatefulReads) ? new Exclusive() : new Striped(stripes);
+        locks.putIfAbsent(new IdentityReference(map, collected), lock);
+    }
+
+    /**
+     * Stops locking operations on the map
+     * @param map the map
+     */
+    static void unregister(NavigableMap<?, ?> map) {
+        locks.remove(new IdentityReference(map, null));
+        expungeCollected();
+    }
+
+    /**
+     * Returns the lock of the map
+     * @param map the map
+     * @return the lock of the map, or a lock that does nothing if the map is not shared
+     */
+    static MapLock of(NavigableMap<?, ?> map) {
+        if (locks.isEmpty()) {
+            return Unshared.INSTANCE;
+        }
+        MapLock lock = locks.get(new IdentityReference(map, null));
+        return (lock != null) ? lock : Unshared.INSTANCE;
+    }
+
+    private static void expungeCollected() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            locks.remove(reference);
+        }
+    }
+
+    /**
+     * Acquires the lock for an operation that does not modify the map
+     * @return the stripe to pass to unlockRead
+     */
+    abstract int lockRead();
+
+    abstract void unlockRead(int stripe);
+
+    /**
+     * Acquires the lock for an operation that may modify the map, excluding every reader
+     */
+    abstract void lockWrite();
+
+    abstract void unlockWrite();
+
+    private static final class Unshared extends MapLock {
+        private static final Unshared INSTANCE = new Unshared();
+
+        @Override
+        int lockRead() {
+            return 0;
+        }
+
+        @Override
+        void unlockRead(int stripe) {
+        }
+
+        @Override
+        void lockWrite() {
+        }
+
+        @Override
+        void unlockWrite() {
+        }
+    }
+
+    private static final class Exclusive extends MapLock {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        @Override
+        int lockRead() {
+            lock.lock();
+            return 0;
+        }
+
+        @Override
+        void unlockRead(int stripe) {
+            lock.unlock();
+        }
+
+        @Override
+        void lockWrite() {
+            lock.lock();
+        }
+
+        @Override
+        void unlockWrite() {
+            lock.unlock();
+        }
+    }
+
+    private static final class Striped extends MapLock {
+        private final ReentrantReadWriteLock[] stripes;
+        private final int mask;
+
+        private Striped(int count) {
+            int size = 1;
+            while (size < count) {
+                size <<= 1;
+            }
+            stripes = new ReentrantReadWriteLock[size];
+            for (int i = 0; i < size; i++) {
+                stripes[i] = new ReentrantReadWriteLock();
+            }
+            mask = size - 1;
+        }
+
+        @Override
+        int lockRead() {
+            int stripe = (int) mix(Thread.currentThread().getId()) & mask;
+            stripes[stripe].readLock().lock();
+            return stripe;
+        }
+
+        @Override
+        void unlockRead(int stripe) {
+            stripes[stripe].readLock().unlock();
+        }
+
+        @Override
+        void lockWrite() {
+            for (int i = 0; i <= mask; i++) {
+                stripes[i].writeLock().lock();
+            }
+        }
+
+        @Override
+        void unlockWrite() {
+            for (int i = mask; i >= 0; i--) {
+                stripes[i].writeLock().unlock();
+            }
+        }
+
+        private static long mix(long id) {
+            id *= 0x9E3779B97F4A7C15L;
+            return id ^ (id >>> 32);
+        }
+    }
+}
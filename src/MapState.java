@@ -0,0 +1,381 @@
+import java.util.*;
+
+/**
+ * The expected state of a NavigableMap, captured before Barricade lets the map run an operation.
+ * After the operation Barricade asks whether the map is still in the expected state and, when
+ * the operation returned something wrong, what the correct answer would have been.
+ * <p>
+ * Maps that implement {@link VersionedMap} are tracked through their content fingerprint and size, so
+ * capturing and checking the state costs O(1) and expected values are read in O(log n) through the
+ * navigation methods instead of the method under test. An entry found that way only counts once the
+ * summary of its single key agrees with it; if they disagree, the state falls back to a copy of the
+ * map, so wrong navigation never turns into a wrong expectation. Since the fingerprint only depends on the
+ * contents, a map whose contents are unchanged matches regardless of how many writes it went through,
+ * just like comparing entry sets. If the map has a {@link ShadowReplica}, expected values are answered by
+ * the replica instead of the map. A {@link PersistentRoamingMap} without a replica is captured as an O(1)
+ * snapshot, so expected values and entries stay those of the capture even if the map changes meanwhile.
+ * Any other map falls back to a full copy of its entries.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+interface MapState<K extends Comparable<K>, V> {
+
+    /**
+     * Captures the current state of the map
+     * @param map the map whose state is captured
+     * @return the captured state
+     * @throws NullPointerException if the map is null
+     */
+    static <K extends Comparable<K>, V> MapState<K, V> capture(NavigableMap<K, V> map) {
+        Objects.requireNonNull(map);
+        if (map instanceof VersionedMap<K, V> versioned) {
+            ShadowReplica<K, V> replica = ShadowReplica.of(map);
+            if (replica != null) {
+                return new Replicated<>(versioned, replica);
+            }
+            return (map instanceof PersistentRoamingMap<K, V> persistent) ? new Snapshotted<>(persistent) : new Versioned<>(versioned);
+        }
+        return new Copied<>(map);
+    }
+
+    /**
+     * Returns the value the map held for the key in the expected state
+     * @param key the key
+     * @return the expected value, or null if the key was absent
+     */
+    V value(K key);
+
+    /**
+     * Returns the number of entries in the expected state
+     * @return the expected size
+     */
+    int size();
+
+    /**
+     * Returns the string representation of the expected state, in the format of AbstractMap.toString
+     * @return the expected string representation
+     */
+    String representation();
+
+    /**
+     * Returns the entries of the captured state, in key order
+     * @return the expected entries
+     */
+    Iterable<Map.Entry<K, V>> entries();
+
+    /**
+     * Returns the number of entries and the fingerprint of the captured state
+     * @return the summary of the expected entries
+     */
+    RangeSummary summary();
+
+    /**
+     * Updates the expected state with a put of the key and value.
+     * Must be called before the map performs the put.
+     * @param key the key put into the map
+     * @param value the value put into the map
+     */
+    void expectPut(K key, V value);
+
+    /**
+     * Returns true if the map is in the expected state, false otherwise
+     * @param map the map whose state was captured
+     * @return true if the map is in the expected state, false otherwise
+     */
+    boolean matches(NavigableMap<K, V> map);
+
+    /**
+     * Returns the number of entries copied to capture this state
+     * @return the number of entries copied to capture this state
+     */
+    int copiedEntries();
+
+    /**
+     * Makes the expected puts permanent once the map was verified to have performed them.
+     * Only replicated states keep anything beyond the current operation.
+     */
+    default void commit() {
+    }
+
+    /**
+     * Renders entries in the same format as AbstractMap.toString
+     * @param entries the entries in key order
+     * @return the string representation of the entries
+     */
+    static <K, V> String render(Iterable<Map.Entry<K, V>> entries) {
+        StringBuilder builder = new StringBuilder("{");
+        Iterator<Map.Entry<K, V>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+            if (iterator.hasNext()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * State of a VersionedMap, tracked by fingerprint and size deltas
+     */
+    final class Versioned<K extends Comparable<K>, V> implements MapState<K, V> {
+        private final VersionedMap<K, V> map;
+        private long fingerprint;
+        private int size;
+        // Copy of the map at the capture, made only once its navigation contradicted its summaries
+        private RoamingMap<K, V> copy;
+
+        private Versioned(VersionedMap<K, V> map) {
+            this.map = map;
+            this.fingerprint = map.fingerprint();
+            this.size = map.entrySet().size();
+        }
+
+        // Returns the entry of the key in the captured map, or null if the key is absent. The entry
+        // found by navigation is only trusted if the summary of the single key agrees with it, since
+        // the navigation of the map may be what is wrong; otherwise it is read from a copy.
+        private Map.Entry<K, V> entry(K key) {
+            if (copy == null) {
+                RangeSummary point = map.rangeSummary(key, true, key, true);
+                if (point.size() == 0) {
+                    return null;
+                }
+                Map.Entry<K, V> entry = map.floorEntry(key);
+                if (point.size() == 1 && entry != null && entry.getKey().compareTo(key) == 0
+                        && point.fingerprint() == VersionedMap.fingerprint(key, entry.getValue())) {
+                    return entry;
+                }
+                copy = RoamingMap.copyOf(map);
+            }
+            return copy.containsKey(key) ? new AbstractMap.SimpleImmutableEntry<>(key, copy.get(key)) : null;
+        }
+
+        @Override
+        public V value(K key) {
+            Map.Entry<K, V> entry = entry(key);
+            return (entry == null) ? null : entry.getValue();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String representation() {
+            return render(map.entrySet());
+        }
+
+        @Override
+        public Iterable<Map.Entry<K, V>> entries() {
+            return map.entrySet();
+        }
+
+        @Override
+        public RangeSummary summary() {
+            return new RangeSummary(size, fingerprint);
+        }
+
+        @Override
+        public void expectPut(K key, V value) {
+            Map.Entry<K, V> entry = entry(key);
+            if (entry == null) {
+                size++;
+            } else {
+                fingerprint -= VersionedMap.fingerprint(entry.getKey(), entry.getValue());
+            }
+            fingerprint += VersionedMap.fingerprint(key, value);
+        }
+
+        @Override
+        public boolean matches(NavigableMap<K, V> map) {
+            return this.map == map && map.entrySet().size() == size && this.map.fingerprint() == fingerprint;
+        }
+
+        @Override
+        public int copiedEntries() {
+            return 0;
+        }
+    }
+
+    /**
+     * State of a PersistentRoamingMap, kept as a snapshot that shares the nodes of the map
+     */
+    final class Snapshotted<K extends Comparable<K>, V> implements MapState<K, V> {
+        private final PersistentRoamingMap<K, V> map;
+        private PersistentRoamingMap<K, V> snapshot;
+
+        private Snapshotted(PersistentRoamingMap<K, V> map) {
+            this.map = map;
+            this.snapshot = map.snapshot();
+        }
+
+        @Override
+        public V value(K key) {
+            return snapshot.get(key);
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size();
+        }
+
+        @Override
+        public String representation() {
+            return render(snapshot.entrySet());
+        }
+
+        @Override
+        public Iterable<Map.Entry<K, V>> entries() {
+            return snapshot.entrySet();
+        }
+
+        @Override
+        public RangeSummary summary() {
+            return new RangeSummary(snapshot.size(), snapshot.fingerprint());
+        }
+
+        @Override
+        public void expectPut(K key, V value) {
+            snapshot = snapshot.with(key, value);
+        }
+
+        @Override
+        public boolean matches(NavigableMap<K, V> map) {
+            return this.map == map && map.entrySet().size() == snapshot.size() && this.map.fingerprint() == snapshot.fingerprint();
+        }
+
+        @Override
+        public int copiedEntries() {
+            return 0;
+        }
+    }
+
+    /**
+     * State of a VersionedMap with a shadow replica, answered by the replica and checked by fingerprint
+     */
+    final class Replicated<K extends Comparable<K>, V> implements MapState<K, V> {
+        private final VersionedMap<K, V> map;
+        private final ShadowReplica<K, V> replica;
+        private final Map<K, V> pending = new LinkedHashMap<>();
+        private final int copiedEntries;
+        private long fingerprint;
+        private int size;
+
+        private Replicated(VersionedMap<K, V> map, ShadowReplica<K, V> replica) {
+            this.map = map;
+            this.replica = replica;
+            this.copiedEntries = replica.synchronize(map);
+            this.fingerprint = replica.fingerprint();
+            this.size = replica.entries().size();
+        }
+
+        @Override
+        public V value(K key) {
+            return pending.containsKey(key) ? pending.get(key) : replica.entries().get(key);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String representation() {
+            return render(replica.entries().entrySet());
+        }
+
+        @Override
+        public Iterable<Map.Entry<K, V>> entries() {
+            return replica.entries().entrySet();
+        }
+
+        @Override
+        public RangeSummary summary() {
+            return new RangeSummary(replica.entries().size(), replica.fingerprint());
+        }
+
+        @Override
+        public void expectPut(K key, V value) {
+            NavigableMap<K, V> entries = replica.entries();
+            if (pending.containsKey(key)) {
+                fingerprint -= VersionedMap.fingerprint(key, pending.get(key));
+            } else if (entries.containsKey(key)) {
+                fingerprint -= VersionedMap.fingerprint(key, entries.get(key));
+            } else {
+                size++;
+            }
+            fingerprint += VersionedMap.fingerprint(key, value);
+            pending.put(key, value);
+        }
+
+        @Override
+        public boolean matches(NavigableMap<K, V> map) {
+            return this.map == map && map.entrySet().size() == size && this.map.fingerprint() == fingerprint;
+        }
+
+        @Override
+        public int copiedEntries() {
+            return copiedEntries;
+        }
+
+        @Override
+        public void commit() {
+            pending.forEach(replica::put);
+            pending.clear();
+        }
+    }
+
+    /**
+     * State of an arbitrary map, kept as a full copy of its entries
+     */
+    final class Copied<K extends Comparable<K>, V> implements MapState<K, V> {
+        private final RoamingMap<K, V> copy;
+        private final int copiedEntries;
+
+        private Copied(NavigableMap<K, V> map) {
+            copy = RoamingMap.copyOf(map);
+            copiedEntries = copy.size();
+        }
+
+        @Override
+        public V value(K key) {
+            return copy.get(key);
+        }
+
+        @Override
+        public int size() {
+            return copy.size();
+        }
+
+        @Override
+        public String representation() {
+            return copy.toString();
+        }
+
+        @Override
+        public Iterable<Map.Entry<K, V>> entries() {
+            return copy.entrySet();
+        }
+
+        @Override
+        public RangeSummary summary() {
+            return new RangeSummary(copy.size(), copy.fingerprint());
+        }
+
+        @Override
+        public void expectPut(K key, V value) {
+            copy.put(key, value);
+        }
+
+        @Override
+        public boolean matches(NavigableMap<K, V> map) {
+            return Objects.equals(copy.entrySet(), Barricade.correctEntrySet(map));
+        }
+
+        @Override
+        public int copiedEntries() {
+            return copiedEntries;
+        }
+    }
+}
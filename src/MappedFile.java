@@ -0,0 +1,161 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory in segments of 1 GiB, so that it can be larger than a single
+ * MappedByteBuffer allows. Longs and ints must be aligned to their size, so that they never
+ * straddle two segments; byte ranges may.
+ */
+final class MappedFile implements Closeable {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int COPY_CHUNK = 1 << 16;
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments;
+    private long length;
+
+    /**
+     * Opens or creates the file and maps all of it
+     * @param path the file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    MappedFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(channel.size());
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * Extends the file to the given length and maps it again
+     * @param newLength the new length of the file, in bytes
+     * @throws IOException if the file cannot be extended or mapped
+     */
+    void grow(long newLength) throws IOException {
+        if (newLength <= length) {
+            return;
+        }
+        // Writing the last byte extends the file; FileChannel.truncate only shrinks
+        channel.write(ByteBuffer.wrap(new byte[1]), newLength - 1);
+        map(newLength);
+    }
+
+    /**
+     * Shrinks the file to the given length and maps it again
+     * @param newLength the new length of the file, in bytes
+     * @throws IOException if the file cannot be truncated or mapped
+     */
+    void truncate(long newLength) throws IOException {
+        if (newLength >= length) {
+            return;
+        }
+        map(newLength);
+        channel.truncate(newLength);
+    }
+
+    private void map(long newLength) throws IOException {
+        int count = (int) ((newLength + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, newLength - start));
+        }
+        segments = mapped;
+        length = newLength;
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    private static int within(long offset) {
+        return (int) (offset & (SEGMENT_SIZE - 1));
+    }
+
+    long getLong(long offset) {
+        return segment(offset).getLong(within(offset));
+    }
+
+    void putLong(long offset, long value) {
+        segment(offset).putLong(within(offset), value);
+    }
+
+    int getInt(long offset) {
+        return segment(offset).getInt(within(offset));
+    }
+
+    void putInt(long offset, int value) {
+        segment(offset).putInt(within(offset), value);
+    }
+
+    byte[] getBytes(long offset, int count) {
+        byte[] bytes = new byte[count];
+        int done = 0;
+        while (done < count) {
+            long at = offset + done;
+            int chunk = (int) Math.min(count - done, SEGMENT_SIZE - within(at));
+            segment(at).get(within(at), bytes, done, chunk);
+            done += chunk;
+        }
+        return bytes;
+    }
+
+    void putBytes(long offset, byte[] bytes) {
+        int done = 0;
+        while (done < bytes.length) {
+            long at = offset + done;
+            int chunk = (int) Math.min(bytes.length - done, SEGMENT_SIZE - within(at));
+            segment(at).put(within(at), bytes, done, chunk);
+            done += chunk;
+        }
+    }
+
+    /**
+     * Copies bytes within the file; the ranges may overlap
+     * @param from the offset of the bytes to copy
+     * @param to the offset to copy them to
+     * @param count the number of bytes to copy
+     */
+    void copy(long from, long to, long count) {
+        if (from == to || count == 0) {
+            return;
+        }
+        int chunk = (int) Math.min(COPY_CHUNK, count);
+        if (to < from) {
+            for (long done = 0; done < count; done += chunk) {
+                int size = (int) Math.min(chunk, count - done);
+                putBytes(to + done, getBytes(from + done, size));
+            }
+        } else {
+            // Copy from the end, so that a forward overlap does not overwrite bytes before they are copied
+            for (long remaining = count; remaining > 0; remaining -= chunk) {
+                int size = (int) Math.min(chunk, remaining);
+                putBytes(to + remaining - size, getBytes(from + remaining - size, size));
+            }
+        }
+    }
+
+    /**
+     * Writes the changes to the storage device
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,1084 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * An ordered map with non-null keys that keeps its entries in a memory-mapped file instead of on the
+ * heap, so that it can be larger than the heap and survives restarts: opening an existing file only
+ * maps it and reads its header, whatever the number of entries.
+ * <p>
+ * The file starts with a header, followed by blocks holding either a record, the serialized key and
+ * value of an entry, or a page of 4 KiB of a B+-tree over the records. Leaf pages hold the offsets of
+ * up to 509 records in key order and are linked to their neighbours; inner pages hold up to 170
+ * children, with the number of entries under each of them, for rank and select, and a copy of the
+ * lowest key under each of them. Lookups, puts and removes read and deserialize the O(log n) keys
+ * along one path of the tree, and write within the pages of that path. A full page is split in two;
+ * a leaf that becomes empty is freed, as in BPlusTreeMap.
+ * <p>
+ * Blocks are sized in powers of two, and freed blocks are kept in one list per size, so a replaced
+ * or removed record leaves room for the next record of the same size class and a map that is only
+ * updated does not grow. The file itself never shrinks, except on {@link #compact()}, which rewrites
+ * it with only the live entries and full pages. When the allocated blocks reach the end of the file,
+ * it doubles.
+ * <p>
+ * Changes are written straight into the mapping and reach the file whenever the operating system
+ * writes the pages back, or on {@link #force()} and {@link #close()}. The map is not thread-safe, and
+ * its views (key sets, entry sets, values and sub-maps) are read-only.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class MappedRoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V>, Closeable {
+
+    /**
+     * Converts keys or values to bytes and back. Deserializing the bytes of a serialized object must
+     * give an equal object.
+     * @param <T> the type of objects
+     */
+    public interface Serializer<T> {
+
+        byte[] serialize(T object);
+
+        T deserialize(byte[] bytes);
+
+        static Serializer<String> strings() {
+            return new Serializer<>() {
+                @Override
+                public byte[] serialize(String object) {
+                    return object.getBytes(StandardCharsets.UTF_8);
+                }
+
+                @Override
+                public String deserialize(byte[] bytes) {
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            };
+        }
+
+        static Serializer<Long> longs() {
+            return new Serializer<>() {
+                @Override
+                public byte[] serialize(Long object) {
+                    return ByteBuffer.allocate(Long.BYTES).putLong(object).array();
+                }
+
+                @Override
+                public Long deserialize(byte[] bytes) {
+                    return ByteBuffer.wrap(bytes).getLong();
+                }
+            };
+        }
+
+        static Serializer<Integer> integers() {
+            return new Serializer<>() {
+                @Override
+                public byte[] serialize(Integer object) {
+                    return ByteBuffer.allocate(Integer.BYTES).putInt(object).array();
+                }
+
+                @Override
+                public Integer deserialize(byte[] bytes) {
+                    return ByteBuffer.wrap(bytes).getInt();
+                }
+            };
+        }
+    }
+
+    private static final long MAGIC = 0x526F616D696E674DL; // "RoamingM"
+    private static final int FORMAT = 2;
+
+    // Header layout; every field is aligned to its size
+    private static final long MAGIC_OFFSET = 0;
+    private static final long FORMAT_OFFSET = 8;
+    private static final long COUNT_OFFSET = 16;
+    private static final long END_OFFSET = 24;
+    private static final long ROOT_OFFSET = 32;
+    private static final long HEAD_OFFSET = 40;
+    private static final long TAIL_OFFSET = 48;
+    private static final long VERSION_OFFSET = 56;
+    private static final long FINGERPRINT_OFFSET = 64;
+    // The first free block of 2^k bytes for every k, each free block starting with the next one
+    private static final long FREE_LISTS_OFFSET = 72;
+    private static final long HEADER_SIZE = 512;
+
+    private static final long INITIAL_LENGTH = 1 << 20;
+    // Blocks are 2^k bytes, with k between these shifts, so they are aligned to 16 bytes
+    private static final int MINIMUM_BLOCK_SHIFT = 4;
+    private static final int MAXIMUM_BLOCK_SHIFT = 34;
+    private static final int PAGE_SIZE = 1 << 12;
+
+    // Page layout: the number of records or children, the kind of page, then for leaves the next and
+    // previous leaves and the offsets of the records, and for inner pages one entry per child
+    private static final long PAGE_COUNT = 0;
+    private static final long PAGE_KIND = 4;
+    private static final int LEAF = 1;
+    private static final int INNER = 2;
+    private static final long LEAF_NEXT = 8;
+    private static final long LEAF_PREVIOUS = 16;
+    private static final long LEAF_RECORDS = 24;
+    private static final int LEAF_CAPACITY = (int) ((PAGE_SIZE - LEAF_RECORDS) / Long.BYTES);
+    // An inner entry holds the child, the number of entries under it, and the record of the lowest
+    // key that may be found under it, which is 0 for the first child
+    private static final long INNER_ENTRIES = 8;
+    private static final int ENTRY_SIZE = 3 * Long.BYTES;
+    private static final int INNER_CAPACITY = (int) ((PAGE_SIZE - INNER_ENTRIES) / ENTRY_SIZE);
+    // Positions are the offset of a leaf shifted left by this, plus the slot within the leaf
+    private static final int SLOT_BITS = 9;
+
+    // Value length of a record whose value is null, and of the key records of inner pages
+    private static final int NULL_VALUE = -1;
+
+    private final Path path;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final SortedView<K, V> view;
+    private MappedFile file;
+
+    // Cached from the header, which is kept up to date after every change
+    private int count;
+    private long end;
+    private long root;
+    private long head;
+    private long tail;
+    private long version;
+    private long fingerprint;
+
+    // Results of the last insert, which returns the new sibling of a split page
+    private long splitKey;
+    private V previousValue;
+    private boolean replaced;
+
+    private MappedRoamingMap(Path path, MappedFile file, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this.path = path;
+        this.file = file;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.view = new SortedView<>(new Store());
+    }
+
+    /**
+     * Opens the map stored in the file, or creates an empty one if the file does not exist or is empty
+     * @param path the file
+     * @param keySerializer the serializer of keys
+     * @param valueSerializer the serializer of values
+     * @return the map
+     * @throws IOException if the file cannot be opened or mapped, or holds something else than a map
+     * @throws NullPointerException if any argument is null
+     */
+    public static <K extends Comparable<K>, V> MappedRoamingMap<K, V> open(Path path, Serializer<K> keySerializer,
+                                                                           Serializer<V> valueSerializer) throws IOException {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(keySerializer);
+        Objects.requireNonNull(valueSerializer);
+        MappedFile file = new MappedFile(path);
+        try {
+            MappedRoamingMap<K, V> map = new MappedRoamingMap<>(path, file, keySerializer, valueSerializer);
+            if (file.length() == 0) {
+                map.initialize();
+            } else {
+                map.load();
+            }
+            return map;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void initialize() throws IOException {
+        file.grow(INITIAL_LENGTH);
+        file.putLong(MAGIC_OFFSET, MAGIC);
+        file.putInt(FORMAT_OFFSET, FORMAT);
+        reset();
+    }
+
+    private void load() throws IOException {
+        if (file.length() < HEADER_SIZE || file.getLong(MAGIC_OFFSET) != MAGIC || file.getInt(FORMAT_OFFSET) != FORMAT) {
+            throw new IOException("Not a mapped RoamingMap file: " + path);
+        }
+        count = (int) file.getLong(COUNT_OFFSET);
+        end = file.getLong(END_OFFSET);
+        root = file.getLong(ROOT_OFFSET);
+        head = file.getLong(HEAD_OFFSET);
+        tail = file.getLong(TAIL_OFFSET);
+        version = file.getLong(VERSION_OFFSET);
+        fingerprint = file.getLong(FINGERPRINT_OFFSET);
+    }
+
+    private void writeHeader() {
+        file.putLong(COUNT_OFFSET, count);
+        file.putLong(END_OFFSET, end);
+        file.putLong(ROOT_OFFSET, root);
+        file.putLong(HEAD_OFFSET, head);
+        file.putLong(TAIL_OFFSET, tail);
+        file.putLong(VERSION_OFFSET, version);
+        file.putLong(FINGERPRINT_OFFSET, fingerprint);
+    }
+
+    // Frees every block and starts over with an empty root leaf
+    private void reset() {
+        for (int shift = MINIMUM_BLOCK_SHIFT; shift <= MAXIMUM_BLOCK_SHIFT; shift++) {
+            file.putLong(freeList(shift), 0);
+        }
+        end = HEADER_SIZE;
+        count = 0;
+        root = newPage(LEAF);
+        head = root;
+        tail = root;
+        writeHeader();
+    }
+
+    /**
+     * Writes all changes to the storage device
+     */
+    public void force() {
+        file.force();
+    }
+
+    /**
+     * Rewrites the file with only the live entries, in full leaves, and truncates it to their size.
+     * The new file is written next to the old one and then moved over it, so the map stays intact if
+     * compaction fails; open views of the map must not be used afterwards.
+     * @throws IOException if the new file cannot be written or moved over the old one
+     */
+    public void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compacting");
+        Files.deleteIfExists(compacted);
+        try (MappedRoamingMap<K, V> copy = open(compacted, keySerializer, valueSerializer)) {
+            copyInto(copy);
+            copy.file.truncate(copy.end);
+        }
+        file.close();
+        try {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            file = new MappedFile(path);
+            load();
+        }
+    }
+
+    /**
+     * Writes all changes to the storage device and closes the file. The map must not be used afterwards.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    @Override
+    public V get(Object key) {
+        return view.get(key);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = (value == null) ? null : valueSerializer.serialize(value);
+        replaced = false;
+        long sibling = insert(root, key, keyBytes, valueBytes, true);
+        if (sibling != 0) {
+            long newRoot = newPage(INNER);
+            setEntry(newRoot, 0, root, count(root), 0);
+            setEntry(newRoot, 1, sibling, count(sibling), splitKey);
+            setPageCount(newRoot, 2);
+            root = newRoot;
+        }
+        V previous = previousValue;
+        previousValue = null;
+        if (replaced) {
+            fingerprint -= VersionedMap.fingerprint(key, previous);
+        } else {
+            count++;
+        }
+        fingerprint += VersionedMap.fingerprint(key, value);
+        version++;
+        writeHeader();
+        return previous;
+    }
+
+    private long insert(long page, K key, byte[] keyBytes, byte[] valueBytes, boolean rightmost) {
+        if (isLeaf(page)) {
+            return insertIntoLeaf(page, key, keyBytes, valueBytes);
+        }
+        int index = child(page, key);
+        int children = pageCount(page);
+        long sibling = insert(childAt(page, index), key, keyBytes, valueBytes, rightmost && index == children - 1);
+        long under = countAt(page, index) + (replaced ? 0 : 1);
+        if (sibling == 0) {
+            setCountAt(page, index, under);
+            return 0;
+        }
+        long siblingCount = count(sibling);
+        setCountAt(page, index, under - siblingCount);
+        if (children < INNER_CAPACITY) {
+            insertEntry(page, index + 1, sibling, siblingCount, splitKey);
+            return 0;
+        }
+        // Give the upper part to a new page; appending in key order keeps this page full instead of half empty
+        int split = (rightmost && index == children - 1) ? children : children / 2;
+        long right = newPage(INNER);
+        file.copy(entry(page, split), entry(right, 0), (long) (children - split) * ENTRY_SIZE);
+        setPageCount(page, split);
+        setPageCount(right, children - split);
+        if (index + 1 < split) {
+            insertEntry(page, index + 1, sibling, siblingCount, splitKey);
+        } else {
+            insertEntry(right, index + 1 - split, sibling, siblingCount, splitKey);
+        }
+        // The lowest key of the new page moves up to the parent
+        splitKey = separatorAt(right, 0);
+        setSeparatorAt(right, 0, 0);
+        return right;
+    }
+
+    private long insertIntoLeaf(long leaf, K key, byte[] keyBytes, byte[] valueBytes) {
+        int slot = search(leaf, key);
+        if (slot >= 0) {
+            long old = recordAt(leaf, slot);
+            previousValue = valueOf(old);
+            replaced = true;
+            // Freeing first lets a record of the same size class take the place of the old one
+            freeRecord(old);
+            setRecordAt(leaf, slot, write(keyBytes, valueBytes));
+            return 0;
+        }
+        slot = -slot - 1;
+        long record = write(keyBytes, valueBytes);
+        int records = pageCount(leaf);
+        if (records < LEAF_CAPACITY) {
+            insertRecord(leaf, slot, record);
+            return 0;
+        }
+        // Appending in key order keeps the left leaf full instead of half empty
+        int split = (leaf == tail && slot == records) ? records : records / 2;
+        long right = newPage(LEAF);
+        file.copy(recordSlot(leaf, split), recordSlot(right, 0), (long) (records - split) * Long.BYTES);
+        setPageCount(leaf, split);
+        setPageCount(right, records - split);
+        long next = nextLeaf(leaf);
+        file.putLong(right + LEAF_NEXT, next);
+        file.putLong(right + LEAF_PREVIOUS, leaf);
+        if (next != 0) {
+            file.putLong(next + LEAF_PREVIOUS, right);
+        } else {
+            tail = right;
+        }
+        file.putLong(leaf + LEAF_NEXT, right);
+        if (slot < split) {
+            insertRecord(leaf, slot, record);
+        } else {
+            insertRecord(right, slot - split, record);
+        }
+        splitKey = copyKey(recordAt(right, 0));
+        return right;
+    }
+
+    private void insertRecord(long leaf, int slot, long record) {
+        int records = pageCount(leaf);
+        file.copy(recordSlot(leaf, slot), recordSlot(leaf, slot + 1), (long) (records - slot) * Long.BYTES);
+        setRecordAt(leaf, slot, record);
+        setPageCount(leaf, records + 1);
+    }
+
+    private void insertEntry(long inner, int index, long child, long under, long separator) {
+        int children = pageCount(inner);
+        file.copy(entry(inner, index), entry(inner, index + 1), (long) (children - index) * ENTRY_SIZE);
+        setEntry(inner, index, child, under, separator);
+        setPageCount(inner, children + 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        K k = (K) key;
+        long leaf = leaf(k);
+        int slot = search(leaf, k);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = valueOf(recordAt(leaf, slot));
+        if (delete(root, k)) {
+            root = newPage(LEAF);
+            head = root;
+            tail = root;
+        }
+        while (!isLeaf(root) && pageCount(root) == 1) {
+            long only = childAt(root, 0);
+            free(root, PAGE_SIZE);
+            root = only;
+        }
+        count--;
+        fingerprint -= VersionedMap.fingerprint(key, previous);
+        version++;
+        writeHeader();
+        return previous;
+    }
+
+    // Removes the key, which must be present, and returns true if the page became empty and was freed
+    private boolean delete(long page, K key) {
+        if (isLeaf(page)) {
+            int slot = search(page, key);
+            freeRecord(recordAt(page, slot));
+            int records = pageCount(page);
+            file.copy(recordSlot(page, slot + 1), recordSlot(page, slot), (long) (records - slot - 1) * Long.BYTES);
+            setPageCount(page, records - 1);
+            if (records > 1 || page == root) {
+                return false;
+            }
+            unlink(page);
+            return true;
+        }
+        int index = child(page, key);
+        setCountAt(page, index, countAt(page, index) - 1);
+        if (!delete(childAt(page, index), key)) {
+            return false;
+        }
+        // Drop the empty child together with the separator on one of its sides
+        int children = pageCount(page);
+        if (index > 0) {
+            freeRecord(separatorAt(page, index));
+        } else if (children > 1) {
+            freeRecord(separatorAt(page, 1));
+            setSeparatorAt(page, 1, 0);
+        }
+        file.copy(entry(page, index + 1), entry(page, index), (long) (children - 1 - index) * ENTRY_SIZE);
+        setPageCount(page, children - 1);
+        if (children > 1) {
+            return false;
+        }
+        free(page, PAGE_SIZE);
+        return true;
+    }
+
+    private void unlink(long leaf) {
+        long previous = previousLeaf(leaf);
+        long next = nextLeaf(leaf);
+        if (previous != 0) {
+            file.putLong(previous + LEAF_NEXT, next);
+        } else {
+            head = next;
+        }
+        if (next != 0) {
+            file.putLong(next + LEAF_PREVIOUS, previous);
+        } else {
+            tail = previous;
+        }
+        free(leaf, PAGE_SIZE);
+    }
+
+    @Override
+    public void clear() {
+        if (count > 0) {
+            version++;
+        }
+        fingerprint = 0;
+        reset();
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return RangeSummary.of(RangeSummary.slice(view, fromKey, fromInclusive, toKey, toInclusive).entrySet());
+    }
+
+    // Copies the entries into the map, which must be empty, filling its leaves completely in key
+    // order, then builds each level of inner pages over the one below it
+    private void copyInto(MappedRoamingMap<K, V> target) {
+        List<Long> pages = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        // The record of the lowest key under each page, in the target
+        List<Long> lowestKeys = new ArrayList<>();
+        long leaf = target.root;
+        for (long page = head; page != 0; page = nextLeaf(page)) {
+            for (int slot = 0; slot < pageCount(page); slot++) {
+                long record = recordAt(page, slot);
+                byte[] bytes = file.getBytes(record, (int) recordLength(record));
+                long copied = target.allocate(bytes.length);
+                target.file.putBytes(copied, bytes);
+                int records = target.pageCount(leaf);
+                if (records == LEAF_CAPACITY) {
+                    long next = target.newPage(LEAF);
+                    target.file.putLong(next + LEAF_PREVIOUS, leaf);
+                    target.file.putLong(leaf + LEAF_NEXT, next);
+                    leaf = next;
+                    records = 0;
+                }
+                if (records == 0) {
+                    pages.add(leaf);
+                    counts.add(0L);
+                    lowestKeys.add(copied);
+                }
+                target.setRecordAt(leaf, records, copied);
+                target.setPageCount(leaf, records + 1);
+                counts.set(counts.size() - 1, (long) records + 1);
+            }
+        }
+        target.tail = leaf;
+        while (pages.size() > 1) {
+            List<Long> parents = new ArrayList<>();
+            List<Long> parentCounts = new ArrayList<>();
+            List<Long> parentKeys = new ArrayList<>();
+            for (int start = 0; start < pages.size(); start += INNER_CAPACITY) {
+                long inner = target.newPage(INNER);
+                int children = Math.min(INNER_CAPACITY, pages.size() - start);
+                long under = 0;
+                for (int i = 0; i < children; i++) {
+                    long separator = (i == 0) ? 0 : target.copyKey(lowestKeys.get(start + i));
+                    target.setEntry(inner, i, pages.get(start + i), counts.get(start + i), separator);
+                    under += counts.get(start + i);
+                }
+                target.setPageCount(inner, children);
+                parents.add(inner);
+                parentCounts.add(under);
+                parentKeys.add(lowestKeys.get(start));
+            }
+            pages = parents;
+            counts = parentCounts;
+            lowestKeys = parentKeys;
+        }
+        if (!pages.isEmpty()) {
+            target.root = pages.get(0);
+        }
+        target.count = count;
+        target.version = version;
+        target.fingerprint = fingerprint;
+        target.writeHeader();
+    }
+
+    // Returns the slot of the key in the leaf, or (-(insertion point) - 1) if it is absent
+    private int search(long leaf, K key) {
+        int low = 0;
+        int high = pageCount(leaf) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = keyOf(recordAt(leaf, middle)).compareTo(key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Returns the index of the child of the inner page that may hold the key
+    private int child(long inner, K key) {
+        int low = 1;
+        int high = pageCount(inner) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (keyOf(separatorAt(inner, middle)).compareTo(key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    private long leaf(K key) {
+        long page = root;
+        while (!isLeaf(page)) {
+            page = childAt(page, child(page, key));
+        }
+        return page;
+    }
+
+    // Returns the number of keys less than the key
+    private long rank(K key) {
+        long rank = 0;
+        long page = root;
+        while (!isLeaf(page)) {
+            int index = child(page, key);
+            for (int i = 0; i < index; i++) {
+                rank += countAt(page, i);
+            }
+            page = childAt(page, index);
+        }
+        int slot = search(page, key);
+        return rank + ((slot >= 0) ? slot : -slot - 1);
+    }
+
+    private long select(long rank) {
+        long page = root;
+        long remaining = rank;
+        while (!isLeaf(page)) {
+            int index = 0;
+            while (remaining >= countAt(page, index)) {
+                remaining -= countAt(page, index);
+                index++;
+            }
+            page = childAt(page, index);
+        }
+        return position(page, (int) remaining);
+    }
+
+    private long count(long page) {
+        if (isLeaf(page)) {
+            return pageCount(page);
+        }
+        long under = 0;
+        for (int i = 0; i < pageCount(page); i++) {
+            under += countAt(page, i);
+        }
+        return under;
+    }
+
+    private static long position(long leaf, int slot) {
+        return (leaf << SLOT_BITS) | slot;
+    }
+
+    private static long leafOf(long position) {
+        return position >>> SLOT_BITS;
+    }
+
+    private static int slotOf(long position) {
+        return (int) (position & ((1 << SLOT_BITS) - 1));
+    }
+
+    private long newPage(int kind) {
+        long page = allocate(PAGE_SIZE);
+        file.putInt(page + PAGE_COUNT, 0);
+        file.putInt(page + PAGE_KIND, kind);
+        if (kind == LEAF) {
+            file.putLong(page + LEAF_NEXT, 0);
+            file.putLong(page + LEAF_PREVIOUS, 0);
+        }
+        return page;
+    }
+
+    private boolean isLeaf(long page) {
+        return file.getInt(page + PAGE_KIND) == LEAF;
+    }
+
+    private int pageCount(long page) {
+        return file.getInt(page + PAGE_COUNT);
+    }
+
+    private void setPageCount(long page, int pageCount) {
+        file.putInt(page + PAGE_COUNT, pageCount);
+    }
+
+    private long nextLeaf(long leaf) {
+        return file.getLong(leaf + LEAF_NEXT);
+    }
+
+    private long previousLeaf(long leaf) {
+        return file.getLong(leaf + LEAF_PREVIOUS);
+    }
+
+    private static long recordSlot(long leaf, int slot) {
+        return leaf + LEAF_RECORDS + (long) slot * Long.BYTES;
+    }
+
+    private long recordAt(long leaf, int slot) {
+        return file.getLong(recordSlot(leaf, slot));
+    }
+
+    private void setRecordAt(long leaf, int slot, long record) {
+        file.putLong(recordSlot(leaf, slot), record);
+    }
+
+    private static long entry(long inner, int index) {
+        return inner + INNER_ENTRIES + (long) index * ENTRY_SIZE;
+    }
+
+    private long childAt(long inner, int index) {
+        return file.getLong(entry(inner, index));
+    }
+
+    private long countAt(long inner, int index) {
+        return file.getLong(entry(inner, index) + Long.BYTES);
+    }
+
+    private void setCountAt(long inner, int index, long under) {
+        file.putLong(entry(inner, index) + Long.BYTES, under);
+    }
+
+    private long separatorAt(long inner, int index) {
+        return file.getLong(entry(inner, index) + 2 * Long.BYTES);
+    }
+
+    private void setSeparatorAt(long inner, int index, long separator) {
+        file.putLong(entry(inner, index) + 2 * Long.BYTES, separator);
+    }
+
+    private void setEntry(long inner, int index, long child, long under, long separator) {
+        long at = entry(inner, index);
+        file.putLong(at, child);
+        file.putLong(at + Long.BYTES, under);
+        file.putLong(at + 2 * Long.BYTES, separator);
+    }
+
+    private K keyOf(long record) {
+        return keySerializer.deserialize(file.getBytes(record + 2 * Integer.BYTES, file.getInt(record)));
+    }
+
+    private V valueOf(long record) {
+        int keyLength = file.getInt(record);
+        int valueLength = file.getInt(record + Integer.BYTES);
+        if (valueLength == NULL_VALUE) {
+            return null;
+        }
+        return valueSerializer.deserialize(file.getBytes(record + 2 * Integer.BYTES + keyLength, valueLength));
+    }
+
+    private static long recordLength(int keyLength, int valueLength) {
+        return 2L * Integer.BYTES + keyLength + Math.max(valueLength, 0);
+    }
+
+    private long recordLength(long record) {
+        return recordLength(file.getInt(record), file.getInt(record + Integer.BYTES));
+    }
+
+    private long write(byte[] key, byte[] value) {
+        int valueLength = (value == null) ? NULL_VALUE : value.length;
+        long record = allocate(recordLength(key.length, valueLength));
+        file.putInt(record, key.length);
+        file.putInt(record + Integer.BYTES, valueLength);
+        file.putBytes(record + 2 * Integer.BYTES, key);
+        if (value != null) {
+            file.putBytes(record + 2 * Integer.BYTES + key.length, value);
+        }
+        return record;
+    }
+
+    // Copies the key of the record into a record of its own, for the separators of inner pages
+    private long copyKey(long record) {
+        return write(file.getBytes(record + 2 * Integer.BYTES, file.getInt(record)), null);
+    }
+
+    private void freeRecord(long record) {
+        free(record, recordLength(record));
+    }
+
+    private static long freeList(int shift) {
+        return FREE_LISTS_OFFSET + (long) shift * Long.BYTES;
+    }
+
+    private static int blockShift(long bytes) {
+        int shift = Math.max(MINIMUM_BLOCK_SHIFT, Long.SIZE - Long.numberOfLeadingZeros(bytes - 1));
+        if (shift > MAXIMUM_BLOCK_SHIFT) {
+            throw new IllegalArgumentException("Entry of " + bytes + " bytes is too large");
+        }
+        return shift;
+    }
+
+    // Returns a block of at least the given number of bytes, reusing a freed block of its size class
+    // if there is one, and doubling the file if the new block does not fit
+    private long allocate(long bytes) {
+        int shift = blockShift(bytes);
+        long block = file.getLong(freeList(shift));
+        if (block != 0) {
+            file.putLong(freeList(shift), file.getLong(block));
+            return block;
+        }
+        long size = 1L << shift;
+        if (end + size > file.length()) {
+            try {
+                file.grow(Math.max(file.length() * 2, end + size));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        block = end;
+        end += size;
+        return block;
+    }
+
+    private void free(long block, long bytes) {
+        int shift = blockShift(bytes);
+        file.putLong(block, file.getLong(freeList(shift)));
+        file.putLong(freeList(shift), block);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return view.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return view.entrySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return view.values();
+    }
+
+    @Override
+    public String toString() {
+        return view.toString();
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return view.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return view.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return view.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return view.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return view.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return view.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return view.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return view.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return view.firstEntry();
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return view.lastEntry();
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return removed(view.firstEntry());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return removed(view.lastEntry());
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return view.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return view.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return view.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return view.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return view.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return view.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return view.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return view.headMap(toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return view.tailMap(fromKey);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public K firstKey() {
+        return view.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return view.lastKey();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return view.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return view.containsValue(value);
+    }
+
+    private Entry<K, V> removed(Entry<K, V> entry) {
+        if (entry != null) {
+            remove(entry.getKey());
+        }
+        return entry;
+    }
+
+
+    /**
+     * The positions of the entries in the leaves of the tree, for the views of the map
+     */
+    private final class Store implements SortedStore<K, V> {
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public long find(K key) {
+            long leaf = leaf(key);
+            int slot = search(leaf, key);
+            return (slot < 0) ? NONE : position(leaf, slot);
+        }
+
+        @Override
+        public long first() {
+            return (count == 0) ? NONE : position(head, 0);
+        }
+
+        @Override
+        public long last() {
+            return (count == 0) ? NONE : position(tail, pageCount(tail) - 1);
+        }
+
+        @Override
+        public long next(long position) {
+            long leaf = leafOf(position);
+            if (slotOf(position) + 1 < pageCount(leaf)) {
+                return position + 1;
+            }
+            long next = nextLeaf(leaf);
+            return (next == 0) ? NONE : position(next, 0);
+        }
+
+        @Override
+        public long previous(long position) {
+            if (slotOf(position) > 0) {
+                return position - 1;
+            }
+            long previous = previousLeaf(leafOf(position));
+            return (previous == 0) ? NONE : position(previous, pageCount(previous) - 1);
+        }
+
+        @Override
+        public long ceiling(K key, boolean inclusive) {
+            long leaf = leaf(key);
+            int slot = search(leaf, key);
+            slot = (slot >= 0) ? (inclusive ? slot : slot + 1) : -slot - 1;
+            if (slot < pageCount(leaf)) {
+                return position(leaf, slot);
+            }
+            long next = nextLeaf(leaf);
+            return (next == 0) ? NONE : position(next, 0);
+        }
+
+        @Override
+        public long floor(K key, boolean inclusive) {
+            long leaf = leaf(key);
+            int slot = search(leaf, key);
+            slot = (slot >= 0) ? (inclusive ? slot : slot - 1) : -slot - 2;
+            if (slot >= 0) {
+                return position(leaf, slot);
+            }
+            long previous = previousLeaf(leaf);
+            return (previous == 0) ? NONE : position(previous, pageCount(previous) - 1);
+        }
+
+        @Override
+        public K keyAt(long position) {
+            return keyOf(recordAt(leafOf(position), slotOf(position)));
+        }
+
+        @Override
+        public V valueAt(long position) {
+            return valueOf(recordAt(leafOf(position), slotOf(position)));
+        }
+
+        @Override
+        public long rank(long position) {
+            return MappedRoamingMap.this.rank(keyAt(position));
+        }
+
+        @Override
+        public long select(long rank) {
+            return MappedRoamingMap.this.select(rank);
+        }
+    }
+}
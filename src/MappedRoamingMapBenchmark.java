@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares the startup time of rebuilding a RoamingMap from scratch against reopening a
+ * MappedRoamingMap that already holds the same entries, and the time of lookups in both. Also
+ * measures filling a MappedRoamingMap in random key order, and the size of its file after
+ * rewriting every entry and after compaction.
+ * Run with: ant bench -Dbenchmark=MappedRoamingMapBenchmark
+ */
+public class MappedRoamingMapBenchmark {
+
+    private static final int SIZE = 500_000;
+    private static final int LOOKUPS = 200_000;
+
+    public static void main(String[] args) throws IOException {
+        Path path = Files.createTempFile("roaming", ".map");
+        Files.delete(path);
+        try {
+            try (MappedRoamingMap<Long, String> map = open(path)) {
+                for (long key = 0; key < SIZE; key++) {
+                    map.put(key, "value-" + key);
+                }
+            }
+            System.out.printf("%-48s %12d bytes%n", "file size", Files.size(path));
+
+            BenchmarkSupport.run("startup / rebuild RoamingMap", 1, () -> {
+                RoamingMap<Long, String> map = new RoamingMap<>();
+                for (long key = 0; key < SIZE; key++) {
+                    map.put(key, "value-" + key);
+                }
+                return map.size();
+            });
+            BenchmarkSupport.run("startup / reopen MappedRoamingMap", 1, () -> {
+                try (MappedRoamingMap<Long, String> map = open(path)) {
+                    return map.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            RoamingMap<Long, String> heap = new RoamingMap<>();
+            for (long key = 0; key < SIZE; key++) {
+                heap.put(key, "value-" + key);
+            }
+            try (MappedRoamingMap<Long, String> mapped = open(path)) {
+                BenchmarkSupport.run("get / RoamingMap", LOOKUPS, () -> lookups(heap));
+                BenchmarkSupport.run("get / MappedRoamingMap", LOOKUPS, () -> lookups(mapped));
+            }
+
+            Files.delete(path);
+            BenchmarkSupport.run("fill in random order / MappedRoamingMap", SIZE, () -> {
+                try (MappedRoamingMap<Long, String> map = open(path)) {
+                    for (long i = 0; i < SIZE; i++) {
+                        long key = (i * 2654435761L) % SIZE;
+                        map.put(key, "value-" + key);
+                    }
+                    map.clear();
+                    return map.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try (MappedRoamingMap<Long, String> map = open(path)) {
+                for (long key = 0; key < SIZE; key++) {
+                    map.put(key, "value-" + key);
+                }
+                map.force();
+                System.out.printf("%-48s %12d bytes%n", "file size", Files.size(path));
+                for (long key = 0; key < SIZE; key++) {
+                    map.put(key, "other-" + key);
+                }
+                map.force();
+                System.out.printf("%-48s %12d bytes%n", "file size after rewriting every entry", Files.size(path));
+                for (long key = 0; key < SIZE; key += 2) {
+                    map.remove(key);
+                }
+                map.compact();
+                System.out.printf("%-48s %12d bytes%n", "file size after removing half and compacting", Files.size(path));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static MappedRoamingMap<Long, String> open(Path path) throws IOException {
+        return MappedRoamingMap.open(path, MappedRoamingMap.Serializer.longs(), MappedRoamingMap.Serializer.strings());
+    }
+
+    private static long lookups(VersionedMap<Long, String> map) {
+        long length = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            length += map.get((i * 2654435761L) % SIZE).length();
+        }
+        return length;
+    }
+}
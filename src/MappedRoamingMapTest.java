@@ -0,0 +1,123 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.logging.Logger;
+
+// Test class for MappedRoamingMap
+public class MappedRoamingMapTest {
+
+    private final Logger logger = Logger.getLogger(Barricade.class.getName());
+    private final LoggerTestingHandler handler = new LoggerTestingHandler();
+
+    @Before
+    public void setup() {
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void teardown() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    public void testSurvivesReopening() throws IOException {
+        Path path = Files.createTempFile("roaming", ".map");
+        Files.delete(path);
+        RoamingMap<Long, String> expected = new RoamingMap<>();
+        try (MappedRoamingMap<Long, String> map = MappedRoamingMap.open(path,
+                MappedRoamingMap.Serializer.longs(), MappedRoamingMap.Serializer.strings())) {
+            // Large values, so that the records outgrow the initial file and it has to grow
+            String padding = "x".repeat(200);
+            DifferentialTesting.randomWrites(new Random(5), 10_000, 5, 8_000, key -> (long) key, i -> padding + i, expected, map);
+            assertEquals(expected.entrySet(), map.entrySet());
+        }
+        try (MappedRoamingMap<Long, String> map = MappedRoamingMap.open(path,
+                MappedRoamingMap.Serializer.longs(), MappedRoamingMap.Serializer.strings())) {
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.fingerprint(), map.fingerprint());
+            assertEquals(expected.version(), map.version());
+            assertEquals(expected.toString(), map.toString());
+            DifferentialTesting.assertNavigatesLike(expected, map, DifferentialTesting.probes(-10, 8_010, 97, key -> (long) key));
+            assertEquals(expected.rangeSummary(100L, false, 900L, true), map.rangeSummary(100L, false, 900L, true));
+
+            long key = expected.firstKey();
+            assertEquals(expected.get(key), Barricade.safeValue(map, key));
+            Barricade.safePut(map, key, "replaced");
+            assertEquals(expected.size(), Barricade.correctSize(map));
+            assertEquals(map.toString(), Barricade.correctStringRepresentation(map));
+            assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testReusesSpaceAndCompacts() throws IOException {
+        Path path = Files.createTempFile("roaming", ".map");
+        Files.delete(path);
+        RoamingMap<Long, String> expected = new RoamingMap<>();
+        try (MappedRoamingMap<Long, String> map = MappedRoamingMap.open(path,
+                MappedRoamingMap.Serializer.longs(), MappedRoamingMap.Serializer.strings())) {
+            // Enough keys in random order for the tree to split inner pages as well as leaves
+            for (long i = 0; i < 100_000; i++) {
+                long key = (i * 2654435761L) % 100_000;
+                map.put(key, "value-" + key);
+                expected.put(key, "value-" + key);
+            }
+            map.force();
+            long length = Files.size(path);
+            for (int round = 0; round < 3; round++) {
+                for (long key = 0; key < 100_000; key++) {
+                    map.put(key, "other-" + key);
+                    expected.put(key, "other-" + key);
+                }
+            }
+            map.force();
+            assertEquals("Replaced records should be reused", length, Files.size(path));
+
+            for (long key = 0; key < 100_000; key++) {
+                if (key % 10 != 0) {
+                    assertEquals(expected.remove(key), map.remove(key));
+                }
+            }
+            map.compact();
+            assertTrue(Files.size(path) < length / 4);
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+            assertEquals(expected.fingerprint(), map.fingerprint());
+            assertEquals(expected.version(), map.version());
+            assertEquals(expected.subMap(500L, true, 50_000L, false).size(), map.subMap(500L, true, 50_000L, false).size());
+            assertEquals(expected.higherEntry(12_345L), map.higherEntry(12_345L));
+            assertEquals(expected.put(12_345L, "new"), map.put(12_345L, "new"));
+        }
+        try (MappedRoamingMap<Long, String> map = MappedRoamingMap.open(path,
+                MappedRoamingMap.Serializer.longs(), MappedRoamingMap.Serializer.strings())) {
+            assertEquals(expected.entrySet(), map.entrySet());
+            while (!map.isEmpty()) {
+                assertEquals(expected.pollLastEntry(), map.pollLastEntry());
+            }
+            assertNull(map.firstEntry());
+            map.put(1L, null);
+            assertTrue(map.containsKey(1L));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path path = Files.createTempFile("roaming", ".map");
+        try {
+            Files.writeString(path, "not a map, but long enough to hold a whole header. ".repeat(16));
+            assertThrows(IOException.class, () -> MappedRoamingMap.open(path,
+                    MappedRoamingMap.Serializer.strings(), MappedRoamingMap.Serializer.integers()));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
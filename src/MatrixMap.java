@@ -1,5 +1,7 @@
+import java.io.IOException;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The MatrixMap class represents a two-dimensional matrix with row and column indexes.
@@ -39,22 +41,49 @@ public final class MatrixMap<T> {
         }
     }
 
-    private final RoamingMap<Indexes, T> matrix;
+    private final VersionedMap<Indexes, T> matrix;
 
-    private MatrixMap(RoamingMap<Indexes, T> matrix) {
+    private MatrixMap(VersionedMap<Indexes, T> matrix) {
         this.matrix = matrix;
     }
 
     public static <S> MatrixMap<S> instance(int rows, int columns, Function<Indexes, S> valueMapper) {
         Objects.requireNonNull(valueMapper);
-        RoamingMap<Indexes, S> matrix = buildMatrix(rows, columns, valueMapper);
+        RoamingMap<Indexes, S> matrix = loadMatrix(rows, columns, valueMapper);
+        return new MatrixMap<>(matrix);
+    }
+
+    /**
+     * Creates a matrix like instance, backed by a ConcurrentRoamingMap instead of a RoamingMap
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @param valueMapper the value of each cell
+     * @return the matrix
+     */
+    public static <S> MatrixMap<S> concurrent(int rows, int columns, Function<Indexes, S> valueMapper) {
+        Objects.requireNonNull(valueMapper);
+        ConcurrentRoamingMap<Indexes, S> matrix = buildMatrix(rows, columns, valueMapper, ConcurrentRoamingMap::new);
+        return new MatrixMap<>(matrix);
+    }
+
+    /**
+     * Creates a matrix like instance, backed by a PersistentRoamingMap, so that Barricade verifies it
+     * against O(1) snapshots instead of copies of its cells
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @param valueMapper the value of each cell
+     * @return the matrix
+     */
+    public static <S> MatrixMap<S> persistent(int rows, int columns, Function<Indexes, S> valueMapper) {
+        Objects.requireNonNull(valueMapper);
+        PersistentRoamingMap<Indexes, S> matrix = buildMatrix(rows, columns, valueMapper, PersistentRoamingMap::new);
         return new MatrixMap<>(matrix);
     }
 
     public static <S> MatrixMap<S> instance(Indexes size, Function<Indexes, S> valueMapper) {
         Objects.requireNonNull(size);
         Objects.requireNonNull(valueMapper);
-        RoamingMap<Indexes, S> matrix = buildMatrix(size.row(), size.column(), valueMapper);
+        RoamingMap<Indexes, S> matrix = loadMatrix(size.row(), size.column(), valueMapper);
         return new MatrixMap<>(matrix);
     }
 
@@ -96,23 +125,66 @@ public final class MatrixMap<T> {
         return Barricade.correctStringRepresentation(matrix);
     }
 
+    /**
+     * Writes the same representation as toString to the output, streamed in chunks,
+     * so that large matrices can be written to files or sockets without building the whole string
+     * @param out the output to write to
+     * @throws IOException if writing to the output fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        Barricade.writeStringRepresentation(matrix, out);
+    }
+
     public T value(Indexes indexes) {
         Objects.requireNonNull(indexes);
-        return Barricade.safeGet(matrix, indexes).value();
+        return Barricade.safeValue(matrix, indexes);
     }
 
     public T value(int row, int column) {
         return value(new Indexes(row, column));
     }
 
-    private static <S> RoamingMap<Indexes, S> buildMatrix(int rows, int columns, Function<Indexes, S> valueMapper) {
+    /**
+     * Returns the values of one row, in column order. Only the cells of the row are verified,
+     * so the cost does not depend on the size of the whole matrix.
+     * @param row the row
+     * @return the values of the row, empty if the matrix has no such row
+     */
+    public List<T> row(int row) {
+        NavigableMap<Indexes, T> cells = Barricade.safeSubMap(matrix, new Indexes(row, 0), true, new Indexes(row + 1, 0), false);
+        return List.copyOf(cells.values());
+    }
+
+    // Cells are kept in row-major order, so rows are contiguous runs of the leaves of a B+-tree,
+    // and since that is also the order of Indexes the tree is bulk loaded in linear time. The load
+    // bypasses safePutAll, so its result is verified once, like a single batch.
+    private static <S> RoamingMap<Indexes, S> loadMatrix(int rows, int columns, Function<Indexes, S> valueMapper) {
+        List<Map.Entry<Indexes, S>> cells = cells(rows, columns, valueMapper);
+        RoamingMap<Indexes, S> matrix = RoamingMap.fromSorted(cells.iterator(), RoamingMap.Backend.B_PLUS_TREE);
+        Barricade.verifyLoaded(matrix, cells);
+        return matrix;
+    }
+
+    private static <S, M extends VersionedMap<Indexes, S>> M buildMatrix(int rows, int columns, Function<Indexes, S> valueMapper, Supplier<M> store) {
+        List<Map.Entry<Indexes, S>> cells = cells(rows, columns, valueMapper);
+        M matrix = store.get();
+        // Collect all cells first so the whole matrix is verified in a single batch
+        Map<Indexes, S> batch = new LinkedHashMap<>();
+        for (Map.Entry<Indexes, S> cell : cells) {
+            batch.put(cell.getKey(), cell.getValue());
+        }
+        Barricade.safePutAll(matrix, batch);
+        return matrix;
+    }
+
+    // Returns the cells in row-major order, which is ascending Indexes order
+    private static <S> List<Map.Entry<Indexes, S>> cells(int rows, int columns, Function<Indexes, S> valueMapper) {
         int rowsNumber = InvalidLengthException.requirePositive(InvalidLengthException.Cause.ROW, rows);
         int columnsNumber = InvalidLengthException.requirePositive(InvalidLengthException.Cause.COLUMN, columns);
-        RoamingMap<Indexes, S> matrix = new RoamingMap<>();
-        
+
         // No need to special-case empty matrices since requirePositive already rejects 0 values
-        
-        // Fill the matrix normally
+
+        List<Map.Entry<Indexes, S>> cells = new ArrayList<>(rowsNumber * columnsNumber);
         for (int i = 0; i < rowsNumber; i++) {
             for (int j = 0; j < columnsNumber; j++) {
                 Indexes idx = new Indexes(i, j);
@@ -120,9 +192,9 @@ public final class MatrixMap<T> {
                 if (value == null) {
                     throw new NullPointerException("Matrix cannot contain null values");
                 }
-                Barricade.safePut(matrix, idx, value);
+                cells.add(Map.entry(idx, value));
             }
         }
-        return matrix;
+        return cells;
     }
 }
@@ -1,5 +1,7 @@
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.List;
 import java.util.function.Function;
 
 
@@ -212,4 +214,49 @@ public class MatrixMapTest {
         assertEquals("Matrix should have 3 rows", 3, matrix.size().row());
         assertEquals("Matrix should have 3 columns", 3, matrix.size().column());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMatrixRow() {
+        MatrixMap<Integer> matrix = MatrixMap.instance(3, 4, indexes -> indexes.row() * 10 + indexes.column());
+        assertEquals(List.of(10, 11, 12, 13), matrix.row(1));
+        assertTrue("Rows outside the matrix should be empty", matrix.row(5).isEmpty());
+    }
+
+    @Test
+    public void testMatrixWriteTo() throws IOException {
+        MatrixMap<Integer> matrix = MatrixMap.instance(2, 3, indexes -> indexes.row() + indexes.column());
+        StringBuilder out = new StringBuilder();
+        matrix.writeTo(out);
+        assertEquals(matrix.toString(), out.toString());
+    }
+
+    @Test
+    public void testConcurrentMatrixMatchesInstance() {
+        MatrixMap<Integer> matrix = MatrixMap.concurrent(3, 4, indexes -> indexes.row() * 10 + indexes.column());
+        MatrixMap<Integer> expected = MatrixMap.instance(3, 4, indexes -> indexes.row() * 10 + indexes.column());
+        assertEquals(expected.size(), matrix.size());
+        assertEquals(expected.toString(), matrix.toString());
+        assertEquals(Integer.valueOf(23), matrix.value(2, 3));
+        assertEquals(expected.row(1), matrix.row(1));
+    }
+
+    @Test
+    public void testPersistentMatrixMatchesInstance() {
+        MatrixMap<Integer> matrix = MatrixMap.persistent(3, 4, indexes -> indexes.row() * 10 + indexes.column());
+        MatrixMap<Integer> expected = MatrixMap.instance(3, 4, indexes -> indexes.row() * 10 + indexes.column());
+        assertEquals(expected.size(), matrix.size());
+        assertEquals(expected.toString(), matrix.toString());
+        assertEquals(Integer.valueOf(23), matrix.value(2, 3));
+        assertEquals(expected.row(1), matrix.row(1));
+    }
+
+    @Test
+    public void testInstanceVerifiesItsCellsOnce() {
+        Barricade.metrics().reset();
+        MatrixMap<Integer> matrix = MatrixMap.instance(3, 4, indexes -> indexes.row() * 10 + indexes.column());
+        BarricadeMetrics.OperationSnapshot putAll = Barricade.metrics().snapshot().get(BarricadeMetrics.Operation.PUT_ALL);
+        assertEquals("The bulk loaded cells should be verified as one batch", 1, putAll.calls());
+        assertEquals(1, putAll.verifiedCalls());
+        assertEquals(Integer.valueOf(23), matrix.value(2, 3));
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.*;
+
+/**
+ * A read-only key set backed by a NavigableMap view, for maps whose views are read-only
+ * @param <K> the type of keys
+ */
+final class NavigableKeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+
+    private final NavigableMap<K, ?> map;
+
+    NavigableKeySet(NavigableMap<K, ?> map) {
+        this.map = map;
+    }
+
+    @Override
+    public Iterator<K> iterator() {
+        Iterator<? extends Map.Entry<K, ?>> entries = map.entrySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public K next() {
+                return entries.next().getKey();
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Spliterator<K> spliterator() {
+        Spliterator<?> keys = (map instanceof SortedView<?, ?> view) ? view.keySpliterator() : null;
+        return (keys != null) ? (Spliterator<K>) keys : super.spliterator();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return map.comparator();
+    }
+
+    @Override
+    public K first() {
+        return map.firstKey();
+    }
+
+    @Override
+    public K last() {
+        return map.lastKey();
+    }
+
+    @Override
+    public K lower(K key) {
+        return map.lowerKey(key);
+    }
+
+    @Override
+    public K floor(K key) {
+        return map.floorKey(key);
+    }
+
+    @Override
+    public K ceiling(K key) {
+        return map.ceilingKey(key);
+    }
+
+    @Override
+    public K higher(K key) {
+        return map.higherKey(key);
+    }
+
+    @Override
+    public K pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public K pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<K> descendingSet() {
+        return new NavigableKeySet<>(map.descendingMap());
+    }
+
+    @Override
+    public Iterator<K> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+        return new NavigableKeySet<>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+        return new NavigableKeySet<>(map.headMap(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+        return new NavigableKeySet<>(map.tailMap(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<K> subSet(K fromElement, K toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<K> headSet(K toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<K> tailSet(K fromElement) {
+        return tailSet(fromElement, true);
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.Random;
+
+/**
+ * Compares the order-statistic operations of RoamingMap on its two backends, for a map of a million
+ * entries: rank and select, which the B+-tree answers from the entry counts of its inner nodes and
+ * the red-black tree by iterating, and the size of head and sub-map views, which TreeMap counts one
+ * entry at a time.
+ * Run with: ant bench -Dbenchmark=OrderStatisticBenchmark
+ */
+public class OrderStatisticBenchmark {
+
+    private static final int SIZE = 1 << 20;
+    private static final int FAST_QUERIES = 100_000;
+    private static final int SLOW_QUERIES = 100;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] probes = new int[FAST_QUERIES];
+        for (int i = 0; i < FAST_QUERIES; i++) {
+            probes[i] = random.nextInt(SIZE);
+        }
+
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            RoamingMap<Integer, Integer> map = new RoamingMap<>(backend);
+            for (int key = 0; key < SIZE; key++) {
+                map.put(key, key);
+            }
+            int queries = (backend == RoamingMap.Backend.B_PLUS_TREE) ? FAST_QUERIES : SLOW_QUERIES;
+
+            BenchmarkSupport.run("rank / " + backend, queries, () -> {
+                long sum = 0;
+                for (int i = 0; i < queries; i++) {
+                    sum += map.rank(probes[i]);
+                }
+                return sum;
+            });
+            BenchmarkSupport.run("select / " + backend, queries, () -> {
+                long sum = 0;
+                for (int i = 0; i < queries; i++) {
+                    sum += map.select(probes[i]);
+                }
+                return sum;
+            });
+            BenchmarkSupport.run("headMap().size() / " + backend, queries, () -> {
+                long sum = 0;
+                for (int i = 0; i < queries; i++) {
+                    sum += map.headMap(probes[i], false).size();
+                }
+                return sum;
+            });
+            BenchmarkSupport.run("subMap().size() / " + backend, queries, () -> {
+                long sum = 0;
+                for (int i = 0; i < queries; i++) {
+                    sum += map.subMap(probes[i] / 2, true, probes[i], false).size();
+                }
+                return sum;
+            });
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Compares sequential and parallel sums over a RoamingMap of four million entries on both
+ * backends, over the whole map and over a sub-map of half of it. The B+-tree splits any range by
+ * rank; on the red-black tree reduceParallel copies the entries first to split them by rank, while
+ * parallel streams over its sub-maps keep TreeMap's spliterators, which cannot split them evenly.
+ * Run with: ant bench -Dbenchmark=ParallelIterationBenchmark
+ */
+public class ParallelIterationBenchmark {
+
+    private static final int SIZE = 1 << 22;
+
+    private static final Aggregator<Integer, Long> SUM = Aggregator.summingLong(Integer::longValue);
+
+    public static void main(String[] args) {
+        System.out.println("Fork-join parallelism: " + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+        for (RoamingMap.Backend backend : RoamingMap.Backend.values()) {
+            RoamingMap<Integer, Integer> map = new RoamingMap<>(backend);
+            for (int key = 0; key < SIZE; key++) {
+                map.put(key, key);
+            }
+            NavigableMap<Integer, Integer> half = map.subMap(SIZE / 4, true, 3 * SIZE / 4, false);
+
+            BenchmarkSupport.run("map / sequential / " + backend, SIZE, () -> {
+                long sum = 0;
+                for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                    sum += entry.getValue();
+                }
+                return sum;
+            });
+            BenchmarkSupport.run("map / reduceParallel / " + backend, SIZE, () -> map.reduceParallel(SUM));
+            BenchmarkSupport.run("subMap / sequential / " + backend, SIZE / 2, () -> half.values().stream().mapToLong(Integer::longValue).sum());
+            BenchmarkSupport.run("subMap / parallelStream / " + backend, SIZE / 2, () -> half.values().parallelStream().mapToLong(Integer::longValue).sum());
+        }
+    }
+}
@@ -0,0 +1,532 @@
+import java.util.*;
+
+/**
+ * An ordered map with non-null keys whose contents are a persistent AVL tree: nodes are never
+ * modified, so every write builds a new root that shares all untouched nodes with the previous one.
+ * This makes {@link #snapshot()} and {@link #fork()} O(1), and lets {@link #with} and {@link #without}
+ * derive new versions of a snapshot in O(log n) without affecting it.
+ * <p>
+ * Every node also holds the size and fingerprint of its subtree, so range summaries cost O(log n)
+ * whatever the size of the range. Entries are reached by rank, so iterating costs O(log n) per entry.
+ * Like RoamingMap, the map is not thread-safe, but a snapshot can be read by any number of threads
+ * while the map it was taken from keeps changing. The views of the map (key sets, entry sets, values
+ * and sub-maps) are read-only.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class PersistentRoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V> {
+
+    private record Node<K, V>(K key, V value, Node<K, V> left, Node<K, V> right, int height, int size, long fingerprint) {
+
+        static <K, V> Node<K, V> of(K key, V value, Node<K, V> left, Node<K, V> right) {
+            return new Node<>(key, value, left, right, Math.max(height(left), height(right)) + 1,
+                    size(left) + size(right) + 1,
+                    fingerprint(left) + fingerprint(right) + VersionedMap.fingerprint(key, value));
+        }
+
+        static int height(Node<?, ?> node) {
+            return (node == null) ? 0 : node.height;
+        }
+
+        static int size(Node<?, ?> node) {
+            return (node == null) ? 0 : node.size;
+        }
+
+        static long fingerprint(Node<?, ?> node) {
+            return (node == null) ? 0 : node.fingerprint;
+        }
+    }
+
+    private Node<K, V> root;
+    private long version;
+    // Snapshots and the versions derived from them cannot be written
+    private final boolean frozen;
+    private final SortedView<K, V> view = new SortedView<>(new Store());
+
+    public PersistentRoamingMap() {
+        this(null, 0, false);
+    }
+
+    private PersistentRoamingMap(Node<K, V> root, long version, boolean frozen) {
+        this.root = root;
+        this.version = version;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Returns an immutable map with the current contents of this map, which later writes to this map
+     * do not affect. Costs O(1), since the snapshot shares the nodes of this map.
+     * @return the snapshot of this map
+     */
+    public PersistentRoamingMap<K, V> snapshot() {
+        return frozen ? this : new PersistentRoamingMap<>(root, version, true);
+    }
+
+    /**
+     * Returns a new writable map that starts with the contents of this map, in O(1)
+     * @return the new map
+     */
+    public PersistentRoamingMap<K, V> fork() {
+        return new PersistentRoamingMap<>(root, version, false);
+    }
+
+    /**
+     * Returns an immutable map with the contents of this map and the key mapped to the value, in O(log n)
+     * @param key the key
+     * @param value the value
+     * @return the new version of this map
+     * @throws NullPointerException if the key is null
+     */
+    public PersistentRoamingMap<K, V> with(K key, V value) {
+        Objects.requireNonNull(key);
+        return new PersistentRoamingMap<>(insert(root, key, value), version + 1, true);
+    }
+
+    /**
+     * Returns an immutable map with the contents of this map without the key, in O(log n)
+     * @param key the key
+     * @return the new version of this map, or its snapshot if the key is absent
+     * @throws NullPointerException if the key is null
+     */
+    public PersistentRoamingMap<K, V> without(K key) {
+        Objects.requireNonNull(key);
+        if (find(root, key) == null) {
+            return snapshot();
+        }
+        return new PersistentRoamingMap<>(delete(root, key), version + 1, true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Node<K, V> node = find(root, (K) Objects.requireNonNull(key));
+        return (node == null) ? null : node.value();
+    }
+
+    @Override
+    public int size() {
+        return Node.size(root);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        checkWritable();
+        Node<K, V> existing = find(root, key);
+        root = insert(root, key, value);
+        version++;
+        return (existing == null) ? null : existing.value();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        checkWritable();
+        Node<K, V> existing = find(root, (K) key);
+        if (existing == null) {
+            return null;
+        }
+        root = delete(root, (K) key);
+        version++;
+        return existing.value();
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        if (root != null) {
+            version++;
+        }
+        root = null;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public long fingerprint() {
+        return Node.fingerprint(root);
+    }
+
+    @Override
+    public RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        RangeSummary upper = (toKey == null) ? new RangeSummary(size(), fingerprint()) : below(toKey, toInclusive);
+        RangeSummary lower = (fromKey == null) ? RangeSummary.EMPTY : below(fromKey, !fromInclusive);
+        if (upper.size() <= lower.size()) {
+            return RangeSummary.EMPTY;
+        }
+        return new RangeSummary(upper.size() - lower.size(), upper.fingerprint() - lower.fingerprint());
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Snapshots cannot be modified");
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> find(Node<K, V> node, K key) {
+        while (node != null) {
+            int comparison = key.compareTo(node.key());
+            if (comparison == 0) {
+                return node;
+            }
+            node = (comparison < 0) ? node.left() : node.right();
+        }
+        return null;
+    }
+
+    // Returns the number and fingerprint of the entries below the key, including it if inclusive
+    private RangeSummary below(K key, boolean inclusive) {
+        int size = 0;
+        long fingerprint = 0;
+        for (Node<K, V> node = root; node != null; ) {
+            int comparison = key.compareTo(node.key());
+            if (comparison > 0 || (comparison == 0 && inclusive)) {
+                size += Node.size(node.left()) + 1;
+                fingerprint += Node.fingerprint(node.left()) + VersionedMap.fingerprint(node.key(), node.value());
+                node = (comparison == 0) ? null : node.right();
+            } else {
+                node = node.left();
+            }
+        }
+        return new RangeSummary(size, fingerprint);
+    }
+
+    // Returns the number of keys below the key, including it if inclusive
+    private int rank(K key, boolean inclusive) {
+        int rank = 0;
+        for (Node<K, V> node = root; node != null; ) {
+            int comparison = key.compareTo(node.key());
+            if (comparison > 0 || (comparison == 0 && inclusive)) {
+                rank += Node.size(node.left()) + 1;
+                node = (comparison == 0) ? null : node.right();
+            } else {
+                node = node.left();
+            }
+        }
+        return rank;
+    }
+
+    private Node<K, V> select(long rank) {
+        Node<K, V> node = root;
+        long remaining = rank;
+        while (true) {
+            int left = Node.size(node.left());
+            if (remaining < left) {
+                node = node.left();
+            } else if (remaining == left) {
+                return node;
+            } else {
+                remaining -= left + 1;
+                node = node.right();
+            }
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> insert(Node<K, V> node, K key, V value) {
+        if (node == null) {
+            return Node.of(key, value, null, null);
+        }
+        int comparison = key.compareTo(node.key());
+        if (comparison == 0) {
+            return Node.of(node.key(), value, node.left(), node.right());
+        }
+        if (comparison < 0) {
+            return balance(node.key(), node.value(), insert(node.left(), key, value), node.right());
+        }
+        return balance(node.key(), node.value(), node.left(), insert(node.right(), key, value));
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> delete(Node<K, V> node, K key) {
+        int comparison = key.compareTo(node.key());
+        if (comparison < 0) {
+            return balance(node.key(), node.value(), delete(node.left(), key), node.right());
+        }
+        if (comparison > 0) {
+            return balance(node.key(), node.value(), node.left(), delete(node.right(), key));
+        }
+        if (node.left() == null) {
+            return node.right();
+        }
+        if (node.right() == null) {
+            return node.left();
+        }
+        Node<K, V> successor = node.right();
+        while (successor.left() != null) {
+            successor = successor.left();
+        }
+        return balance(successor.key(), successor.value(), node.left(), delete(node.right(), successor.key()));
+    }
+
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int difference = Node.height(left) - Node.height(right);
+        if (difference > 1) {
+            if (Node.height(left.left()) < Node.height(left.right())) {
+                left = rotateLeft(left.key(), left.value(), left.left(), left.right());
+            }
+            return rotateRight(key, value, left, right);
+        }
+        if (difference < -1) {
+            if (Node.height(right.right()) < Node.height(right.left())) {
+                right = rotateRight(right.key(), right.value(), right.left(), right.right());
+            }
+            return rotateLeft(key, value, left, right);
+        }
+        return Node.of(key, value, left, right);
+    }
+
+    private static <K, V> Node<K, V> rotateRight(K key, V value, Node<K, V> left, Node<K, V> right) {
+        return Node.of(left.key(), left.value(), left.left(), Node.of(key, value, left.right(), right));
+    }
+
+    private static <K, V> Node<K, V> rotateLeft(K key, V value, Node<K, V> left, Node<K, V> right) {
+        return Node.of(right.key(), right.value(), Node.of(key, value, left, right.left()), right.right());
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return view.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return view.entrySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return view.values();
+    }
+
+    @Override
+    public String toString() {
+        return view.toString();
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return view.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return view.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return view.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return view.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return view.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return view.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return view.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return view.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return view.firstEntry();
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return view.lastEntry();
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        checkWritable();
+        return removed(view.firstEntry());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        checkWritable();
+        return removed(view.lastEntry());
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return view.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return view.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return view.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return view.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return view.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return view.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return view.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return view.headMap(toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return view.tailMap(fromKey);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public K firstKey() {
+        return view.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return view.lastKey();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        return find(root, (K) Objects.requireNonNull(key)) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return view.containsValue(value);
+    }
+
+    private Entry<K, V> removed(Entry<K, V> entry) {
+        if (entry != null) {
+            remove(entry.getKey());
+        }
+        return entry;
+    }
+
+    /**
+     * The ranks of the entries, for the views of the map
+     */
+    private final class Store implements SortedStore<K, V> {
+
+        @Override
+        public int size() {
+            return Node.size(root);
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public long find(K key) {
+            return (PersistentRoamingMap.find(root, key) == null) ? NONE : PersistentRoamingMap.this.rank(key, false);
+        }
+
+        @Override
+        public long first() {
+            return (root == null) ? NONE : 0;
+        }
+
+        @Override
+        public long last() {
+            return size() - 1;
+        }
+
+        @Override
+        public long next(long position) {
+            return (position + 1 < size()) ? position + 1 : NONE;
+        }
+
+        @Override
+        public long previous(long position) {
+            return position - 1;
+        }
+
+        @Override
+        public long ceiling(K key, boolean inclusive) {
+            int position = PersistentRoamingMap.this.rank(key, !inclusive);
+            return (position < size()) ? position : NONE;
+        }
+
+        @Override
+        public long floor(K key, boolean inclusive) {
+            return PersistentRoamingMap.this.rank(key, inclusive) - 1;
+        }
+
+        @Override
+        public K keyAt(long position) {
+            return PersistentRoamingMap.this.select(position).key();
+        }
+
+        @Override
+        public V valueAt(long position) {
+            return PersistentRoamingMap.this.select(position).value();
+        }
+
+        @Override
+        public long rank(long position) {
+            return position;
+        }
+
+        @Override
+        public long select(long rank) {
+            return rank;
+        }
+    }
+}
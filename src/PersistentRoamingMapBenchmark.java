@@ -0,0 +1,91 @@
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares the cost of taking a point-in-time view of a map: a TreeMap copy of a RoamingMap, as
+ * Barricade makes for maps it cannot snapshot, against a PersistentRoamingMap snapshot, alone and
+ * followed by the writes that path-copy the nodes shared with it. Also reports the time of puts
+ * and point lookups, which pay for the persistence.
+ * Run with: ant bench -Dbenchmark=PersistentRoamingMapBenchmark
+ */
+public class PersistentRoamingMapBenchmark {
+
+    private static final int SIZE = 1 << 16;
+    private static final int SNAPSHOTS = 1_000;
+    private static final int WRITES = 16;
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] keys = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = random.nextInt();
+        }
+        int[] probes = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = keys[random.nextInt(SIZE)];
+        }
+
+        RoamingMap<Integer, Integer> roaming = new RoamingMap<>();
+        PersistentRoamingMap<Integer, Integer> persistent = new PersistentRoamingMap<>();
+        for (int key : keys) {
+            roaming.put(key, key);
+            persistent.put(key, key);
+        }
+
+        BenchmarkSupport.run("snapshot / TreeMap copy", SNAPSHOTS, () -> {
+            long size = 0;
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                TreeMap<Integer, Integer> copy = new TreeMap<>();
+                copy.putAll(roaming);
+                size += copy.size();
+            }
+            return size;
+        });
+        BenchmarkSupport.run("snapshot / PersistentRoamingMap", SNAPSHOTS, () -> {
+            long size = 0;
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                size += persistent.snapshot().size();
+            }
+            return size;
+        });
+        BenchmarkSupport.run("snapshot + " + WRITES + " puts / PersistentRoamingMap", SNAPSHOTS, () -> {
+            long size = 0;
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                PersistentRoamingMap<Integer, Integer> snapshot = persistent.snapshot();
+                for (int j = 0; j < WRITES; j++) {
+                    snapshot = snapshot.with(probes[i * WRITES + j], j);
+                }
+                size += snapshot.size();
+            }
+            return size;
+        });
+
+        BenchmarkSupport.run("put / RoamingMap", LOOKUPS, () -> {
+            for (int probe : probes) {
+                roaming.put(probe, probe);
+            }
+            return roaming.size();
+        });
+        BenchmarkSupport.run("put / PersistentRoamingMap", LOOKUPS, () -> {
+            for (int probe : probes) {
+                persistent.put(probe, probe);
+            }
+            return persistent.size();
+        });
+        BenchmarkSupport.run("get / RoamingMap", LOOKUPS, () -> {
+            long sum = 0;
+            for (int probe : probes) {
+                sum += roaming.get(probe);
+            }
+            return sum;
+        });
+        BenchmarkSupport.run("get / PersistentRoamingMap", LOOKUPS, () -> {
+            long sum = 0;
+            for (int probe : probes) {
+                sum += persistent.get(probe);
+            }
+            return sum;
+        });
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+// Test class for PersistentRoamingMap
+public class PersistentRoamingMapTest {
+
+    private final Logger logger = Logger.getLogger(Barricade.class.getName());
+    private final LoggerTestingHandler handler = new LoggerTestingHandler();
+
+    @Before
+    public void setup() {
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void teardown() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    public void testMatchesTreeMap() {
+        PersistentRoamingMap<Integer, Integer> map = new PersistentRoamingMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        DifferentialTesting.randomWrites(new Random(23), 5_000, 4, 2_000, key -> key - 1_000, i -> i, expected, map);
+        assertEquals(expected, map);
+        assertEquals(expected.toString(), map.toString());
+        DifferentialTesting.assertNavigatesLike(expected, map, DifferentialTesting.probes(-1_010, 1_010, 7, Integer::valueOf));
+        assertEquals(RangeSummary.of(expected.subMap(-300, false, 250, true).entrySet()), map.rangeSummary(-300, false, 250, true));
+        assertEquals(RangeSummary.of(expected.headMap(0, false).entrySet()), map.rangeSummary(null, false, 0, false));
+        assertEquals(RangeSummary.EMPTY, map.rangeSummary(5, false, 5, false));
+        assertEquals(expected.firstEntry(), map.pollFirstEntry());
+        expected.pollFirstEntry();
+        assertEquals(RangeSummary.of(expected.entrySet()), new RangeSummary(map.size(), map.fingerprint()));
+    }
+
+    @Test
+    public void testSnapshotsAreUnaffectedByWrites() {
+        PersistentRoamingMap<String, Integer> map = new PersistentRoamingMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        PersistentRoamingMap<String, Integer> snapshot = map.snapshot();
+        PersistentRoamingMap<String, Integer> fork = map.fork();
+        map.put("a", 10);
+        map.remove("b");
+        map.put("c", 3);
+        fork.put("d", 4);
+
+        assertEquals("{a=1, b=2}", snapshot.toString());
+        assertEquals("{a=10, c=3}", map.toString());
+        assertEquals("{a=1, b=2, d=4}", fork.toString());
+        assertSame(snapshot, snapshot.snapshot());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.put("e", 5));
+        assertThrows(UnsupportedOperationException.class, snapshot::pollFirstEntry);
+
+        PersistentRoamingMap<String, Integer> next = snapshot.with("e", 5).without("a");
+        assertEquals("{b=2, e=5}", next.toString());
+        assertEquals("{a=1, b=2}", snapshot.toString());
+        assertThrows(UnsupportedOperationException.class, () -> next.remove("b"));
+    }
+
+    @Test
+    public void testIsVerifiedWithoutCopies() {
+        PersistentRoamingMap<Integer, String> map = new PersistentRoamingMap<>();
+        RoamingMap<Integer, String> expected = new RoamingMap<>();
+        Barricade.metrics().reset();
+        for (int key = 0; key < 1_000; key++) {
+            Barricade.safePut(map, key * 3, "v" + key);
+            expected.put(key * 3, "v" + key);
+        }
+        assertEquals(expected.fingerprint(), map.fingerprint());
+        assertEquals("v7", Barricade.safeValue(map, 21));
+        assertEquals(1_000, Barricade.correctSize(map));
+        assertEquals(Map.entry(21, "v7"), Barricade.safeFloorEntry(map, 23));
+        assertEquals(expected.subMap(30, true, 90, false).entrySet(), Barricade.safeSubMap(map, 30, true, 90, false).entrySet());
+        assertEquals(expected.toString(), Barricade.correctStringRepresentation(map));
+        for (BarricadeMetrics.OperationSnapshot operation : Barricade.metrics().snapshot().values()) {
+            assertEquals(0, operation.copiedEntries());
+        }
+        assertFalse("No warnings should be logged", handler.getLastLog().isPresent());
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * The number of entries and the fingerprint of the entries within a key range of a map.
+ * Barricade compares summaries to verify navigation and sub-map operations in time
+ * proportional to the range instead of the whole map.
+ * @param size the number of entries in the range
+ * @param fingerprint the sum of VersionedMap.fingerprint over the entries in the range
+ */
+public record RangeSummary(int size, long fingerprint) {
+
+    public static final RangeSummary EMPTY = new RangeSummary(0, 0);
+
+    /**
+     * Summarizes the given entries
+     * @param entries the entries of the range
+     * @return the summary of the entries
+     */
+    public static <K, V> RangeSummary of(Iterable<? extends Map.Entry<K, V>> entries) {
+        int size = 0;
+        long fingerprint = 0;
+        for (Map.Entry<K, V> entry : entries) {
+            size++;
+            fingerprint += VersionedMap.fingerprint(entry.getKey(), entry.getValue());
+        }
+        return new RangeSummary(size, fingerprint);
+    }
+
+    /**
+     * Returns the view of the map between the bounds, where a null bound leaves that side of the range open
+     * @param map the map
+     * @param fromKey the low end of the range, or null for no low end
+     * @param fromInclusive true if the low end is included in the range
+     * @param toKey the high end of the range, or null for no high end
+     * @param toInclusive true if the high end is included in the range
+     * @return the view of the map between the bounds
+     */
+    public static <K, V> NavigableMap<K, V> slice(NavigableMap<K, V> map, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey == null) {
+            return (toKey == null) ? map : map.headMap(toKey, toInclusive);
+        }
+        return (toKey == null) ? map.tailMap(fromKey, fromInclusive) : map.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+}
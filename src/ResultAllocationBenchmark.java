@@ -0,0 +1,52 @@
+/**
+ * Measures the bytes allocated per successful verified read through safeGet, which wraps every
+ * value in a StateRecoveryOptional, and through safeValue, which returns the value directly.
+ * The map is filled with cached Integer values so that boxing the keys and values allocates nothing.
+ * Run with: ant bench -Dbenchmark=ResultAllocationBenchmark
+ */
+public class ResultAllocationBenchmark {
+
+    private static final int SIZE = 100;
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        RoamingMap<Integer, Integer> map = new RoamingMap<>();
+        for (int i = 0; i < SIZE; i++) {
+            map.put(i, i + 1);
+        }
+        Integer[] keys = new Integer[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = i % SIZE;
+        }
+        Barricade.setVerificationPolicy(VerificationPolicy.always());
+
+        BenchmarkSupport.allocation("safeGet / verified", LOOKUPS, () -> {
+            long sum = 0;
+            for (Integer key : keys) {
+                sum += Barricade.safeGet(map, key).value();
+            }
+            return sum;
+        });
+        BenchmarkSupport.allocation("safeValue / verified", LOOKUPS, () -> {
+            long sum = 0;
+            for (Integer key : keys) {
+                sum += Barricade.safeValue(map, key);
+            }
+            return sum;
+        });
+        BenchmarkSupport.run("safeGet / verified", LOOKUPS, () -> {
+            long sum = 0;
+            for (Integer key : keys) {
+                sum += Barricade.safeGet(map, key).value();
+            }
+            return sum;
+        });
+        BenchmarkSupport.run("safeValue / verified", LOOKUPS, () -> {
+            long sum = 0;
+            for (Integer key : keys) {
+                sum += Barricade.safeValue(map, key);
+            }
+            return sum;
+        });
+    }
+}
@@ -1,12 +1,176 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 // RoamingMap应该实现NavigableMap而不是继承TreeMap
-public final class RoamingMap<K extends Comparable<K>, V> implements NavigableMap<K, V> {
+/**
+ * An ordered map with non-null keys that keeps track of its own modifications.
+ * Every change to the contents goes through the methods of this class, so the views
+ * it returns (key sets, entry sets, values and sub-maps) are read-only.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class RoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V> {
+
+    /**
+     * The structure that stores the entries of a RoamingMap
+     */
+    public enum Backend {
+        /**
+         * A TreeMap, a red-black tree with one node per entry
+         */
+        RED_BLACK_TREE,
+        /**
+         * A B+-tree with wide, array-based nodes and linked leaves, which keeps neighbouring entries
+         * next to each other in memory. Faster for range scans and smaller for large maps.
+         */
+        B_PLUS_TREE
+    }
+
+    /**
+     * A change of the contents of a RoamingMap. Every version of the map after the first is the
+     * result of exactly one change, so replaying the changes after a version onto a copy of the map
+     * at that version brings the copy up to date.
+     * @param version the version of the map right after the change
+     * @param kind the kind of change
+     * @param key the key that changed, null for a clear
+     * @param oldValue the value the key had before, null if it had none or for a clear
+     * @param newValue the value the key has after a put, null otherwise
+     */
+    public record Change<K, V>(long version, Kind kind, K key, V oldValue, V newValue) {
+
+        public enum Kind {
+            PUT,
+            REMOVE,
+            CLEAR
+        }
+
+        /**
+         * Applies the change to a copy of the map
+         * @param copy the copy
+         */
+        public void applyTo(Map<K, V> copy) {
+            switch (kind) {
+                case PUT -> copy.put(key, newValue);
+                case REMOVE -> copy.remove(key);
+                case CLEAR -> copy.clear();
+            }
+        }
+    }
+
     // 内部使用NavigableMap实现
     private final NavigableMap<K, V> map;
+    // Read-only view of the map; it caches its entry set, so entrySet() does not allocate
+    private final Map<K, V> view;
+
+    private long version;
+    private long fingerprint;
+
+    // The last changes, by version modulo the capacity; null until enableJournal is called
+    private Change<K, V>[] journal;
+    // The version at which the journal started, whose earlier changes were never recorded
+    private long journalStart;
+    private final List<Listener<K, V>> listeners = new CopyOnWriteArrayList<>();
 
     public RoamingMap() {
-        map = new TreeMap<>();
+        this(Backend.RED_BLACK_TREE);
+    }
+
+    /**
+     * Creates an empty map that stores its entries in the given backend
+     * @param backend the backend
+     * @throws NullPointerException if the backend is null
+     */
+    public RoamingMap(Backend backend) {
+        map = switch (Objects.requireNonNull(backend)) {
+            case RED_BLACK_TREE -> new TreeMap<>();
+            case B_PLUS_TREE -> new BPlusTreeMap<>();
+        };
+        // The views of a BPlusTreeMap are read-only already; wrapping them again would keep escape
+        // analysis from eliminating the entries they create while iterating
+        view = (map instanceof BPlusTreeMap) ? map : Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Creates an empty map on the B_PLUS_TREE backend that keeps the summaries of its values for the
+     * aggregator, so that aggregate answers with it in O(log n)
+     * @param aggregator the aggregator
+     * @throws NullPointerException if the aggregator is null
+     */
+    public RoamingMap(Aggregator<? super V, ?> aggregator) {
+        map = new BPlusTreeMap<>(aggregator);
+        view = map;
+    }
+
+    /**
+     * Creates a map from entries in strictly ascending key order, in time linear in their number
+     * instead of paying a logarithmic insertion per entry. The map counts as written once per entry.
+     * @param entries the entries, in strictly ascending key order
+     * @param backend the backend of the map
+     * @return the map
+     * @throws NullPointerException if the entries, the backend or any key is null
+     * @throws IllegalArgumentException if a key is not greater than the key before it
+     */
+    public static <K extends Comparable<K>, V> RoamingMap<K, V> fromSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries, Backend backend) {
+        Objects.requireNonNull(entries);
+        RoamingMap<K, V> map = new RoamingMap<>(backend);
+        SortedEntries<K, V> sorted = new SortedEntries<>();
+        while (entries.hasNext()) {
+            Map.Entry<? extends K, ? extends V> entry = entries.next();
+            if (!sorted.add(entry.getKey(), entry.getValue())) {
+                throw new IllegalArgumentException("Key " + entry.getKey() + " is not greater than the key before it");
+            }
+        }
+        map.load(sorted);
+        return map;
+    }
+
+    /**
+     * Creates a map like fromSorted, stored in a TreeMap
+     * @param entries the entries, in strictly ascending key order
+     * @return the map
+     * @throws NullPointerException if the entries or any key is null
+     * @throws IllegalArgumentException if a key is not greater than the key before it
+     */
+    public static <K extends Comparable<K>, V> RoamingMap<K, V> fromSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        return fromSorted(entries, Backend.RED_BLACK_TREE);
+    }
+
+    /**
+     * Copies the entries of the map, in linear time as long as they come in ascending key order and
+     * one at a time from the first entry that does not. Unlike TreeMap.putAll, which builds a sorted
+     * map in linear time as well, this trusts neither the size of the map nor the order of its
+     * entries, so it is safe for copying maps whose methods are being verified.
+     * @param map the map to copy
+     * @return the copy
+     */
+    static <K extends Comparable<K>, V> RoamingMap<K, V> copyOf(Map<K, V> map) {
+        RoamingMap<K, V> copy = new RoamingMap<>();
+        SortedEntries<K, V> sorted = new SortedEntries<>();
+        Iterator<Map.Entry<K, V>> entries = map.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<K, V> entry = entries.next();
+            if (!sorted.add(entry.getKey(), entry.getValue())) {
+                copy.load(sorted);
+                copy.put(entry.getKey(), entry.getValue());
+                entries.forEachRemaining(rest -> copy.put(rest.getKey(), rest.getValue()));
+                return copy;
+            }
+        }
+        copy.load(sorted);
+        return copy;
+    }
+
+    // Bulk loads the entries into the map, which must be empty
+    private void load(SortedEntries<K, V> sorted) {
+        map.putAll(new SortedView<>(sorted));
+        version += sorted.size();
+        fingerprint = sorted.fingerprint;
     }
 
     @Override
@@ -23,17 +187,40 @@ public final class RoamingMap<K extends Comparable<K>, V> implements NavigableMa
     @Override
     public V put(K key, V value) {
         Objects.requireNonNull(key);
-        return map.put(key, value);
+        int size = map.size();
+        V previous = map.put(key, value);
+        if (map.size() == size) {
+            fingerprint -= VersionedMap.fingerprint(key, previous);
+        }
+        fingerprint += VersionedMap.fingerprint(key, value);
+        version++;
+        changed(Change.Kind.PUT, key, previous, value);
+        return previous;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return RangeSummary.of(RangeSummary.slice(map, fromKey, fromInclusive, toKey, toInclusive).entrySet());
     }
 
     @Override
     public Set<K> keySet() {
-        return map.keySet();
+        return readOnly(map.navigableKeySet());
     }
 
     @Override
     public Set<Map.Entry<K, V>> entrySet() {
-        return map.entrySet();
+        return view.entrySet();
     }
 
     @Override
@@ -94,57 +281,57 @@ public final class RoamingMap<K extends Comparable<K>, V> implements NavigableMa
 
     @Override
     public Entry<K, V> pollFirstEntry() {
-        return map.pollFirstEntry();
+        return removed(map.pollFirstEntry());
     }
 
     @Override
     public Entry<K, V> pollLastEntry() {
-        return map.pollLastEntry();
+        return removed(map.pollLastEntry());
     }
 
     @Override
     public NavigableMap<K, V> descendingMap() {
-        return map.descendingMap();
+        return readOnly(map.descendingMap());
     }
 
     @Override
     public NavigableSet<K> navigableKeySet() {
-        return map.navigableKeySet();
+        return readOnly(map.navigableKeySet());
     }
 
     @Override
     public NavigableSet<K> descendingKeySet() {
-        return map.descendingKeySet();
+        return readOnly(map.descendingKeySet());
     }
 
     @Override
     public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
-        return map.subMap(fromKey, fromInclusive, toKey, toInclusive);
+        return readOnly(map.subMap(fromKey, fromInclusive, toKey, toInclusive));
     }
 
     @Override
     public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
-        return map.headMap(toKey, inclusive);
+        return readOnly(map.headMap(toKey, inclusive));
     }
 
     @Override
     public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
-        return map.tailMap(fromKey, inclusive);
+        return readOnly(map.tailMap(fromKey, inclusive));
     }
 
     @Override
     public SortedMap<K, V> subMap(K fromKey, K toKey) {
-        return map.subMap(fromKey, toKey);
+        return readOnly(map.subMap(fromKey, toKey));
     }
 
     @Override
     public SortedMap<K, V> headMap(K toKey) {
-        return map.headMap(toKey);
+        return readOnly(map.headMap(toKey));
     }
 
     @Override
     public SortedMap<K, V> tailMap(K fromKey) {
-        return map.tailMap(fromKey);
+        return readOnly(map.tailMap(fromKey));
     }
 
     @Override
@@ -179,21 +366,420 @@ public final class RoamingMap<K extends Comparable<K>, V> implements NavigableMa
 
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
-        map.putAll(m);
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public V remove(Object key) {
-        return map.remove(key);
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        version++;
+        V previous = map.remove(key);
+        fingerprint -= VersionedMap.fingerprint(key, previous);
+        changed(Change.Kind.REMOVE, (K) key, previous, null);
+        return previous;
     }
 
     @Override
     public void clear() {
+        if (map.isEmpty()) {
+            return;
+        }
+        version++;
         map.clear();
+        fingerprint = 0;
+        changed(Change.Kind.CLEAR, null, null, null);
     }
 
     @Override
     public Collection<V> values() {
-        return map.values();
-    }
-}
\ No newline at end of file
+        return Collections.unmodifiableCollection(map.values());
+    }
+
+    /**
+     * Aggregates the values of the keys between the bounds, where a null bound leaves that side of
+     * the range open. Takes O(log n) with the aggregator this map was created with, whose summaries
+     * it keeps, and iterates the range with any other aggregator.
+     * @param aggregator the aggregator
+     * @param fromKey the low bound of the range, or null
+     * @param fromInclusive whether the low bound belongs to the range
+     * @param toKey the high bound of the range, or null
+     * @param toInclusive whether the high bound belongs to the range
+     * @param <A> the type of summaries
+     * @return the summary of the values in the range
+     * @throws NullPointerException if the aggregator is null
+     * @throws IllegalArgumentException if fromKey is greater than toKey
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A aggregate(Aggregator<? super V, A> aggregator, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        Objects.requireNonNull(aggregator);
+        if (map instanceof BPlusTreeMap<K, V> tree && tree.aggregator() == aggregator) {
+            return (A) tree.aggregate(fromKey, fromInclusive, toKey, toInclusive);
+        }
+        A summary = aggregator.identity();
+        for (V value : RangeSummary.slice(map, fromKey, fromInclusive, toKey, toInclusive).values()) {
+            summary = aggregator.combine(summary, aggregator.lift(value));
+        }
+        return summary;
+    }
+
+    /**
+     * Aggregates the values of the keys from fromKey, inclusive, to toKey, exclusive, like
+     * {@link #aggregate(Aggregator, Object, boolean, Object, boolean)}
+     * @param aggregator the aggregator
+     * @param fromKey the low bound of the range, or null
+     * @param toKey the high bound of the range, or null
+     * @param <A> the type of summaries
+     * @return the summary of the values in the range
+     */
+    public <A> A aggregate(Aggregator<? super V, A> aggregator, K fromKey, K toKey) {
+        return aggregate(aggregator, fromKey, true, toKey, false);
+    }
+
+    /**
+     * Runs the action on every entry on the common fork-join pool, split into halves of equal size
+     * by rank. On the B_PLUS_TREE backend they are split in place, as they are for parallel streams
+     * over any of its views and sub-maps; on the RED_BLACK_TREE backend, whose nodes do not count
+     * the entries under them, the entries are first copied into arrays in one sequential pass. The
+     * map must not be written meanwhile.
+     * @param action the action, which may run on several threads at once
+     * @throws NullPointerException if the action is null
+     * @throws ConcurrentModificationException on the B_PLUS_TREE backend, if the map was written meanwhile
+     */
+    public void forEachParallel(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        StreamSupport.stream(ranked().entrySet().spliterator(), true).forEach(entry -> action.accept(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Aggregates all values on the common fork-join pool, splitting them like forEachParallel and
+     * combining the summaries of the parts in key order, so the aggregator need not be commutative.
+     * The map must not be written meanwhile.
+     * @param aggregator the aggregator, which may run on several threads at once
+     * @param <A> the type of summaries
+     * @return the summary of all values
+     * @throws NullPointerException if the aggregator is null
+     */
+    public <A> A reduceParallel(Aggregator<? super V, A> aggregator) {
+        Objects.requireNonNull(aggregator);
+        return StreamSupport.stream(ranked().values().spliterator(), true).map(aggregator::lift).reduce(aggregator.identity(), aggregator::combine);
+    }
+
+    /**
+     * Returns the entries as a SortedView over a store that finds the entry of a rank, whose
+     * spliterators split into halves of equal size. That is the map itself on the B_PLUS_TREE
+     * backend; TreeMap splits only along its root, so the entries of the RED_BLACK_TREE backend are
+     * copied into a SortedEntries, which finds them by indexing.
+     * @return the view
+     */
+    SortedView<K, V> ranked() {
+        if (map instanceof BPlusTreeMap<K, V> tree) {
+            return tree;
+        }
+        SortedEntries<K, V> copy = new SortedEntries<>(map.size());
+        for (Entry<K, V> entry : map.entrySet()) {
+            copy.add(entry.getKey(), entry.getValue());
+        }
+        return new SortedView<>(copy);
+    }
+
+    /**
+     * Returns the key with the given number of keys before it. Takes O(log n) on the B_PLUS_TREE
+     * backend, whose inner nodes count the entries under them, and iterates up to the key on the
+     * RED_BLACK_TREE backend.
+     * @param index the number of keys before the key, 0 for the first key
+     * @return the key
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the size
+     */
+    public K select(int index) {
+        if (map instanceof BPlusTreeMap<K, V> tree) {
+            return tree.select(index);
+        }
+        Iterator<K> keys = map.navigableKeySet().iterator();
+        for (int i = Objects.checkIndex(index, map.size()); i > 0; i--) {
+            keys.next();
+        }
+        return keys.next();
+    }
+
+    /**
+     * Returns the number of keys less than the key, which is the index of the key if it is present
+     * and where it would be put otherwise. Takes O(log n) on the B_PLUS_TREE backend, whose
+     * sub-map views also count their entries in O(log n), and iterates on the RED_BLACK_TREE
+     * backend.
+     * @param key the key
+     * @return the number of keys less than the key
+     * @throws NullPointerException if the key is null
+     */
+    public int rank(K key) {
+        Objects.requireNonNull(key);
+        if (map instanceof BPlusTreeMap<K, V> tree) {
+            return tree.rank(key);
+        }
+        return map.headMap(key, false).size();
+    }
+
+    /**
+     * Starts recording the last changes of this map, so that copies of it can catch up through
+     * changesSince. Changes made before the journal was enabled are not recorded.
+     * @param capacity the number of changes to keep; older ones are overwritten
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public void enableJournal(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Journal capacity must be positive: " + capacity);
+        }
+        journal = (Change<K, V>[]) new Change<?, ?>[capacity];
+        journalStart = version;
+    }
+
+    /**
+     * Returns the changes made after the version, oldest first, in time proportional to their number
+     * @param since a version this map had
+     * @return the changes that turned the map at that version into its current contents, or an empty
+     *         optional if the journal no longer holds all of them, in which case the whole map has to
+     *         be read again
+     * @throws IllegalArgumentException if the version is newer than the current one
+     */
+    public Optional<List<Change<K, V>>> changesSince(long since) {
+        if (since > version) {
+            throw new IllegalArgumentException("Version " + since + " is newer than the current version " + version);
+        }
+        if (since == version) {
+            return Optional.of(List.of());
+        }
+        if (journal == null || since < journalStart || version - since > journal.length) {
+            return Optional.empty();
+        }
+        List<Change<K, V>> changes = new ArrayList<>((int) (version - since));
+        for (long next = since + 1; next <= version; next++) {
+            changes.add(journal[(int) (next % journal.length)]);
+        }
+        return Optional.of(changes);
+    }
+
+    /**
+     * Calls the listener with every change of this map, on the thread that made the change, before
+     * the method that made it returns
+     * @param listener the listener
+     */
+    public void addListener(Consumer<? super Change<K, V>> listener) {
+        listeners.add(new Listener<>(Objects.requireNonNull(listener), listener));
+    }
+
+    /**
+     * Calls the listener with every change of this map through the executor, one change at a time
+     * and in the order of the changes, so that slow listeners do not delay writes
+     * @param listener the listener
+     * @param executor the executor that runs the listener
+     */
+    public void addListener(Consumer<? super Change<K, V>> listener, Executor executor) {
+        listeners.add(new Listener<>(Objects.requireNonNull(listener), new AsyncDelivery<>(listener, Objects.requireNonNull(executor))));
+    }
+
+    /**
+     * Stops calling the listener; asynchronous deliveries already handed to the executor still run
+     * @param listener the listener
+     */
+    public void removeListener(Consumer<? super Change<K, V>> listener) {
+        listeners.removeIf(registered -> registered.listener() == listener);
+    }
+
+    private void changed(Change.Kind kind, K key, V oldValue, V newValue) {
+        if (journal == null && listeners.isEmpty()) {
+            return;
+        }
+        Change<K, V> change = new Change<>(version, kind, key, oldValue, newValue);
+        if (journal != null) {
+            journal[(int) (version % journal.length)] = change;
+        }
+        for (Listener<K, V> listener : listeners) {
+            listener.delivery().accept(change);
+        }
+    }
+
+    private record Listener<K, V>(Consumer<? super Change<K, V>> listener, Consumer<? super Change<K, V>> delivery) {
+    }
+
+    /**
+     * Hands changes to an executor one at a time, so that the listener sees them in order even
+     * when the executor runs tasks on several threads
+     */
+    private static final class AsyncDelivery<K, V> implements Consumer<Change<K, V>> {
+        private final Consumer<? super Change<K, V>> listener;
+        private final Executor executor;
+        private final Queue<Change<K, V>> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        AsyncDelivery(Consumer<? super Change<K, V>> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        @Override
+        public void accept(Change<K, V> change) {
+            pending.add(change);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Change<K, V> change;
+                while ((change = pending.poll()) != null) {
+                    listener.accept(change);
+                }
+            } finally {
+                scheduled.set(false);
+                // A change may have been added after the queue looked empty but before the flag was reset
+                schedule();
+            }
+        }
+    }
+
+    private NavigableMap<K, V> readOnly(NavigableMap<K, V> view) {
+        return (map instanceof BPlusTreeMap) ? view : Collections.unmodifiableNavigableMap(view);
+    }
+
+    private SortedMap<K, V> readOnly(SortedMap<K, V> view) {
+        return (map instanceof BPlusTreeMap) ? view : Collections.unmodifiableSortedMap(view);
+    }
+
+    private NavigableSet<K> readOnly(NavigableSet<K> view) {
+        return (map instanceof BPlusTreeMap) ? view : Collections.unmodifiableNavigableSet(view);
+    }
+
+    private Entry<K, V> removed(Entry<K, V> entry) {
+        if (entry != null) {
+            version++;
+            fingerprint -= VersionedMap.fingerprint(entry.getKey(), entry.getValue());
+            changed(Change.Kind.REMOVE, entry.getKey(), entry.getValue(), null);
+        }
+        return entry;
+    }
+
+    /**
+     * Entries collected in ascending key order, served as a SortedStore so that the backends can
+     * bulk load them through putAll of a SortedMap
+     */
+    private static final class SortedEntries<K extends Comparable<K>, V> implements SortedStore<K, V> {
+        private Object[] keys;
+        private Object[] values;
+        private int size;
+        private long fingerprint;
+
+        SortedEntries() {
+            this(16);
+        }
+
+        // Creates the buffer with room for the given number of entries before it grows
+        SortedEntries(int capacity) {
+            keys = new Object[Math.max(capacity, 1)];
+            values = new Object[keys.length];
+        }
+
+        // Appends the entry and returns true, or returns false if its key is not greater than the last one
+        @SuppressWarnings("unchecked")
+        boolean add(K key, V value) {
+            Objects.requireNonNull(key);
+            if (size > 0 && ((K) keys[size - 1]).compareTo(key) >= 0) {
+                return false;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            fingerprint += VersionedMap.fingerprint(key, value);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int search(K key) {
+            return Arrays.binarySearch(keys, 0, size, key, (a, b) -> ((K) a).compareTo((K) b));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long version() {
+            return 0;
+        }
+
+        @Override
+        public long find(K key) {
+            int index = search(key);
+            return (index >= 0) ? index : NONE;
+        }
+
+        @Override
+        public long first() {
+            return (size == 0) ? NONE : 0;
+        }
+
+        @Override
+        public long last() {
+            return size - 1;
+        }
+
+        @Override
+        public long next(long position) {
+            return (position + 1 < size) ? position + 1 : NONE;
+        }
+
+        @Override
+        public long previous(long position) {
+            return position - 1;
+        }
+
+        @Override
+        public long ceiling(K key, boolean inclusive) {
+            int index = search(key);
+            long position = (index >= 0) ? (inclusive ? index : index + 1) : -index - 1;
+            return (position < size) ? position : NONE;
+        }
+
+        @Override
+        public long floor(K key, boolean inclusive) {
+            int index = search(key);
+            return (index >= 0) ? (inclusive ? index : index - 1) : -index - 2;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K keyAt(long position) {
+            return (K) keys[(int) position];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V valueAt(long position) {
+            return (V) values[(int) position];
+        }
+
+        @Override
+        public long rank(long position) {
+            return position;
+        }
+
+        @Override
+        public long select(long rank) {
+            return rank;
+        }
+    }
+}
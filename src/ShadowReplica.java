@@ -0,0 +1,117 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A long-lived replica of a guarded VersionedMap that Barricade keeps up to date with every
+ * successful safe write. The replica answers the expected values, sizes and string representations
+ * without copying the guarded map and without trusting any of its methods.
+ * <p>
+ * Replicas are registered per map, by identity, and are released when the map is garbage collected.
+ * If the fingerprint of the map no longer matches the replica, the map was written outside of
+ * Barricade. A RoamingMap with a journal is caught up by replaying its changes since the last
+ * synchronization; any other map, or one whose journal overflowed, is copied again.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+final class ShadowReplica<K extends Comparable<K>, V> {
+
+    private static final Map<IdentityReference, ShadowReplica<?, ?>> replicas = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    private RoamingMap<K, V> entries;
+    private long fingerprint;
+    // The version of the map the replica was last synchronized with
+    private long version;
+
+    private ShadowReplica(VersionedMap<K, V> map) {
+        resync(map);
+    }
+
+    /**
+     * Starts replicating the map, replacing any replica it already had
+     * @param map the map to replicate
+     */
+    static <K extends Comparable<K>, V> void register(VersionedMap<K, V> map) {
+        expungeCollected();
+        replicas.put(new IdentityReference(Objects.requireNonNull(map), collected), new ShadowReplica<>(map));
+    }
+
+    /**
+     * Stops replicating the map
+     * @param map the map to stop replicating
+     */
+    static void unregister(NavigableMap<?, ?> map) {
+        replicas.remove(new IdentityReference(map, null));
+        expungeCollected();
+    }
+
+    /**
+     * Returns the replica of the map
+     * @param map the map
+     * @return the replica of the map, or null if the map is not replicated
+     */
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<K>, V> ShadowReplica<K, V> of(NavigableMap<K, V> map) {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        return (ShadowReplica<K, V>) replicas.get(new IdentityReference(map, null));
+    }
+
+    private static void expungeCollected() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            replicas.remove(reference);
+        }
+    }
+
+    /**
+     * Rebuilds the replica from the map if the map was written outside of Barricade
+     * @param map the replicated map
+     * @return the number of entries copied from the map, 0 if the replica was up to date
+     */
+    synchronized int synchronize(VersionedMap<K, V> map) {
+        if (map.fingerprint() == fingerprint && map.entrySet().size() == entries.size()) {
+            version = map.version();
+            return 0;
+        }
+        if (map instanceof RoamingMap<K, V> roaming) {
+            Optional<List<RoamingMap.Change<K, V>>> changes = roaming.changesSince(version);
+            if (changes.isPresent()) {
+                changes.get().forEach(change -> change.applyTo(entries));
+                fingerprint = entries.fingerprint();
+                if (map.fingerprint() == fingerprint && map.entrySet().size() == entries.size()) {
+                    version = map.version();
+                    return changes.get().size();
+                }
+            }
+        }
+        return resync(map);
+    }
+
+    private int resync(VersionedMap<K, V> map) {
+        entries = RoamingMap.copyOf(map);
+        fingerprint = map.fingerprint();
+        version = map.version();
+        return entries.size();
+    }
+
+    NavigableMap<K, V> entries() {
+        return Collections.unmodifiableNavigableMap(entries);
+    }
+
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    void put(K key, V value) {
+        int size = entries.size();
+        V previous = entries.put(key, value);
+        if (entries.size() == size) {
+            fingerprint -= VersionedMap.fingerprint(key, previous);
+        }
+        fingerprint += VersionedMap.fingerprint(key, value);
+    }
+}
@@ -0,0 +1,917 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * An ordered map with non-null keys for many threads writing to different key ranges at once, such
+ * as different rows of a matrix. The key space is partitioned into ranges, each held by a RoamingMap
+ * on the B+-tree backend behind a read-write lock of its own, so every get, put and remove locks a
+ * single shard and writers to different ranges never wait for each other.
+ * <p>
+ * The map rebalances its ranges as it grows: a shard that holds more than twice its share of the
+ * entries is split at its median key, which the B+-tree finds in O(log n), and once the map has its
+ * maximum number of shards, the two adjacent shards with the fewest entries are merged to make
+ * room. Only the shards involved are locked meanwhile; an operation that finds its shard replaced
+ * retries on the new layout. Shards are not merged when entries are removed.
+ * <p>
+ * Navigation, views and iteration cross shard boundaries and lock one shard at a time. Views are
+ * live and read-only, and their iterators are weakly consistent, like those of ConcurrentRoamingMap:
+ * they read the entries in chunks, never throw ConcurrentModificationException, and reflect some
+ * state of each shard at or since their creation. The version and fingerprint are summed over the
+ * shards, so they only match the contents while no write is in progress.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class ShardedRoamingMap<K extends Comparable<K>, V> implements VersionedMap<K, V> {
+
+    // Shards smaller than this are never split, so that small maps stay in a few shards
+    private static final int MINIMUM_SPLIT_SIZE = 1 << 12;
+    // The number of entries iterators read from a shard while holding its lock
+    private static final int CHUNK = 256;
+
+    private static final class Shard<K extends Comparable<K>, V> {
+        final RoamingMap<K, V> map;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long startVersion;
+        // Writes to the shards this one replaced, so that the version of the map never goes back
+        private final long carried;
+        // Set under the write lock once a rebalance replaced the shard
+        boolean retired;
+
+        Shard(RoamingMap<K, V> map, long carried) {
+            this.map = map;
+            this.startVersion = map.version();
+            this.carried = carried;
+        }
+
+        long writes() {
+            return map.version() - startVersion + carried;
+        }
+    }
+
+    /**
+     * The shards in key order: shard i holds the keys from bounds[i - 1], inclusive, up to
+     * bounds[i], exclusive. A rebalance replaces the whole layout.
+     */
+    private record Layout<K extends Comparable<K>, V>(List<Shard<K, V>> shards, List<K> bounds, long splitSize) {
+
+        int shardOf(K key) {
+            int index = Collections.binarySearch(bounds, key);
+            return (index >= 0) ? index + 1 : -index - 1;
+        }
+    }
+
+    private final int maximumShards;
+    private volatile Layout<K, V> layout;
+    // Held by rebalances, clear and polls, which lock several shards at once
+    private final Object rebalancing = new Object();
+    private final View all = new View(true, null, false, true, null, false, false);
+
+    /**
+     * Creates an empty map that starts with one shard and splits it as it grows, unless the maximum
+     * is one shard, which then holds every entry
+     * @param maximumShards the maximum number of shards
+     * @throws IllegalArgumentException if the maximum number of shards is not positive
+     */
+    public ShardedRoamingMap(int maximumShards) {
+        this(maximumShards, List.of());
+    }
+
+    /**
+     * Creates an empty map whose shards start at the given keys, such as the first cells of the
+     * rows that different threads will fill. The map still rebalances the shards as it grows.
+     * @param maximumShards the maximum number of shards
+     * @param bounds the lowest keys of every shard but the first, in strictly ascending order
+     * @throws IllegalArgumentException if the maximum number of shards is not positive or less
+     * than the number of shards, or if the bounds are not in strictly ascending order
+     * @throws NullPointerException if a bound is null
+     */
+    public ShardedRoamingMap(int maximumShards, List<? extends K> bounds) {
+        if (maximumShards <= 0 || bounds.size() >= maximumShards) {
+            throw new IllegalArgumentException("Invalid maximum of " + maximumShards + " shards for " + (bounds.size() + 1) + " shards");
+        }
+        for (int i = 1; i < bounds.size(); i++) {
+            if (bounds.get(i - 1).compareTo(bounds.get(i)) >= 0) {
+                throw new IllegalArgumentException("Bound " + bounds.get(i) + " is not greater than the bound before it");
+            }
+        }
+        this.maximumShards = maximumShards;
+        List<Shard<K, V>> shards = new ArrayList<>();
+        for (int i = 0; i <= bounds.size(); i++) {
+            shards.add(new Shard<>(new RoamingMap<K, V>(RoamingMap.Backend.B_PLUS_TREE), 0));
+        }
+        // A single shard could only be split by merging it right back, so it never is
+        layout = new Layout<>(List.copyOf(shards), List.copyOf(bounds), (maximumShards == 1) ? Long.MAX_VALUE : MINIMUM_SPLIT_SIZE);
+    }
+
+    /**
+     * Returns the current number of shards
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return layout.shards().size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        for (;;) {
+            Shard<K, V> shard = shardOf(k);
+            shard.lock.readLock().lock();
+            try {
+                if (!shard.retired) {
+                    return shard.map.get(k);
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        for (;;) {
+            Shard<K, V> shard = shardOf(k);
+            shard.lock.readLock().lock();
+            try {
+                if (!shard.retired) {
+                    return shard.map.containsKey(k);
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        for (;;) {
+            Layout<K, V> current = layout;
+            Shard<K, V> shard = current.shards().get(current.shardOf(key));
+            V previous;
+            boolean overfull;
+            shard.lock.writeLock().lock();
+            try {
+                if (shard.retired) {
+                    continue;
+                }
+                previous = shard.map.put(key, value);
+                overfull = shard.map.size() > current.splitSize();
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+            if (overfull) {
+                rebalance(shard);
+            }
+            return previous;
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        for (;;) {
+            Shard<K, V> shard = shardOf(k);
+            shard.lock.writeLock().lock();
+            try {
+                if (!shard.retired) {
+                    return shard.map.remove(k);
+                }
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return poll(true);
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return poll(false);
+    }
+
+    private Entry<K, V> poll(boolean first) {
+        synchronized (rebalancing) {
+            List<Shard<K, V>> shards = layout.shards();
+            for (int i = 0; i < shards.size(); i++) {
+                Shard<K, V> shard = shards.get(first ? i : shards.size() - 1 - i);
+                shard.lock.writeLock().lock();
+                try {
+                    Entry<K, V> entry = first ? shard.map.pollFirstEntry() : shard.map.pollLastEntry();
+                    if (entry != null) {
+                        return entry;
+                    }
+                } finally {
+                    shard.lock.writeLock().unlock();
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (rebalancing) {
+            for (Shard<K, V> shard : layout.shards()) {
+                shard.lock.writeLock().lock();
+                try {
+                    shard.map.clear();
+                } finally {
+                    shard.lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private Shard<K, V> shardOf(K key) {
+        Layout<K, V> current = layout;
+        return current.shards().get(current.shardOf(key));
+    }
+
+    // Splits the shard at its median key if it is still too large, and merges the two smallest
+    // adjacent shards if that makes one shard too many
+    private void rebalance(Shard<K, V> overfull) {
+        synchronized (rebalancing) {
+            Layout<K, V> current = layout;
+            int index = current.shards().indexOf(overfull);
+            if (index < 0) {
+                return;
+            }
+            List<Shard<K, V>> shards = new ArrayList<>(current.shards());
+            List<K> bounds = new ArrayList<>(current.bounds());
+            List<Shard<K, V>> replaced = new ArrayList<>();
+            try {
+                lock(overfull, replaced);
+                if (overfull.map.size() <= current.splitSize()) {
+                    return;
+                }
+                K median = overfull.map.select(overfull.map.size() / 2);
+                Shard<K, V> lower = new Shard<>(RoamingMap.fromSorted(overfull.map.headMap(median, false).entrySet().iterator(),
+                        RoamingMap.Backend.B_PLUS_TREE), overfull.writes());
+                Shard<K, V> upper = new Shard<>(RoamingMap.fromSorted(overfull.map.tailMap(median, true).entrySet().iterator(),
+                        RoamingMap.Backend.B_PLUS_TREE), 0);
+                shards.set(index, lower);
+                shards.add(index + 1, upper);
+                bounds.add(index, median);
+
+                if (shards.size() > maximumShards) {
+                    int pair = -1;
+                    long smallest = Long.MAX_VALUE;
+                    for (int i = 0; i + 1 < shards.size(); i++) {
+                        long size = (long) shards.get(i).map.size() + shards.get(i + 1).map.size();
+                        if (i != index && size < smallest) {
+                            pair = i;
+                            smallest = size;
+                        }
+                    }
+                    Shard<K, V> left = shards.get(pair);
+                    Shard<K, V> right = shards.get(pair + 1);
+                    long carried = 0;
+                    for (Shard<K, V> shard : List.of(left, right)) {
+                        if (current.shards().contains(shard)) {
+                            lock(shard, replaced);
+                        }
+                        carried += shard.writes();
+                    }
+                    Shard<K, V> merged = new Shard<>(RoamingMap.fromSorted(
+                            Stream.concat(left.map.entrySet().stream(), right.map.entrySet().stream()).iterator(),
+                            RoamingMap.Backend.B_PLUS_TREE), carried);
+                    shards.set(pair, merged);
+                    shards.remove(pair + 1);
+                    bounds.remove(pair);
+                }
+
+                long size = 0;
+                for (Shard<K, V> shard : shards) {
+                    size += shard.map.size();
+                }
+                long splitSize = Math.max(MINIMUM_SPLIT_SIZE, 2 * size / maximumShards);
+                layout = new Layout<>(List.copyOf(shards), List.copyOf(bounds), splitSize);
+                for (Shard<K, V> shard : replaced) {
+                    shard.retired = true;
+                }
+            } finally {
+                for (Shard<K, V> shard : replaced) {
+                    shard.lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private static <K extends Comparable<K>, V> void lock(Shard<K, V> shard, List<Shard<K, V>> locked) {
+        shard.lock.writeLock().lock();
+        locked.add(shard);
+    }
+
+    // Sums the function over the shards of one layout, each under its read lock
+    private long sum(ToLongFunction<Shard<K, V>> function) {
+        retry:
+        for (;;) {
+            long sum = 0;
+            for (Shard<K, V> shard : layout.shards()) {
+                shard.lock.readLock().lock();
+                try {
+                    if (shard.retired) {
+                        continue retry;
+                    }
+                    sum += function.applyAsLong(shard);
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            return sum;
+        }
+    }
+
+    // Adds up to limit entries to the list in ascending or descending order, starting beyond the
+    // key, or at it if inclusive, or at the first entry in that order if the key is null
+    private void collect(K key, boolean inclusive, boolean ascending, int limit, List<Entry<K, V>> into) {
+        retry:
+        for (;;) {
+            Layout<K, V> current = layout;
+            List<Shard<K, V>> shards = current.shards();
+            int start = (key != null) ? current.shardOf(key) : ascending ? 0 : shards.size() - 1;
+            for (int index = start; index >= 0 && index < shards.size(); index += ascending ? 1 : -1) {
+                Shard<K, V> shard = shards.get(index);
+                shard.lock.readLock().lock();
+                try {
+                    if (shard.retired) {
+                        if (!into.isEmpty()) {
+                            key = into.get(into.size() - 1).getKey();
+                            inclusive = false;
+                        }
+                        continue retry;
+                    }
+                    NavigableMap<K, V> part = shard.map;
+                    if (key != null && index == start) {
+                        part = ascending ? part.tailMap(key, inclusive) : part.headMap(key, inclusive);
+                    }
+                    for (Entry<K, V> entry : (ascending ? part : part.descendingMap()).entrySet()) {
+                        into.add(entry);
+                        if (into.size() == limit) {
+                            return;
+                        }
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            return;
+        }
+    }
+
+    private Entry<K, V> next(K key, boolean inclusive, boolean ascending) {
+        List<Entry<K, V>> found = new ArrayList<>(1);
+        collect(key, inclusive, ascending, 1, found);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    @Override
+    public int size() {
+        return (int) sum(shard -> shard.map.size());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return all.isEmpty();
+    }
+
+    @Override
+    public long version() {
+        return sum(Shard::writes);
+    }
+
+    @Override
+    public long fingerprint() {
+        return sum(shard -> shard.map.fingerprint());
+    }
+
+    @Override
+    public RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        int size = (int) sum(shard -> shard.map.rangeSummary(fromKey, fromInclusive, toKey, toInclusive).size());
+        long fingerprint = sum(shard -> shard.map.rangeSummary(fromKey, fromInclusive, toKey, toInclusive).fingerprint());
+        return new RangeSummary(size, fingerprint);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return all.containsValue(value);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return all.navigableKeySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return all.values();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return all.entrySet();
+    }
+
+    @Override
+    public String toString() {
+        return all.toString();
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return all.lowerKey(key);
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return all.floorKey(key);
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return all.ceilingKey(key);
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return all.higherKey(key);
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return all.firstEntry();
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return all.lastEntry();
+    }
+
+    @Override
+    public K firstKey() {
+        return all.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return all.lastKey();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return all.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return all.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return all.headMap(toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return all.tailMap(fromKey);
+    }
+
+    /**
+     * A read-only view of the entries between two optional bounds across all shards, in ascending
+     * or descending order. Like in SortedView, bounds are kept in ascending terms and the order
+     * only decides which way navigation goes.
+     */
+    private final class View extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+        private final boolean fromStart;
+        private final K low;
+        private final boolean lowInclusive;
+        private final boolean toEnd;
+        private final K high;
+        private final boolean highInclusive;
+        private final boolean descending;
+
+        View(boolean fromStart, K low, boolean lowInclusive, boolean toEnd, K high, boolean highInclusive, boolean descending) {
+            this.fromStart = fromStart;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.toEnd = toEnd;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (fromStart) {
+                return false;
+            }
+            int comparison = key.compareTo(low);
+            return comparison < 0 || (comparison == 0 && !lowInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (toEnd) {
+                return false;
+            }
+            int comparison = key.compareTo(high);
+            return comparison > 0 || (comparison == 0 && !highInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private boolean inClosedRange(K key) {
+            return (fromStart || key.compareTo(low) >= 0) && (toEnd || key.compareTo(high) <= 0);
+        }
+
+        private Entry<K, V> lowest() {
+            Entry<K, V> entry = fromStart ? next(null, true, true) : next(low, lowInclusive, true);
+            return (entry == null || tooHigh(entry.getKey())) ? null : entry;
+        }
+
+        private Entry<K, V> highest() {
+            Entry<K, V> entry = toEnd ? next(null, true, false) : next(high, highInclusive, false);
+            return (entry == null || tooLow(entry.getKey())) ? null : entry;
+        }
+
+        private Entry<K, V> ceiling(K key, boolean inclusive) {
+            Objects.requireNonNull(key);
+            if (tooLow(key)) {
+                return lowest();
+            }
+            Entry<K, V> entry = next(key, inclusive, true);
+            return (entry == null || tooHigh(entry.getKey())) ? null : entry;
+        }
+
+        private Entry<K, V> floor(K key, boolean inclusive) {
+            Objects.requireNonNull(key);
+            if (tooHigh(key)) {
+                return highest();
+            }
+            Entry<K, V> entry = next(key, inclusive, false);
+            return (entry == null || tooLow(entry.getKey())) ? null : entry;
+        }
+
+        private Entry<K, V> first() {
+            return descending ? highest() : lowest();
+        }
+
+        private Entry<K, V> last() {
+            return descending ? lowest() : highest();
+        }
+
+        private K key(Entry<K, V> entry) {
+            return (entry == null) ? null : entry.getKey();
+        }
+
+        private void checkBound(K key, boolean inclusive) {
+            Objects.requireNonNull(key);
+            if (inclusive ? !inRange(key) : !inClosedRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        private View bounded(boolean newFromStart, K newLow, boolean newLowInclusive,
+                             boolean newToEnd, K newHigh, boolean newHighInclusive) {
+            return new View(newFromStart, newLow, newLowInclusive, newToEnd, newHigh, newHighInclusive, descending);
+        }
+
+        private View withLow(K key, boolean inclusive) {
+            checkBound(key, inclusive);
+            return bounded(false, key, inclusive, toEnd, high, highInclusive);
+        }
+
+        private View withHigh(K key, boolean inclusive) {
+            checkBound(key, inclusive);
+            return bounded(fromStart, low, lowInclusive, false, key, inclusive);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            return inRange((K) Objects.requireNonNull(key)) ? ShardedRoamingMap.this.get(key) : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean containsKey(Object key) {
+            return inRange((K) Objects.requireNonNull(key)) && ShardedRoamingMap.this.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            if (fromStart && toEnd) {
+                return ShardedRoamingMap.this.size();
+            }
+            // Sub-map sizes of the B+-tree take O(log n) per shard
+            return (int) sum(shard -> RangeSummary.slice(shard.map, fromStart ? null : low, lowInclusive, toEnd ? null : high, highInclusive).size());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public V remove(Object key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Chunks();
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry<?, ?> e) || e.getKey() == null) {
+                        return false;
+                    }
+                    try {
+                        return View.this.containsKey(e.getKey()) && Objects.equals(View.this.get(e.getKey()), e.getValue());
+                    } catch (ClassCastException wrongType) {
+                        return false;
+                    }
+                }
+            };
+        }
+
+        /**
+         * Iterates the view in chunks of entries read from one shard at a time, each chunk
+         * starting after the last key of the one before
+         */
+        private final class Chunks implements Iterator<Entry<K, V>> {
+            private final List<Entry<K, V>> chunk = new ArrayList<>(CHUNK);
+            private int index;
+            private boolean exhausted;
+
+            Chunks() {
+                if (descending) {
+                    fill(toEnd ? null : high, highInclusive);
+                } else {
+                    fill(fromStart ? null : low, lowInclusive);
+                }
+            }
+
+            private void fill(K key, boolean inclusive) {
+                chunk.clear();
+                index = 0;
+                collect(key, inclusive, !descending, CHUNK, chunk);
+                exhausted = chunk.size() < CHUNK;
+                for (int i = 0; i < chunk.size(); i++) {
+                    K found = chunk.get(i).getKey();
+                    if (descending ? tooLow(found) : tooHigh(found)) {
+                        chunk.subList(i, chunk.size()).clear();
+                        exhausted = true;
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (index == chunk.size() && !exhausted) {
+                    fill(chunk.get(chunk.size() - 1).getKey(), false);
+                }
+                return index < chunk.size();
+            }
+
+            @Override
+            public Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.get(index++);
+            }
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public Entry<K, V> lowerEntry(K key) {
+            return descending ? ceiling(key, false) : floor(key, false);
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return key(lowerEntry(key));
+        }
+
+        @Override
+        public Entry<K, V> floorEntry(K key) {
+            return descending ? ceiling(key, true) : floor(key, true);
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return key(floorEntry(key));
+        }
+
+        @Override
+        public Entry<K, V> ceilingEntry(K key) {
+            return descending ? floor(key, true) : ceiling(key, true);
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return key(ceilingEntry(key));
+        }
+
+        @Override
+        public Entry<K, V> higherEntry(K key) {
+            return descending ? floor(key, false) : ceiling(key, false);
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return key(higherEntry(key));
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return first();
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return last();
+        }
+
+        @Override
+        public K firstKey() {
+            Entry<K, V> entry = first();
+            if (entry == null) {
+                throw new NoSuchElementException();
+            }
+            return entry.getKey();
+        }
+
+        @Override
+        public K lastKey() {
+            Entry<K, V> entry = last();
+            if (entry == null) {
+                throw new NoSuchElementException();
+            }
+            return entry.getKey();
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new View(fromStart, low, lowInclusive, toEnd, high, highInclusive, !descending);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new NavigableKeySet<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new NavigableKeySet<>(descendingMap());
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            K newLow = descending ? toKey : fromKey;
+            boolean newLowInclusive = descending ? toInclusive : fromInclusive;
+            K newHigh = descending ? fromKey : toKey;
+            boolean newHighInclusive = descending ? fromInclusive : toInclusive;
+            if (newLow.compareTo(newHigh) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            checkBound(newLow, newLowInclusive);
+            checkBound(newHigh, newHighInclusive);
+            return bounded(false, newLow, newLowInclusive, false, newHigh, newHighInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            return descending ? withLow(toKey, inclusive) : withHigh(toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            return descending ? withHigh(fromKey, inclusive) : withLow(fromKey, inclusive);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder() : null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.NavigableMap;
+import java.util.function.Supplier;
+
+/**
+ * Measures the throughput of writers that each fill their own range of keys, like the rows of a
+ * matrix, in a RoamingMap behind one global lock, a ConcurrentRoamingMap and a ShardedRoamingMap,
+ * from one thread up to the number of available cores. Every run starts from an empty map, so the
+ * sharded map splits its shards as it grows.
+ * Run with: ant bench -Dbenchmark=ShardedRoamingMapBenchmark
+ */
+public class ShardedRoamingMapBenchmark {
+
+    private static final int KEYS_PER_THREAD = 1 << 17;
+    private static final int MAXIMUM_SHARDS = 64;
+
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            int count = threads;
+            long operations = (long) count * KEYS_PER_THREAD;
+            BenchmarkSupport.run("RoamingMap, global lock / " + threads + " threads", operations,
+                    () -> fill(RoamingMap::new, count, true));
+            BenchmarkSupport.run("ConcurrentRoamingMap / " + threads + " threads", operations,
+                    () -> fill(ConcurrentRoamingMap::new, count, false));
+            BenchmarkSupport.run("ShardedRoamingMap / " + threads + " threads", operations,
+                    () -> fill(() -> new ShardedRoamingMap<>(MAXIMUM_SHARDS), count, false));
+        }
+    }
+
+    private static long fill(Supplier<NavigableMap<Integer, Integer>> factory, int threads, boolean lock) {
+        NavigableMap<Integer, Integer> map = factory.get();
+        BenchmarkSupport.onThreads(threads, index -> {
+            int row = index * KEYS_PER_THREAD;
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                // An odd multiplier visits the row in scattered order
+                Integer key = row + ((i * 7919) & (KEYS_PER_THREAD - 1));
+                if (lock) {
+                    synchronized (map) {
+                        map.put(key, i);
+                    }
+                } else {
+                    map.put(key, i);
+                }
+            }
+            return 0;
+        });
+        return map.size();
+    }
+}
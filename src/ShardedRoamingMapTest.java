@@ -0,0 +1,112 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Test class for ShardedRoamingMap
+public class ShardedRoamingMapTest {
+
+    @Test
+    public void testMatchesTreeMapAcrossRebalances() {
+        ShardedRoamingMap<Integer, Integer> sharded = new ShardedRoamingMap<>(4);
+        RoamingMap<Integer, Integer> expected = new RoamingMap<>();
+        DifferentialTesting.randomWrites(new Random(25), 60_000, 4, 40_000, Integer::valueOf, i -> i, expected, sharded);
+        // Splits beyond four shards merged the smallest neighbours
+        assertEquals(4, sharded.shardCount());
+        assertEquals(expected.size(), sharded.size());
+        assertEquals(expected.entrySet(), sharded.entrySet());
+        assertEquals(new ArrayList<>(expected.descendingMap().keySet()), new ArrayList<>(sharded.descendingKeySet()));
+        assertEquals(expected.fingerprint(), sharded.fingerprint());
+        assertEquals(expected.rangeSummary(1_000, true, 30_000, false), sharded.rangeSummary(1_000, true, 30_000, false));
+
+        DifferentialTesting.assertNavigatesLike(expected, sharded, DifferentialTesting.probes(-1_000, 41_000, 211, Integer::valueOf));
+        NavigableMap<Integer, Integer> range = expected.subMap(5_000, false, 25_000, true).descendingMap();
+        NavigableMap<Integer, Integer> shardedRange = sharded.subMap(5_000, false, 25_000, true).descendingMap();
+        assertEquals(range.size(), shardedRange.size());
+        assertEquals(new ArrayList<>(range.entrySet()), new ArrayList<>(shardedRange.entrySet()));
+        assertEquals(range.firstEntry(), shardedRange.firstEntry());
+        assertEquals(range.headMap(10_000, true).lastKey(), shardedRange.headMap(10_000, true).lastKey());
+        assertEquals(range.higherKey(20_000), shardedRange.higherKey(20_000));
+        assertNull(shardedRange.get(30_000));
+        assertThrows(IllegalArgumentException.class, () -> shardedRange.tailMap(30_000, true));
+        assertThrows(UnsupportedOperationException.class, () -> shardedRange.put(10_000, 0));
+
+        assertEquals(expected.pollFirstEntry(), sharded.pollFirstEntry());
+        assertEquals(expected.pollLastEntry(), sharded.pollLastEntry());
+        assertEquals(expected.firstKey(), sharded.firstKey());
+        long version = sharded.version();
+        sharded.clear();
+        assertTrue(sharded.isEmpty());
+        assertTrue(sharded.version() > version);
+        assertNull(sharded.firstEntry());
+        assertThrows(IllegalArgumentException.class, () -> new ShardedRoamingMap<Integer, Integer>(2, List.of(5, 5)));
+    }
+
+    @Test
+    public void testSingleShardNeverSplits() {
+        ShardedRoamingMap<Integer, Integer> sharded = new ShardedRoamingMap<>(1);
+        RoamingMap<Integer, Integer> expected = new RoamingMap<>();
+        // Well past the size at which shards split
+        for (int key = 0; key < 10_000; key++) {
+            assertEquals(expected.put(key, key), sharded.put(key, key));
+        }
+        assertEquals(1, sharded.shardCount());
+        assertEquals(expected.entrySet(), sharded.entrySet());
+        assertEquals(expected.fingerprint(), sharded.fingerprint());
+        assertThrows(IllegalArgumentException.class, () -> new ShardedRoamingMap<Integer, Integer>(0));
+    }
+
+    @Test
+    public void testUnderConcurrentWriters() throws Exception {
+        int threads = 8;
+        int keysPerThread = 10_000;
+        List<Integer> bounds = new ArrayList<>();
+        for (int t = 1; t < threads; t++) {
+            bounds.add(t * keysPerThread);
+        }
+        ShardedRoamingMap<Integer, Integer> sharded = new ShardedRoamingMap<>(16, bounds);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * keysPerThread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < keysPerThread; i++) {
+                        sharded.put(offset + i, i);
+                        if (i % 1_000 == 0) {
+                            // Iteration is weakly consistent and never fails while shards are split
+                            for (Map.Entry<Integer, Integer> entry : sharded.tailMap(offset, true).entrySet()) {
+                                assertNotNull(entry.getValue());
+                            }
+                        }
+                    }
+                    for (int i = 0; i < keysPerThread; i += 2) {
+                        sharded.remove(offset + i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        RoamingMap<Integer, Integer> expected = new RoamingMap<>();
+        for (int key = 1; key < threads * keysPerThread; key += 2) {
+            expected.put(key, key % keysPerThread);
+        }
+        assertTrue(sharded.shardCount() > threads);
+        assertEquals(expected.entrySet(), sharded.entrySet());
+        assertEquals(expected.fingerprint(), sharded.fingerprint());
+        assertEquals(expected.size(), Barricade.correctSize(sharded));
+        assertEquals(Integer.valueOf(43 % keysPerThread), Barricade.safeValue(sharded, 43));
+    }
+}
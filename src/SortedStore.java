@@ -0,0 +1,78 @@
+/**
+ * Entries kept in key order at positions of some backing storage, which SortedView turns into a
+ * NavigableMap. Positions are non-negative longs chosen by the store; {@link #NONE} stands for no entry.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+interface SortedStore<K, V> {
+
+    long NONE = -1;
+
+    /**
+     * Returns the number of entries
+     * @return the number of entries
+     */
+    int size();
+
+    /**
+     * Returns a number that changes whenever the positions of the entries may have changed
+     * @return the current version of the store
+     */
+    long version();
+
+    /**
+     * Returns the position of the key
+     * @param key the key
+     * @return the position of the key, or NONE if it is absent
+     */
+    long find(K key);
+
+    long first();
+
+    long last();
+
+    long next(long position);
+
+    long previous(long position);
+
+    /**
+     * Returns the position of the least key greater than the given key, or equal to it if inclusive
+     * @param key the key
+     * @param inclusive true if the key itself qualifies
+     * @return the position of the ceiling key, or NONE if there is none
+     */
+    long ceiling(K key, boolean inclusive);
+
+    /**
+     * Returns the position of the greatest key less than the given key, or equal to it if inclusive
+     * @param key the key
+     * @param inclusive true if the key itself qualifies
+     * @return the position of the floor key, or NONE if there is none
+     */
+    long floor(K key, boolean inclusive);
+
+    K keyAt(long position);
+
+    V valueAt(long position);
+
+    /**
+     * Returns the number of entries before the position. Stores that can only count them by
+     * iterating return NONE, and SortedView then counts the entries of bounded views one by one.
+     * @param position the position of an entry
+     * @return the number of entries before it, or NONE
+     */
+    default long rank(long position) {
+        return NONE;
+    }
+
+    /**
+     * Returns the position of the entry with the given number of entries before it. Stores that can
+     * only find it by iterating return NONE, and SortedView then splits its spliterators the way
+     * the Collection default does, in batches taken from an iterator.
+     * @param rank the number of entries before the entry, less than the size
+     * @return the position of the entry, or NONE
+     */
+    default long select(long rank) {
+        return NONE;
+    }
+}
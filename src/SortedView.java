@@ -0,0 +1,549 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A read-only NavigableMap over the entries of a SortedStore between two optional bounds, in
+ * ascending or descending order. Bounds are always kept in ascending terms; the order of the view
+ * only decides which way navigation goes. Views are live: they reflect later changes of the store,
+ * and their iterators throw ConcurrentModificationException once the store changed.
+ * <p>
+ * Over stores that can find the position of a rank, the spliterators of the views split them into
+ * halves of exactly known size, so parallel streams over a view of any range divide the work evenly.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+class SortedView<K extends Comparable<K>, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    private static final long NONE = SortedStore.NONE;
+
+    private final SortedStore<K, V> store;
+    private final boolean fromStart;
+    private final K low;
+    private final boolean lowInclusive;
+    private final boolean toEnd;
+    private final K high;
+    private final boolean highInclusive;
+    private final boolean descending;
+
+    /**
+     * Creates a view of the whole store, in ascending order
+     * @param store the store
+     */
+    SortedView(SortedStore<K, V> store) {
+        this(store, true, null, false, true, null, false, false);
+    }
+
+    private SortedView(SortedStore<K, V> store, boolean fromStart, K low, boolean lowInclusive,
+                       boolean toEnd, K high, boolean highInclusive, boolean descending) {
+        this.store = store;
+        this.fromStart = fromStart;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.toEnd = toEnd;
+        this.high = high;
+        this.highInclusive = highInclusive;
+        this.descending = descending;
+    }
+
+    private boolean tooLow(K key) {
+        if (fromStart) {
+            return false;
+        }
+        int comparison = key.compareTo(low);
+        return comparison < 0 || (comparison == 0 && !lowInclusive);
+    }
+
+    private boolean tooHigh(K key) {
+        if (toEnd) {
+            return false;
+        }
+        int comparison = key.compareTo(high);
+        return comparison > 0 || (comparison == 0 && !highInclusive);
+    }
+
+    private boolean inRange(K key) {
+        return !tooLow(key) && !tooHigh(key);
+    }
+
+    private boolean inClosedRange(K key) {
+        return (fromStart || key.compareTo(low) >= 0) && (toEnd || key.compareTo(high) <= 0);
+    }
+
+    private long lowest() {
+        long position = fromStart ? store.first() : store.ceiling(low, lowInclusive);
+        return (position == NONE || tooHigh(store.keyAt(position))) ? NONE : position;
+    }
+
+    private long highest() {
+        long position = toEnd ? store.last() : store.floor(high, highInclusive);
+        return (position == NONE || tooLow(store.keyAt(position))) ? NONE : position;
+    }
+
+    private long ceiling(K key, boolean inclusive) {
+        Objects.requireNonNull(key);
+        if (tooLow(key)) {
+            return lowest();
+        }
+        long position = store.ceiling(key, inclusive);
+        return (position == NONE || tooHigh(store.keyAt(position))) ? NONE : position;
+    }
+
+    private long floor(K key, boolean inclusive) {
+        Objects.requireNonNull(key);
+        if (tooHigh(key)) {
+            return highest();
+        }
+        long position = store.floor(key, inclusive);
+        return (position == NONE || tooLow(store.keyAt(position))) ? NONE : position;
+    }
+
+    private long first() {
+        return descending ? highest() : lowest();
+    }
+
+    private long last() {
+        return descending ? lowest() : highest();
+    }
+
+    private long successor(long position) {
+        return descending ? store.previous(position) : store.next(position);
+    }
+
+    private Entry<K, V> entry(long position) {
+        return (position == NONE) ? null : entryAt(position);
+    }
+
+    // Kept apart from entry, since an allocation merged with null is never eliminated by escape analysis
+    private Entry<K, V> entryAt(long position) {
+        return new SimpleImmutableEntry<>(store.keyAt(position), store.valueAt(position));
+    }
+
+    private K key(long position) {
+        return (position == NONE) ? null : store.keyAt(position);
+    }
+
+    private void checkBound(K key, boolean inclusive) {
+        Objects.requireNonNull(key);
+        if (inclusive ? !inRange(key) : !inClosedRange(key)) {
+            throw new IllegalArgumentException("key out of range");
+        }
+    }
+
+    private SortedView<K, V> bounded(boolean newFromStart, K newLow, boolean newLowInclusive,
+                                     boolean newToEnd, K newHigh, boolean newHighInclusive) {
+        return new SortedView<>(store, newFromStart, newLow, newLowInclusive, newToEnd, newHigh, newHighInclusive, descending);
+    }
+
+    private SortedView<K, V> withLow(K key, boolean inclusive) {
+        checkBound(key, inclusive);
+        return bounded(false, key, inclusive, toEnd, high, highInclusive);
+    }
+
+    private SortedView<K, V> withHigh(K key, boolean inclusive) {
+        checkBound(key, inclusive);
+        return bounded(fromStart, low, lowInclusive, false, key, inclusive);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long find(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        return inRange(k) ? store.find(k) : NONE;
+    }
+
+    @Override
+    public V get(Object key) {
+        long position = find(key);
+        return (position == NONE) ? null : store.valueAt(position);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != NONE;
+    }
+
+    @Override
+    public int size() {
+        if (fromStart && toEnd) {
+            return store.size();
+        }
+        long lowest = lowest();
+        if (lowest == NONE) {
+            return 0;
+        }
+        long first = store.rank(lowest);
+        if (first != NONE) {
+            return (int) (store.rank(highest()) - first + 1);
+        }
+        int count = 0;
+        for (long position = lowest(); position != NONE; position = store.next(position)) {
+            if (tooHigh(store.keyAt(position))) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lowest() == NONE;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<>() {
+                    private final long expectedVersion = store.version();
+                    private long next = first();
+                    // Positions stay valid until the store changes, so stopping at the last one
+                    // of the view spares comparing every key with the bound
+                    private final long end = last();
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != NONE;
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if (store.version() != expectedVersion) {
+                            throw new ConcurrentModificationException();
+                        }
+                        if (next == NONE) {
+                            throw new NoSuchElementException();
+                        }
+                        long position = next;
+                        next = (position == end) ? NONE : successor(position);
+                        return entryAt(position);
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<Entry<K, V>> spliterator() {
+                Spliterator<Entry<K, V>> entries = rankSpliterator(SortedView.this::entryAt, Spliterator.DISTINCT | Spliterator.NONNULL);
+                return (entries != null) ? entries : super.spliterator();
+            }
+
+            @Override
+            public int size() {
+                return SortedView.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry<?, ?> e) || e.getKey() == null) {
+                    return false;
+                }
+                long position;
+                try {
+                    position = find(e.getKey());
+                } catch (ClassCastException wrongType) {
+                    return false;
+                }
+                return position != NONE && Objects.equals(store.valueAt(position), e.getValue());
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                Iterator<Entry<K, V>> entries = entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return entries.next().getValue();
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<V> spliterator() {
+                Spliterator<V> values = rankSpliterator(store::valueAt, 0);
+                return (values != null) ? values : super.spliterator();
+            }
+
+            @Override
+            public int size() {
+                return SortedView.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator over the keys of the view that splits it by rank
+     * @return the spliterator, or null if the store cannot find the position of a rank
+     */
+    Spliterator<K> keySpliterator() {
+        return rankSpliterator(store::keyAt, Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SORTED);
+    }
+
+    // Returns a spliterator over the elements at the positions of the view, or null if the store
+    // cannot find the position of a rank
+    private <T> Spliterator<T> rankSpliterator(LongFunction<T> element, int characteristics) {
+        long lowest = lowest();
+        if (lowest == NONE) {
+            return Spliterators.emptySpliterator();
+        }
+        long lowRank = store.rank(lowest);
+        if (lowRank == NONE) {
+            return null;
+        }
+        long highRank = store.rank(highest());
+        return new RankSpliterator<>(element, characteristics, descending ? highRank : lowRank, 0, highRank - lowRank + 1, NONE);
+    }
+
+    /**
+     * Iterates the elements of the view from one index in view order up to another, and splits
+     * in half by finding the position of the middle rank. Only the first element of each part
+     * pays for a select; the rest follow from one position to the next.
+     */
+    private final class RankSpliterator<T> implements Spliterator<T> {
+        private final LongFunction<T> element;
+        private final int characteristics;
+        private final long expectedVersion = store.version();
+        // The rank of the first element of the view, the lowest or, if descending, the highest
+        private final long firstRank;
+        private long index;
+        private final long end;
+        // The position of the element at the index, or NONE until it is selected
+        private long position;
+
+        RankSpliterator(LongFunction<T> element, int characteristics, long firstRank, long index, long end, long position) {
+            this.element = element;
+            this.characteristics = characteristics;
+            this.firstRank = firstRank;
+            this.index = index;
+            this.end = end;
+            this.position = position;
+        }
+
+        private long next() {
+            if (store.version() != expectedVersion) {
+                throw new ConcurrentModificationException();
+            }
+            long current = (position != NONE) ? position : store.select(descending ? firstRank - index : firstRank + index);
+            index++;
+            position = (index < end) ? successor(current) : NONE;
+            return current;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (index >= end) {
+                return false;
+            }
+            action.accept(element.apply(next()));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            while (index < end) {
+                action.accept(element.apply(next()));
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            long middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<T> prefix = new RankSpliterator<>(element, characteristics, firstRank, index, middle, position);
+            index = middle;
+            position = NONE;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            if ((characteristics & Spliterator.SORTED) == 0) {
+                throw new IllegalStateException();
+            }
+            @SuppressWarnings("unchecked")
+            Comparator<? super T> comparator = (Comparator<? super T>) comparator();
+            return comparator;
+        }
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return entry(descending ? ceiling(key, false) : floor(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return key(descending ? ceiling(key, false) : floor(key, false));
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return entry(descending ? ceiling(key, true) : floor(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return key(descending ? ceiling(key, true) : floor(key, true));
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return entry(descending ? floor(key, true) : ceiling(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return key(descending ? floor(key, true) : ceiling(key, true));
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return entry(descending ? floor(key, false) : ceiling(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return key(descending ? floor(key, false) : ceiling(key, false));
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return entry(first());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return entry(last());
+    }
+
+    @Override
+    public K firstKey() {
+        long position = first();
+        if (position == NONE) {
+            throw new NoSuchElementException();
+        }
+        return store.keyAt(position);
+    }
+
+    @Override
+    public K lastKey() {
+        long position = last();
+        if (position == NONE) {
+            throw new NoSuchElementException();
+        }
+        return store.keyAt(position);
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return new SortedView<>(store, fromStart, low, lowInclusive, toEnd, high, highInclusive, !descending);
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return new NavigableKeySet<>(this);
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return new NavigableKeySet<>(descendingMap());
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        K newLow = descending ? toKey : fromKey;
+        boolean newLowInclusive = descending ? toInclusive : fromInclusive;
+        K newHigh = descending ? fromKey : toKey;
+        boolean newHighInclusive = descending ? fromInclusive : toInclusive;
+        if (newLow.compareTo(newHigh) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        checkBound(newLow, newLowInclusive);
+        checkBound(newHigh, newHighInclusive);
+        return bounded(false, newLow, newLowInclusive, false, newHigh, newHighInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return descending ? withLow(toKey, inclusive) : withHigh(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return descending ? withHigh(fromKey, inclusive) : withLow(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+}
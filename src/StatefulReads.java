@@ -0,0 +1,8 @@
+/**
+ * Marks a map whose reads modify it, such as a cache that records hits and the order of accesses
+ * in get. Barricade cannot run such reads in parallel, so a map marked with this interface and
+ * shared with {@link Barricade#shareBetweenThreads} gets a lock that takes reads exclusively, like
+ * writes.
+ */
+interface StatefulReads {
+}
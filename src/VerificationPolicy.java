@@ -0,0 +1,198 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which Barricade calls pay for verification. Calls that are not sampled go straight
+ * to the underlying map; sampled calls are verified and recovered as usual.
+ * Every policy counts the calls it verified and skipped, so the throughput gained can be
+ * weighed against the detection coverage lost.
+ */
+public abstract class VerificationPolicy {
+
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder verificationNanos = new LongAdder();
+
+    /**
+     * Returns a policy that verifies every call
+     * @return a policy that verifies every call
+     */
+    public static VerificationPolicy always() {
+        return new Always();
+    }
+
+    /**
+     * Returns a policy that verifies one call out of every n
+     * @param n the sampling period
+     * @return a policy that verifies every n-th call
+     * @throws IllegalArgumentException if n is not positive
+     */
+    public static VerificationPolicy everyNth(int n) {
+        return new EveryNth(n);
+    }
+
+    /**
+     * Returns a policy that verifies each call independently with the given probability
+     * @param probability the probability of verifying a call, between 0 and 1
+     * @return a probabilistic policy
+     * @throws IllegalArgumentException if the probability is not between 0 and 1
+     */
+    public static VerificationPolicy probabilistic(double probability) {
+        return new Probabilistic(probability);
+    }
+
+    /**
+     * Returns a policy that verifies calls until the verification time spent in the current
+     * window exceeds the budget, and skips the rest of the window
+     * @param budgetNanos the verification time allowed per window, in nanoseconds
+     * @param windowNanos the length of a window, in nanoseconds
+     * @return a time-budgeted policy
+     * @throws IllegalArgumentException if the budget is negative or the window is not positive
+     */
+    public static VerificationPolicy timeBudgeted(long budgetNanos, long windowNanos) {
+        return new TimeBudgeted(budgetNanos, windowNanos);
+    }
+
+    /**
+     * Decides whether the next call is verified, and counts the decision
+     * @return true if the call must be verified, false if it can go straight to the map
+     */
+    final boolean shouldVerify() {
+        if (sample()) {
+            verified.increment();
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    /**
+     * Records the time spent verifying a sampled call
+     * @param nanos the verification time in nanoseconds
+     */
+    void verified(long nanos) {
+        verificationNanos.add(nanos);
+    }
+
+    abstract boolean sample();
+
+    public long verifiedCalls() {
+        return verified.sum();
+    }
+
+    public long skippedCalls() {
+        return skipped.sum();
+    }
+
+    public long verificationNanos() {
+        return verificationNanos.sum();
+    }
+
+    /**
+     * Returns the fraction of calls that were verified
+     * @return the fraction of calls that were verified, or 1 if there were no calls
+     */
+    public double coverage() {
+        long verifiedCalls = verifiedCalls();
+        long total = verifiedCalls + skippedCalls();
+        return (total == 0) ? 1.0 : (double) verifiedCalls / total;
+    }
+
+    public void resetCounters() {
+        verified.reset();
+        skipped.reset();
+        verificationNanos.reset();
+    }
+
+    private static final class Always extends VerificationPolicy {
+        @Override
+        boolean sample() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "always";
+        }
+    }
+
+    private static final class EveryNth extends VerificationPolicy {
+        private final int n;
+        private final AtomicLong calls = new AtomicLong();
+
+        private EveryNth(int n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Sampling period must be positive: " + n);
+            }
+            this.n = n;
+        }
+
+        @Override
+        boolean sample() {
+            return calls.getAndIncrement() % n == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "every " + n + "th call";
+        }
+    }
+
+    private static final class Probabilistic extends VerificationPolicy {
+        private final double probability;
+
+        private Probabilistic(double probability) {
+            if (!(probability >= 0.0 && probability <= 1.0)) {
+                throw new IllegalArgumentException("Probability must be between 0 and 1: " + probability);
+            }
+            this.probability = probability;
+        }
+
+        @Override
+        boolean sample() {
+            return ThreadLocalRandom.current().nextDouble() < probability;
+        }
+
+        @Override
+        public String toString() {
+            return "probability " + probability;
+        }
+    }
+
+    private static final class TimeBudgeted extends VerificationPolicy {
+        private final long budgetNanos;
+        private final long windowNanos;
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicLong spent = new AtomicLong();
+
+        private TimeBudgeted(long budgetNanos, long windowNanos) {
+            if (budgetNanos < 0 || windowNanos <= 0) {
+                throw new IllegalArgumentException("Invalid time budget: " + budgetNanos + "ns per " + windowNanos + "ns");
+            }
+            this.budgetNanos = budgetNanos;
+            this.windowNanos = windowNanos;
+        }
+
+        @Override
+        boolean sample() {
+            long now = System.nanoTime();
+            long start = windowStart.get();
+            if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+                spent.set(0);
+            }
+            return spent.get() < budgetNanos;
+        }
+
+        @Override
+        void verified(long nanos) {
+            super.verified(nanos);
+            spent.addAndGet(nanos);
+        }
+
+        @Override
+        public String toString() {
+            return "budget " + budgetNanos + "ns per " + windowNanos + "ns";
+        }
+    }
+}
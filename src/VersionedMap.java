@@ -0,0 +1,73 @@
+import java.util.NavigableMap;
+import java.util.Objects;
+
+/**
+ * A NavigableMap that stamps every modification of its contents with a version number
+ * and maintains an order-independent fingerprint of its contents.
+ * Barricade uses them to detect unexpected state changes in constant time
+ * instead of copying and comparing the whole map.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public interface VersionedMap<K, V> extends NavigableMap<K, V> {
+
+    /**
+     * Returns the current version of this map. The version increases by one for every
+     * put, and for every remove or clear that actually removes entries. It never decreases.
+     * @return the current version of this map
+     */
+    long version();
+
+    /**
+     * Returns the fingerprint of the contents of this map: the sum of {@link #fingerprint(Object, Object)}
+     * over all entries. Maps with equal contents have equal fingerprints regardless of the order in which
+     * the entries were inserted, and the fingerprint is updated in O(1) on every put, remove and clear.
+     * Values must not be modified in place while they are in the map.
+     * @return the fingerprint of the contents of this map
+     */
+    long fingerprint();
+
+    /**
+     * Returns the contribution of a single entry to the fingerprint of a map
+     * @param key the key of the entry
+     * @param value the value of the entry, may be null
+     * @return the fingerprint of the entry
+     */
+    static long fingerprint(Object key, Object value) {
+        return fingerprintOf(key.hashCode(), value);
+    }
+
+    /**
+     * Returns the contribution of a single entry with a primitive key to the fingerprint of a map,
+     * equal to the fingerprint of the entry with the boxed key
+     * @param key the key of the entry
+     * @param value the value of the entry, may be null
+     * @return the fingerprint of the entry
+     */
+    static long fingerprint(long key, Object value) {
+        return fingerprintOf(Long.hashCode(key), value);
+    }
+
+    private static long fingerprintOf(int keyHash, Object value) {
+        long hash = keyHash * 0x9E3779B97F4A7C15L + Objects.hashCode(value);
+        // SplitMix64 finalizer, so that entries with close hash codes spread over all 64 bits
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Returns the summary of the entries between the bounds, where a null bound leaves that side of
+     * the range open. Implementations should compute it without going through their own navigation
+     * and sub-map methods, so that it can be used to verify them; this default derives it from the
+     * sub-map views. Either way it costs time proportional to the size of the range.
+     * @param fromKey the low end of the range, or null for no low end
+     * @param fromInclusive true if the low end is included in the range
+     * @param toKey the high end of the range, or null for no high end
+     * @param toInclusive true if the high end is included in the range
+     * @return the summary of the entries in the range
+     */
+    default RangeSummary rangeSummary(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return RangeSummary.of(RangeSummary.slice(this, fromKey, fromInclusive, toKey, toInclusive).entrySet());
+    }
+}